@@ -0,0 +1,47 @@
+package me.saharnooby.qoi.benchmark;
+
+import me.saharnooby.qoi.QOIImage;
+import me.saharnooby.qoi.QOIUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link QOIUtil#removeAlpha} and {@link QOIUtil#addAlpha}.
+ * Image class does not affect these conversions, so only one is used.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChannelConversionBenchmark {
+
+	@Param({"1024"})
+	public int size;
+
+	private QOIImage rgb;
+	private QOIImage rgba;
+
+	@Setup
+	public void setup() {
+		this.rgb = ImageClass.PHOTO.generate(this.size, this.size, 3);
+		this.rgba = ImageClass.PHOTO.generate(this.size, this.size, 4);
+	}
+
+	@Benchmark
+	public QOIImage removeAlpha(Throughput throughput) {
+		throughput.add(this.rgba.getPixelData().length);
+
+		return QOIUtil.removeAlpha(this.rgba);
+	}
+
+	@Benchmark
+	public QOIImage addAlpha(Throughput throughput) {
+		throughput.add(this.rgb.getPixelData().length);
+
+		return QOIUtil.addAlpha(this.rgb, 0xFF);
+	}
+
+}
@@ -0,0 +1,70 @@
+package me.saharnooby.qoi.benchmark;
+
+import me.saharnooby.qoi.QOIDecoder;
+import me.saharnooby.qoi.QOIImage;
+import me.saharnooby.qoi.QOIUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link QOIDecoder#decode} for 3- and 4-channel output, with and without decoder's own buffering.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecoderBenchmark {
+
+	@Param({"FLAT_UI", "PHOTO", "NOISE", "ALPHA_GRADIENT"})
+	public ImageClass imageClass;
+
+	@Param({"3", "4"})
+	public int channels;
+
+	@Param({"false", "true"})
+	public boolean doNotTouchDataAfterImage;
+
+	@Param({"1024"})
+	public int size;
+
+	private byte[] encoded;
+
+	private int pixelDataLength;
+
+	@Setup
+	public void setup() throws IOException {
+		// Source image always has alpha, so 3-channel decoding covers alpha removal in read3
+		QOIImage image = this.imageClass.generate(this.size, this.size, 4);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QOIUtil.writeImage(image, out);
+
+		this.encoded = out.toByteArray();
+		this.pixelDataLength = this.size * this.size * this.channels;
+	}
+
+	@Benchmark
+	public QOIImage decode(Throughput throughput) throws IOException {
+		InputStream in = new ByteArrayInputStream(this.encoded);
+
+		if (this.doNotTouchDataAfterImage) {
+			// As recommended by QOIDecoder documentation
+			in = new BufferedInputStream(in);
+		}
+
+		QOIImage image = QOIDecoder.decode(in, this.channels, this.doNotTouchDataAfterImage);
+
+		throughput.add(this.pixelDataLength);
+
+		return image;
+	}
+
+}
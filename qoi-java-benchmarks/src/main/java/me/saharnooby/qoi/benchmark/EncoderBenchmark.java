@@ -0,0 +1,76 @@
+package me.saharnooby.qoi.benchmark;
+
+import me.saharnooby.qoi.QOIEncoder;
+import me.saharnooby.qoi.QOIImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link QOIEncoder#encode} into a stream and into an array, and {@link QOIEncoder#encodeParallel}
+ * into a stream for 3- and 4-channel images.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncoderBenchmark {
+
+	@Param({"FLAT_UI", "PHOTO", "NOISE", "ALPHA_GRADIENT"})
+	public ImageClass imageClass;
+
+	@Param({"3", "4"})
+	public int channels;
+
+	@Param({"1024"})
+	public int size;
+
+	private QOIImage image;
+
+	private ByteArrayOutputStream out;
+
+	private byte[] array;
+
+	@Setup
+	public void setup() {
+		this.image = this.imageClass.generate(this.size, this.size, this.channels);
+		this.out = new ByteArrayOutputStream(this.image.getPixelData().length * 2);
+		this.array = new byte[QOIEncoder.maxEncodedSize(this.size, this.size, this.channels)];
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream encode(Throughput throughput) throws IOException {
+		this.out.reset();
+
+		QOIEncoder.encode(this.image, this.out);
+
+		throughput.add(this.image.getPixelData().length);
+
+		return this.out;
+	}
+
+	@Benchmark
+	public int encodeToArray(Throughput throughput) {
+		int written = QOIEncoder.encode(this.image, this.array, 0);
+
+		throughput.add(this.image.getPixelData().length);
+
+		return written;
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream encodeParallel(Throughput throughput) throws IOException {
+		this.out.reset();
+
+		QOIEncoder.encodeParallel(this.image, this.out);
+
+		throughput.add(this.image.getPixelData().length);
+
+		return this.out;
+	}
+
+}
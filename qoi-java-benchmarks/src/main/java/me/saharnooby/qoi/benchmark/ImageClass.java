@@ -0,0 +1,123 @@
+package me.saharnooby.qoi.benchmark;
+
+import me.saharnooby.qoi.QOIImage;
+import me.saharnooby.qoi.QOIUtil;
+
+import java.util.Random;
+
+/**
+ * Synthetic image classes with different compression characteristics.
+ * Images are generated deterministically, so results are comparable between runs.
+ */
+public enum ImageClass {
+
+	/**
+	 * Flat UI-like image: solid background, filled rectangles and thin borders.
+	 * Mostly runs and index hits.
+	 */
+	FLAT_UI {
+		@Override
+		void fill(byte[] rgba, int width, int height, Random random) {
+			fillRect(rgba, width, 0, 0, width, height, 0xF0F0F0FF);
+
+			for (int i = 0; i < 64; i++) {
+				int w = 16 + random.nextInt(width / 4);
+				int h = 8 + random.nextInt(height / 8);
+				int x = random.nextInt(width - w);
+				int y = random.nextInt(height - h);
+
+				fillRect(rgba, width, x, y, w, h, 0x808080FF);
+				fillRect(rgba, width, x + 1, y + 1, w - 2, h - 2, PALETTE[random.nextInt(PALETTE.length)]);
+			}
+		}
+	},
+
+	/**
+	 * Photo-like image: smooth gradients with a small amount of noise.
+	 * Mostly DIFF and LUMA ops.
+	 */
+	PHOTO {
+		@Override
+		void fill(byte[] rgba, int width, int height, Random random) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int r = 128 + (int) (100 * Math.sin(x / 97.0) * Math.cos(y / 131.0)) + random.nextInt(5) - 2;
+					int g = 128 + (int) (90 * Math.sin((x + y) / 173.0)) + random.nextInt(5) - 2;
+					int b = 128 + (int) (80 * Math.cos((x - y) / 211.0)) + random.nextInt(5) - 2;
+
+					setPixel(rgba, width, x, y, r, g, b, 255);
+				}
+			}
+		}
+	},
+
+	/**
+	 * Uniform random noise in all channels.
+	 * Mostly RGB and RGBA ops, worst case for the codec.
+	 */
+	NOISE {
+		@Override
+		void fill(byte[] rgba, int width, int height, Random random) {
+			random.nextBytes(rgba);
+		}
+	},
+
+	/**
+	 * Smooth colors with alpha changing along both axes.
+	 * Exercises RGBA ops, since alpha differs between most adjacent pixels.
+	 */
+	ALPHA_GRADIENT {
+		@Override
+		void fill(byte[] rgba, int width, int height, Random random) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int r = x * 255 / width;
+					int g = y * 255 / height;
+					int b = 255 - r;
+					int a = (x + y) * 255 / (width + height);
+
+					setPixel(rgba, width, x, y, r, g, b, a);
+				}
+			}
+		}
+	};
+
+	private static final int[] PALETTE = {0xFFFFFFFF, 0x3478F6FF, 0xE5E5EAFF, 0x34C759FF, 0xFF3B30FF, 0x1C1C1EFF};
+
+	abstract void fill(byte[] rgba, int width, int height, Random random);
+
+	/**
+	 * Generates an image of this class.
+	 * @param width Image width.
+	 * @param height Image height.
+	 * @param channels Channel count, 3 or 4.
+	 * @return Generated image.
+	 */
+	public QOIImage generate(int width, int height, int channels) {
+		byte[] rgba = new byte[width * height * 4];
+
+		fill(rgba, width, height, new Random(name().hashCode()));
+
+		QOIImage image = QOIUtil.createFromPixelData(rgba, width, height, 4);
+
+		return channels == 3 ? QOIUtil.removeAlpha(image) : image;
+	}
+
+	private static void fillRect(byte[] rgba, int width, int x, int y, int w, int h, int color) {
+		for (int j = y; j < y + h; j++) {
+			for (int i = x; i < x + w; i++) {
+				setPixel(rgba, width, i, j, color >>> 24, (color >>> 16) & 0xFF, (color >>> 8) & 0xFF, color);
+			}
+		}
+	}
+
+	private static void setPixel(byte[] rgba, int width, int x, int y, int r, int g, int b, int a) {
+		int pos = (y * width + x) * 4;
+
+		rgba[pos] = (byte) Math.max(0, Math.min(255, r));
+		rgba[pos + 1] = (byte) Math.max(0, Math.min(255, g));
+		rgba[pos + 2] = (byte) Math.max(0, Math.min(255, b));
+		rgba[pos + 3] = (byte) a;
+	}
+
+}
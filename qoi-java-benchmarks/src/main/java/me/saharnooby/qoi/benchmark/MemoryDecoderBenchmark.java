@@ -0,0 +1,84 @@
+package me.saharnooby.qoi.benchmark;
+
+import me.saharnooby.qoi.QOIDecoder;
+import me.saharnooby.qoi.QOIImage;
+import me.saharnooby.qoi.QOIUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link QOIDecoder} overloads that decode images already stored in memory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryDecoderBenchmark {
+
+	public enum Source {
+		BYTE_ARRAY,
+		HEAP_BUFFER,
+		DIRECT_BUFFER
+	}
+
+	@Param({"FLAT_UI", "PHOTO", "NOISE", "ALPHA_GRADIENT"})
+	public ImageClass imageClass;
+
+	@Param({"3", "4"})
+	public int channels;
+
+	@Param({"BYTE_ARRAY", "HEAP_BUFFER", "DIRECT_BUFFER"})
+	public Source source;
+
+	@Param({"1024"})
+	public int size;
+
+	private byte[] encoded;
+
+	private ByteBuffer buffer;
+
+	private int pixelDataLength;
+
+	@Setup
+	public void setup() throws IOException {
+		QOIImage image = this.imageClass.generate(this.size, this.size, 4);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QOIUtil.writeImage(image, out);
+
+		this.encoded = out.toByteArray();
+
+		if (this.source == Source.DIRECT_BUFFER) {
+			this.buffer = ByteBuffer.allocateDirect(this.encoded.length);
+			this.buffer.put(this.encoded);
+		} else {
+			this.buffer = ByteBuffer.wrap(this.encoded);
+		}
+
+		this.pixelDataLength = this.size * this.size * this.channels;
+	}
+
+	@Benchmark
+	public QOIImage decode(Throughput throughput) throws IOException {
+		QOIImage image;
+
+		if (this.source == Source.BYTE_ARRAY) {
+			image = QOIDecoder.decode(this.encoded, this.channels);
+		} else {
+			this.buffer.clear();
+
+			image = QOIDecoder.decode(this.buffer, this.channels);
+		}
+
+		throughput.add(this.pixelDataLength);
+
+		return image;
+	}
+
+}
@@ -0,0 +1,69 @@
+package me.saharnooby.qoi.benchmark;
+
+import me.saharnooby.qoi.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link QOIEncoder} and {@link QOIDecoder} overloads that work with pixels packed into ints.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PackedPixelBenchmark {
+
+	@Param({"FLAT_UI", "PHOTO", "NOISE", "ALPHA_GRADIENT"})
+	public ImageClass imageClass;
+
+	@Param({"RGBA", "ARGB"})
+	public QOIPixelPacking packing;
+
+	@Param({"1024"})
+	public int size;
+
+	private int[] pixels;
+
+	private byte[] encoded;
+
+	private byte[] array;
+
+	@Setup
+	public void setup() throws IOException {
+		QOIImage image = this.imageClass.generate(this.size, this.size, 4);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QOIUtil.writeImage(image, out);
+
+		this.encoded = out.toByteArray();
+		this.pixels = new int[this.size * this.size];
+		this.array = new byte[QOIEncoder.maxEncodedSize(this.size, this.size, 4)];
+
+		QOIDecoder.decode(ByteBuffer.wrap(this.encoded), this.pixels, 0, this.size, this.packing);
+	}
+
+	@Benchmark
+	public int encode(Throughput throughput) {
+		int written = QOIEncoder.encode(this.pixels, this.size, this.size, 4, QOIColorSpace.SRGB, this.packing, this.array, 0);
+
+		throughput.add(this.pixels.length * 4);
+
+		return written;
+	}
+
+	@Benchmark
+	public QOIHeader decode(Throughput throughput) throws IOException {
+		QOIHeader header = QOIDecoder.decode(ByteBuffer.wrap(this.encoded), this.pixels, 0, this.size, this.packing);
+
+		throughput.add(this.pixels.length * 4);
+
+		return header;
+	}
+
+}
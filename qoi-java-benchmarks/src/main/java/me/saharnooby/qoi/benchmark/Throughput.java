@@ -0,0 +1,32 @@
+package me.saharnooby.qoi.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary JMH result reporting processed raw pixel data as megabytes per second.
+ * The value is shown in the <code>megabytes</code> row of the results, the unit reported by JMH is "ops/s".
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+	private long bytes;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		this.bytes = 0;
+	}
+
+	void add(int byteCount) {
+		this.bytes += byteCount;
+	}
+
+	public double megabytes() {
+		return this.bytes / 1_000_000.0;
+	}
+
+}
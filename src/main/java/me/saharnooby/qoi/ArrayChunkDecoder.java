@@ -0,0 +1,235 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Decodes chunks from a byte array.
+ * The array is either provided by the caller and contains the whole image,
+ * or is a buffer that is refilled from an input stream.
+ * Bounds are checked once per chunk instead of once per byte.
+ */
+final class ArrayChunkDecoder extends ChunkDecoder {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	// Enough for the header and for the lookahead
+	private static final int MIN_BUFFER_SIZE = 16;
+
+	private InputStream in;
+	private boolean useBuffer;
+
+	// Buffer for reading from streams, kept when the decoder is reset to read from an array
+	private final byte[] streamBuffer;
+
+	private byte[] buffer;
+	private int limit;
+
+	// Count of bytes dropped from the buffer when it was compacted, minus the initial position
+	private long discarded;
+
+	/**
+	 * Creates a decoder that reads from an input stream.
+	 * @param in Input stream.
+	 * @param useBuffer If false, decoder will not read past the image, reading only as many bytes as it needs.
+	 */
+	ArrayChunkDecoder(@NonNull InputStream in, boolean useBuffer) {
+		this.streamBuffer = new byte[useBuffer ? BUFFER_SIZE : MIN_BUFFER_SIZE];
+
+		reset(in, useBuffer);
+	}
+
+	/**
+	 * Creates a decoder that reads from a byte array.
+	 */
+	ArrayChunkDecoder(byte @NonNull [] data, int offset, int length) {
+		this.streamBuffer = null;
+
+		reset(data, offset, length);
+	}
+
+	/**
+	 * Creates a reusable decoder, which must be reset to some input before use.
+	 */
+	ArrayChunkDecoder() {
+		this.streamBuffer = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Prepares the decoder to read a new image from an input stream.
+	 * Must be called only on decoders that were created for streams or by the no-arg constructor.
+	 */
+	void reset(@NonNull InputStream in, boolean useBuffer) {
+		reset();
+
+		this.in = in;
+		this.useBuffer = useBuffer;
+		this.buffer = this.streamBuffer;
+		this.position = 0;
+		this.limit = 0;
+		this.discarded = 0;
+	}
+
+	/**
+	 * Prepares the decoder to read a new image from a byte array.
+	 */
+	void reset(byte @NonNull [] data, int offset, int length) {
+		reset();
+
+		this.in = null;
+		this.useBuffer = false;
+		this.buffer = data;
+		this.position = offset;
+		this.limit = offset + length;
+		this.discarded = -offset;
+	}
+
+	/**
+	 * Drops references to the input, so a reused decoder does not keep caller's data reachable.
+	 */
+	void clear() {
+		this.in = null;
+		this.buffer = this.streamBuffer;
+		this.position = 0;
+		this.limit = 0;
+	}
+
+	@Override
+	void decode(int[] pixels, int offset, int count) throws IOException {
+		int[] index = this.index;
+		int px = this.pixel;
+		int run = this.run;
+
+		byte[] data = this.buffer;
+		int pos = this.position;
+		int chunksLimit = this.limit - CHUNK_LOOKAHEAD;
+
+		// Start of chunks read by this call that are not counted yet
+		int countFrom = pos;
+
+		int end = offset + count;
+
+		for (int i = offset; i < end; ) {
+			if (run > 0) {
+				int n = Math.min(run, end - i);
+
+				Arrays.fill(pixels, i, i + n, px);
+
+				run -= n;
+				i += n;
+
+				continue;
+			}
+
+			if (pos > chunksLimit) {
+				this.position = pos;
+
+				// Counted before the buffer is refilled
+				if (this.statistics != null) {
+					this.statistics.countChunks(data, countFrom, pos);
+				}
+
+				require(CHUNK_LOOKAHEAD);
+
+				data = this.buffer;
+				pos = this.position;
+				chunksLimit = this.limit - CHUNK_LOOKAHEAD;
+				countFrom = pos;
+			}
+
+			int b1 = data[pos++] & 0xFF;
+
+			if (b1 == QOI_OP_RGB) {
+				// Lookahead guarantees that the byte after RGB exists
+				px = ByteArrays.getRGB(data, pos) | (px & 0xFF);
+				pos += 3;
+			} else if (b1 == QOI_OP_RGBA) {
+				px = ByteArrays.getInt(data, pos);
+				pos += 4;
+			} else {
+				switch (b1 & QOI_MASK_2) {
+					case QOI_OP_INDEX:
+						px = index[b1];
+
+						break;
+					case QOI_OP_DIFF:
+						px = applyDiff(px, b1);
+
+						break;
+					case QOI_OP_LUMA:
+						px = applyLuma(px, b1, data[pos++] & 0xFF);
+
+						break;
+					case QOI_OP_RUN:
+						run = b1 & 0x3F;
+
+						break;
+				}
+			}
+
+			index[getHashTableIndexRGBA(px)] = px;
+
+			pixels[i++] = px;
+		}
+
+		if (this.statistics != null) {
+			this.statistics.countChunks(data, countFrom, pos);
+		}
+
+		this.pixel = px;
+		this.run = run;
+		this.position = pos;
+	}
+
+	@Override
+	byte readByte() throws IOException {
+		require(1);
+
+		return this.buffer[this.position++];
+	}
+
+	@Override
+	long bytesRead() {
+		// Stream bytes are consumed once they are in the buffer
+		return this.discarded + (this.in == null ? this.position : this.limit);
+	}
+
+	/**
+	 * Makes sure that at least <code>count</code> bytes are available in the buffer.
+	 */
+	@Override
+	void require(int count) throws IOException {
+		int available = this.limit - this.position;
+
+		if (available >= count) {
+			return;
+		}
+
+		if (this.in == null) {
+			throw new InvalidQOIStreamException("Unexpected end of stream");
+		}
+
+		System.arraycopy(this.buffer, this.position, this.buffer, 0, available);
+
+		this.discarded += this.position;
+		this.position = 0;
+		this.limit = available;
+
+		while (this.limit < count) {
+			// Without buffering, read exactly as many bytes as requested
+			int read = this.in.read(this.buffer, this.limit, (this.useBuffer ? this.buffer.length : count) - this.limit);
+
+			if (read == -1) {
+				throw new InvalidQOIStreamException("Unexpected end of stream");
+			}
+
+			this.limit += read;
+		}
+	}
+
+}
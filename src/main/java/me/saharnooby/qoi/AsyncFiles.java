@@ -0,0 +1,139 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads and writes whole files using {@link AsynchronousFileChannel}, without blocking the calling thread.
+ * Completion handlers run in the default thread pool of asynchronous channels.
+ */
+final class AsyncFiles {
+
+	/**
+	 * Reads the whole file into a heap buffer. The returned buffer is flipped, ready to be read.
+	 */
+	static CompletableFuture<ByteBuffer> read(@NonNull Path path) {
+		CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+
+		AsynchronousFileChannel channel = open(path, result, StandardOpenOption.READ);
+
+		if (channel == null) {
+			return result;
+		}
+
+		long size;
+
+		try {
+			size = channel.size();
+		} catch (IOException e) {
+			closeExceptionally(channel, result, e);
+
+			return result;
+		}
+
+		if (size > Integer.MAX_VALUE) {
+			closeExceptionally(channel, result, new IOException("File is too large: " + size + " bytes"));
+
+			return result;
+		}
+
+		read(channel, ByteBuffer.allocate((int) size), result);
+
+		return result;
+	}
+
+	/**
+	 * Writes remaining bytes of the buffer into the file, replacing its contents.
+	 */
+	static CompletableFuture<Void> write(@NonNull Path path, @NonNull ByteBuffer buffer) {
+		CompletableFuture<Void> result = new CompletableFuture<>();
+
+		AsynchronousFileChannel channel = open(path, result, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+		if (channel != null) {
+			write(channel, buffer, buffer.position(), result);
+		}
+
+		return result;
+	}
+
+	private static AsynchronousFileChannel open(@NonNull Path path, @NonNull CompletableFuture<?> result, OpenOption... options) {
+		try {
+			return AsynchronousFileChannel.open(path, options);
+		} catch (IOException | RuntimeException e) {
+			result.completeExceptionally(e);
+
+			return null;
+		}
+	}
+
+	private static void read(@NonNull AsynchronousFileChannel channel, @NonNull ByteBuffer buffer, @NonNull CompletableFuture<ByteBuffer> result) {
+		channel.read(buffer, buffer.position(), null, new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(Integer read, Void attachment) {
+				// The file may be truncated while it is read, then the decoder will report unexpected end of stream
+				if (read == -1 || !buffer.hasRemaining()) {
+					buffer.flip();
+
+					close(channel, result, buffer);
+				} else {
+					read(channel, buffer, result);
+				}
+			}
+
+			@Override
+			public void failed(Throwable e, Void attachment) {
+				closeExceptionally(channel, result, e);
+			}
+		});
+	}
+
+	private static void write(@NonNull AsynchronousFileChannel channel, @NonNull ByteBuffer buffer, long position, @NonNull CompletableFuture<Void> result) {
+		channel.write(buffer, position, null, new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(Integer written, Void attachment) {
+				if (buffer.hasRemaining()) {
+					write(channel, buffer, position + written, result);
+				} else {
+					close(channel, result, null);
+				}
+			}
+
+			@Override
+			public void failed(Throwable e, Void attachment) {
+				closeExceptionally(channel, result, e);
+			}
+		});
+	}
+
+	private static <T> void close(@NonNull AsynchronousFileChannel channel, @NonNull CompletableFuture<T> result, T value) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			result.completeExceptionally(e);
+
+			return;
+		}
+
+		result.complete(value);
+	}
+
+	private static void closeExceptionally(@NonNull AsynchronousFileChannel channel, @NonNull CompletableFuture<?> result, @NonNull Throwable e) {
+		try {
+			channel.close();
+		} catch (IOException suppressed) {
+			e.addSuppressed(suppressed);
+		}
+
+		result.completeExceptionally(e);
+	}
+
+}
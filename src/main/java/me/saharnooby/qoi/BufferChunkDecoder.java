@@ -0,0 +1,141 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Decodes chunks from a byte buffer using absolute reads, so direct and memory-mapped
+ * buffers are read in place without copying.
+ * Bounds are checked once per chunk instead of once per byte.
+ */
+final class BufferChunkDecoder extends ChunkDecoder {
+
+	private ByteBuffer buffer;
+	private int start;
+	private int limit;
+
+	BufferChunkDecoder(@NonNull ByteBuffer buffer) {
+		reset(buffer);
+	}
+
+	/**
+	 * Creates a reusable decoder, which must be reset to some buffer before use.
+	 */
+	BufferChunkDecoder() {
+
+	}
+
+	/**
+	 * Prepares the decoder to read a new image from a byte buffer, starting at its position.
+	 */
+	void reset(@NonNull ByteBuffer buffer) {
+		reset();
+
+		this.buffer = buffer;
+		this.start = buffer.position();
+		this.position = this.start;
+		this.limit = buffer.limit();
+	}
+
+	/**
+	 * Drops the reference to the buffer, so a reused decoder does not keep caller's data reachable.
+	 */
+	void clear() {
+		this.buffer = null;
+		this.position = 0;
+		this.limit = 0;
+	}
+
+	@Override
+	void decode(int[] pixels, int offset, int count) throws IOException {
+		int[] index = this.index;
+		int px = this.pixel;
+		int run = this.run;
+
+		ByteBuffer data = this.buffer;
+		int pos = this.position;
+		int chunksLimit = this.limit - CHUNK_LOOKAHEAD;
+
+		int countFrom = pos;
+
+		int end = offset + count;
+
+		for (int i = offset; i < end; ) {
+			if (run > 0) {
+				int n = Math.min(run, end - i);
+
+				Arrays.fill(pixels, i, i + n, px);
+
+				run -= n;
+				i += n;
+
+				continue;
+			}
+
+			if (pos > chunksLimit) {
+				throw new InvalidQOIStreamException("Unexpected end of stream");
+			}
+
+			int b1 = data.get(pos++) & 0xFF;
+
+			if (b1 == QOI_OP_RGB) {
+				px = (data.get(pos) & 0xFF) << 24 | (data.get(pos + 1) & 0xFF) << 16 | (data.get(pos + 2) & 0xFF) << 8 | (px & 0xFF);
+				pos += 3;
+			} else if (b1 == QOI_OP_RGBA) {
+				px = (data.get(pos) & 0xFF) << 24 | (data.get(pos + 1) & 0xFF) << 16 | (data.get(pos + 2) & 0xFF) << 8 | (data.get(pos + 3) & 0xFF);
+				pos += 4;
+			} else {
+				switch (b1 & QOI_MASK_2) {
+					case QOI_OP_INDEX:
+						px = index[b1];
+
+						break;
+					case QOI_OP_DIFF:
+						px = applyDiff(px, b1);
+
+						break;
+					case QOI_OP_LUMA:
+						px = applyLuma(px, b1, data.get(pos++) & 0xFF);
+
+						break;
+					case QOI_OP_RUN:
+						run = b1 & 0x3F;
+
+						break;
+				}
+			}
+
+			index[getHashTableIndexRGBA(px)] = px;
+
+			pixels[i++] = px;
+		}
+
+		if (this.statistics != null) {
+			this.statistics.countChunks(data, countFrom, pos);
+		}
+
+		this.pixel = px;
+		this.run = run;
+		this.position = pos;
+	}
+
+	@Override
+	byte readByte() throws IOException {
+		if (this.position == this.limit) {
+			throw new InvalidQOIStreamException("Unexpected end of stream");
+		}
+
+		return this.buffer.get(this.position++);
+	}
+
+	@Override
+	long bytesRead() {
+		return this.position - this.start;
+	}
+
+}
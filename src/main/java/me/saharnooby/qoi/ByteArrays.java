@@ -0,0 +1,43 @@
+package me.saharnooby.qoi;
+
+/**
+ * Reads and writes pixels packed as 0xRRGGBBAA in byte arrays, where they are stored as [R, G, B, (A)].
+ * <p>This Java 8 version accesses bytes one by one. On Java 9+ it is replaced by the version from
+ * <code>META-INF/versions/11</code> of the multi-release jar, which accesses whole 32-bit words.
+ * Because of this, RGB methods require the byte after the pixel to exist, and may overwrite it.</p>
+ */
+final class ByteArrays {
+
+	static int getInt(byte[] array, int index) {
+		return (array[index] & 0xFF) << 24 |
+				(array[index + 1] & 0xFF) << 16 |
+				(array[index + 2] & 0xFF) << 8 |
+				(array[index + 3] & 0xFF);
+	}
+
+	static void setInt(byte[] array, int index, int value) {
+		array[index] = (byte) (value >> 24);
+		array[index + 1] = (byte) (value >> 16);
+		array[index + 2] = (byte) (value >> 8);
+		array[index + 3] = (byte) value;
+	}
+
+	/**
+	 * Returns RGB of the pixel with alpha set to 0.
+	 */
+	static int getRGB(byte[] array, int index) {
+		return (array[index] & 0xFF) << 24 |
+				(array[index + 1] & 0xFF) << 16 |
+				(array[index + 2] & 0xFF) << 8;
+	}
+
+	/**
+	 * Writes RGB of the pixel. The byte after it may be overwritten with alpha, so it must be written after this call.
+	 */
+	static void setRGB(byte[] array, int index, int value) {
+		array[index] = (byte) (value >> 24);
+		array[index + 1] = (byte) (value >> 16);
+		array[index + 2] = (byte) (value >> 8);
+	}
+
+}
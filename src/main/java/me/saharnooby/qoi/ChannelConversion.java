@@ -0,0 +1,39 @@
+package me.saharnooby.qoi;
+
+/**
+ * Converts pixel data between 3 and 4 channels.
+ * <p>This Java 8 version uses scalar loops. On Java 17+ it is replaced by the version from
+ * <code>META-INF/versions/17</code> of the multi-release jar, which uses the Vector API
+ * when the <code>jdk.incubator.vector</code> module is added to the JVM.</p>
+ */
+final class ChannelConversion {
+
+	/**
+	 * Copies R, G and B of <code>count</code> 4-channel pixels. Pixels are converted from the first one,
+	 * so the destination may overlap the source if it starts at the same position or earlier.
+	 */
+	static void removeAlpha(byte[] source, int sourcePos, byte[] destination, int destinationPos, int count) {
+		for (int i = 0; i < count; i++, sourcePos += 4, destinationPos += 3) {
+			destination[destinationPos] = source[sourcePos];
+			destination[destinationPos + 1] = source[sourcePos + 1];
+			destination[destinationPos + 2] = source[sourcePos + 2];
+		}
+	}
+
+	/**
+	 * Copies <code>count</code> 3-channel pixels adding the alpha. Pixels are converted from the last one,
+	 * so the destination may overlap the source if it starts at the same position or later.
+	 */
+	static void addAlpha(byte[] source, int sourcePos, byte[] destination, int destinationPos, int count, byte alpha) {
+		for (int i = count - 1; i >= 0; i--) {
+			int s = sourcePos + i * 3;
+			int d = destinationPos + i * 4;
+
+			destination[d + 3] = alpha;
+			destination[d + 2] = source[s + 2];
+			destination[d + 1] = source[s + 1];
+			destination[d] = source[s];
+		}
+	}
+
+}
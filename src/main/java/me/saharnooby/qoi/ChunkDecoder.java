@@ -0,0 +1,146 @@
+package me.saharnooby.qoi;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Decodes QOI header and chunks from some kind of input.
+ * Decoded pixels are packed into ints as 0xRRGGBBAA.
+ * Decoder state (previous pixel, index and pending run) is kept between {@link #decode} calls,
+ * so pixels can be decoded in spans of any length.
+ */
+abstract class ChunkDecoder {
+
+	final int[] index = createHashTableRGBA();
+
+	int pixel = OPAQUE_BLACK;
+
+	int run;
+
+	/**
+	 * Statistics to count read chunks into, or <code>null</code>. Kept when the decoder is reset.
+	 */
+	QOIStatistics statistics;
+
+	/**
+	 * Position of the next byte to read in the underlying array or buffer.
+	 */
+	int position;
+
+	/**
+	 * Resets decoder state to the initial state of an image, so the decoder can be reused.
+	 */
+	final void reset() {
+		Arrays.fill(this.index, 0);
+
+		this.pixel = OPAQUE_BLACK;
+		this.run = 0;
+	}
+
+	/**
+	 * Reads and validates the header.
+	 */
+	final QOIHeader readHeader() throws IOException {
+		require(QOI_HEADER_SIZE);
+
+		int headerMagic = readInt();
+
+		if (headerMagic != QOI_MAGIC) {
+			throw new InvalidQOIStreamException("Invalid magic value, probably not a QOI image");
+		}
+
+		int width = readInt();
+
+		if (width < 1) {
+			throw new InvalidQOIStreamException("Invalid image width");
+		}
+
+		int height = readInt();
+
+		if (height < 1) {
+			throw new InvalidQOIStreamException("Invalid image height");
+		}
+
+		int channels = readByte() & 0xFF;
+
+		if (channels != 3 && channels != 4) {
+			throw new InvalidQOIStreamException("Invalid stored channel count");
+		}
+
+		return new QOIHeader(width, height, channels, readColorSpace());
+	}
+
+	/**
+	 * Reads and validates padding after the last chunk.
+	 */
+	final void readPadding() throws IOException {
+		for (int i = 0; i < QOI_PADDING.length; i++) {
+			if (QOI_PADDING[i] != readByte()) {
+				throw new InvalidQOIStreamException("Invalid padding");
+			}
+		}
+	}
+
+	/**
+	 * Decodes next <code>count</code> pixels.
+	 * @param pixels Destination array of packed 0xRRGGBBAA pixels.
+	 * @param offset Offset in the destination array.
+	 * @param count Pixel count.
+	 */
+	abstract void decode(int[] pixels, int offset, int count) throws IOException;
+
+	abstract byte readByte() throws IOException;
+
+	/**
+	 * Returns count of bytes consumed from the input since the decoder was reset, including bytes read ahead from a stream.
+	 */
+	abstract long bytesRead();
+
+	/**
+	 * Makes sure that at least <code>count</code> bytes are available, so that they are read from the input at once.
+	 */
+	void require(int count) throws IOException {
+		// Nothing to do when the whole input is already in memory
+	}
+
+	static int applyDiff(int pixel, int b1) {
+		int r = (pixel >>> 24) + ((b1 >> 4) & 0x03) - 2;
+		int g = (pixel >>> 16) + ((b1 >> 2) & 0x03) - 2;
+		int b = (pixel >>> 8) + (b1 & 0x03) - 2;
+
+		return (r & 0xFF) << 24 | (g & 0xFF) << 16 | (b & 0xFF) << 8 | (pixel & 0xFF);
+	}
+
+	static int applyLuma(int pixel, int b1, int b2) {
+		int vg = (b1 & 0x3F) - 32;
+		int r = (pixel >>> 24) + vg - 8 + ((b2 >> 4) & 0x0F);
+		int g = (pixel >>> 16) + vg;
+		int b = (pixel >>> 8) + vg - 8 + (b2 & 0x0F);
+
+		return (r & 0xFF) << 24 | (g & 0xFF) << 16 | (b & 0xFF) << 8 | (pixel & 0xFF);
+	}
+
+	private QOIColorSpace readColorSpace() throws IOException {
+		int value = readByte() & 0xFF;
+
+		switch (value) {
+			case QOI_SRGB:
+				return QOIColorSpace.SRGB;
+			case QOI_LINEAR:
+				return QOIColorSpace.LINEAR;
+		}
+
+		throw new InvalidQOIStreamException("Invalid color space value " + value);
+	}
+
+	private int readInt() throws IOException {
+		int a = readByte() & 0xFF;
+		int b = readByte() & 0xFF;
+		int c = readByte() & 0xFF;
+		int d = readByte() & 0xFF;
+		return (a << 24) | (b << 16) | (c << 8) | d;
+	}
+
+}
@@ -0,0 +1,605 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Encodes packed 0xRRGGBBAA pixels into QOI chunks and writes them into some kind of output.
+ * Encoder state (previous pixel, index and pending run) is kept between {@link #encode} calls,
+ * so pixels can be encoded in spans of any length.
+ * <p>Chunks are written into a byte array window with one bounds check per pixel. The window is either
+ * a buffer flushed into a stream or a byte buffer, or the caller's destination array itself.</p>
+ */
+final class ChunkEncoder {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	// Enough for any chunk written directly into a caller's array near its end
+	private static final int TAIL_BUFFER_SIZE = 16;
+
+	// Longest output for a single pixel is QOI_OP_RUN followed by QOI_OP_RGBA
+	private static final int MAX_PIXEL_SIZE = 1 + 5;
+
+	final int[] index = createHashTableRGBA();
+
+	int previous = OPAQUE_BLACK;
+
+	int run;
+
+	/**
+	 * Statistics to count written chunks into, or <code>null</code>. Kept when the encoder is reset.
+	 */
+	QOIStatistics statistics;
+
+	/**
+	 * Maximum difference between source and encoded value of R, G and B channels, or 0 for lossless encoding.
+	 * Kept when the encoder is reset.
+	 */
+	int maxError;
+
+	private OutputStream out;
+	private ByteBuffer target;
+
+	// Set when writing directly into a caller's array
+	private byte[] array;
+	private int arrayLimit;
+	private int arrayPosition;
+
+	// Count of bytes written before the current window
+	private long flushed;
+
+	// Buffer for writing into streams and byte buffers, allocated on first use and kept when the encoder is reset
+	private byte[] ownBuffer;
+
+	// Buffer for chunks near the end of a caller's array, allocated on first use and kept when the encoder is reset
+	private byte[] tailBuffer;
+
+	private byte[] buffer;
+	private int start;
+	private int position;
+	private int limit;
+
+	ChunkEncoder(@NonNull OutputStream out) {
+		reset(out);
+	}
+
+	/**
+	 * Creates an encoder that writes into a stream, flushing every <code>bufferSize</code> bytes.
+	 */
+	ChunkEncoder(@NonNull OutputStream out, int bufferSize) {
+		this.ownBuffer = new byte[bufferSize];
+
+		reset(out);
+	}
+
+	ChunkEncoder(@NonNull ByteBuffer target) {
+		reset(target);
+	}
+
+	/**
+	 * Creates an encoder that writes directly into an array, without buffering.
+	 */
+	ChunkEncoder(byte @NonNull [] array, int offset, int length) {
+		reset(array, offset, length);
+	}
+
+	/**
+	 * Creates a reusable encoder, which must be reset to some output before use.
+	 */
+	ChunkEncoder() {
+
+	}
+
+	/**
+	 * Prepares the encoder to write a new image into a stream.
+	 */
+	void reset(@NonNull OutputStream out) {
+		reset(out, null, null, 0, 0);
+	}
+
+	/**
+	 * Prepares the encoder to write a new image into a byte buffer.
+	 */
+	void reset(@NonNull ByteBuffer target) {
+		reset(null, target, null, 0, 0);
+	}
+
+	/**
+	 * Prepares the encoder to write a new image directly into an array, without buffering.
+	 */
+	void reset(byte @NonNull [] array, int offset, int length) {
+		reset(null, null, array, offset, offset + length);
+	}
+
+	/**
+	 * Drops references to the output, so a reused encoder does not keep caller's data reachable.
+	 */
+	void clear() {
+		this.out = null;
+		this.target = null;
+		this.array = null;
+		this.buffer = null;
+	}
+
+	private void reset(OutputStream out, ByteBuffer target, byte[] array, int offset, int arrayLimit) {
+		Arrays.fill(this.index, 0);
+
+		this.previous = OPAQUE_BLACK;
+		this.run = 0;
+
+		this.out = out;
+		this.target = target;
+		this.array = array;
+		this.arrayLimit = arrayLimit;
+		this.arrayPosition = offset;
+		this.flushed = 0;
+
+		if (array != null) {
+			this.buffer = array;
+			this.start = offset;
+			this.position = offset;
+			this.limit = arrayLimit;
+		} else {
+			if (this.ownBuffer == null) {
+				this.ownBuffer = new byte[BUFFER_SIZE];
+			}
+
+			this.buffer = this.ownBuffer;
+			this.start = 0;
+			this.position = 0;
+			this.limit = this.ownBuffer.length;
+		}
+	}
+
+	void writeHeader(int width, int height, int channels, @NonNull QOIColorSpace colorSpace) throws IOException {
+		writeInt(QOI_MAGIC);
+		writeInt(width);
+		writeInt(height);
+		write(channels);
+
+		switch (colorSpace) {
+			case SRGB:
+				write(QOI_SRGB);
+				break;
+			case LINEAR:
+				write(QOI_LINEAR);
+				break;
+			default:
+				throw new IllegalStateException("Unsupported color space");
+		}
+	}
+
+	/**
+	 * Encodes next <code>count</code> pixels.
+	 * @param pixels Source array of packed 0xRRGGBBAA pixels.
+	 *               When encoding a 3-channel image, alpha of all pixels must be 0xFF.
+	 * @param offset Offset in the source array.
+	 * @param count Pixel count.
+	 */
+	void encode(int[] pixels, int offset, int count) throws IOException {
+		if (this.maxError > 0) {
+			encodeNearLossless(pixels, offset, count);
+
+			return;
+		}
+
+		int[] index = this.index;
+		int prev = this.previous;
+		int run = this.run;
+
+		byte[] data = this.buffer;
+		int pos = this.position;
+		int pixelLimit = this.limit - MAX_PIXEL_SIZE;
+
+		// Start of chunks written by this call that are not counted yet
+		int countFrom = pos;
+
+		for (int i = offset, end = offset + count; i < end; i++) {
+			int pixel = pixels[i];
+
+			if (pos > pixelLimit) {
+				this.position = pos;
+
+				if (this.statistics != null) {
+					this.statistics.countChunks(data, countFrom, pos);
+				}
+
+				flush();
+
+				data = this.buffer;
+				pos = this.position;
+				pixelLimit = this.limit - MAX_PIXEL_SIZE;
+				countFrom = pos;
+			}
+
+			if (pixel == prev) {
+				run++;
+
+				if (run == 62) {
+					data[pos++] = (byte) (QOI_OP_RUN | (run - 1));
+
+					run = 0;
+				}
+
+				continue;
+			}
+
+			if (run > 0) {
+				data[pos++] = (byte) (QOI_OP_RUN | (run - 1));
+
+				run = 0;
+			}
+
+			int indexPos = getHashTableIndexRGBA(pixel);
+
+			if (index[indexPos] == pixel) {
+				data[pos++] = (byte) (QOI_OP_INDEX | indexPos);
+			} else {
+				index[indexPos] = pixel;
+
+				if ((pixel & 0xFF) == (prev & 0xFF)) {
+					// Differences wrap around, casting to byte makes them signed
+					int dr = (byte) ((pixel >>> 24) - (prev >>> 24));
+					int dg = (byte) ((pixel >>> 16) - (prev >>> 16));
+					int db = (byte) ((pixel >>> 8) - (prev >>> 8));
+
+					if (smallestDiff(dr) && smallestDiff(dg) && smallestDiff(db)) {
+						data[pos++] = (byte) (QOI_OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+					} else {
+						int dgr = dr - dg;
+						int dgb = db - dg;
+
+						if (smallerDiff(dgr) && smallDiff(dg) && smallerDiff(dgb)) {
+							data[pos] = (byte) (QOI_OP_LUMA | (dg + 32));
+							data[pos + 1] = (byte) ((dgr + 8) << 4 | (dgb + 8));
+							pos += 2;
+						} else {
+							data[pos] = (byte) QOI_OP_RGB;
+							// The byte after RGB is below the pixel limit and is overwritten by the next chunk
+							ByteArrays.setRGB(data, pos + 1, pixel);
+							pos += 4;
+						}
+					}
+				} else {
+					data[pos] = (byte) QOI_OP_RGBA;
+					ByteArrays.setInt(data, pos + 1, pixel);
+					pos += 5;
+				}
+			}
+
+			prev = pixel;
+		}
+
+		if (this.statistics != null) {
+			this.statistics.countChunks(data, countFrom, pos);
+		}
+
+		this.previous = prev;
+		this.run = run;
+		this.position = pos;
+	}
+
+	/**
+	 * Encodes next <code>count</code> pixels allowing R, G and B of each pixel to differ from the source by {@link #maxError}.
+	 * A pixel is replaced by a close one when that makes its chunk shorter: previous pixel continues a run,
+	 * an index entry is referenced, or a difference is clamped to fit <code>QOI_OP_DIFF</code> or <code>QOI_OP_LUMA</code>.
+	 * Alpha is kept exact. Differences are computed from the pixel the decoder will see, so errors do not accumulate.
+	 */
+	private void encodeNearLossless(int[] pixels, int offset, int count) throws IOException {
+		int maxError = this.maxError;
+		int[] index = this.index;
+		int prev = this.previous;
+		int run = this.run;
+
+		byte[] data = this.buffer;
+		int pos = this.position;
+		int pixelLimit = this.limit - MAX_PIXEL_SIZE;
+
+		int countFrom = pos;
+
+		for (int i = offset, end = offset + count; i < end; i++) {
+			int pixel = pixels[i];
+
+			if (pos > pixelLimit) {
+				this.position = pos;
+
+				if (this.statistics != null) {
+					this.statistics.countChunks(data, countFrom, pos);
+				}
+
+				flush();
+
+				data = this.buffer;
+				pos = this.position;
+				pixelLimit = this.limit - MAX_PIXEL_SIZE;
+				countFrom = pos;
+			}
+
+			if (isClose(pixel, prev, maxError)) {
+				run++;
+
+				if (run == 62) {
+					data[pos++] = (byte) (QOI_OP_RUN | (run - 1));
+
+					run = 0;
+				}
+
+				continue;
+			}
+
+			if (run > 0) {
+				data[pos++] = (byte) (QOI_OP_RUN | (run - 1));
+
+				run = 0;
+			}
+
+			// Pixel that the decoder will decode from the written chunk
+			int decoded = pixel;
+
+			int indexPos = getHashTableIndexRGBA(pixel);
+
+			if (isClose(pixel, index[indexPos], maxError) && getHashTableIndexRGBA(index[indexPos]) == indexPos) {
+				decoded = index[indexPos];
+
+				data[pos++] = (byte) (QOI_OP_INDEX | indexPos);
+			} else if ((pixel & 0xFF) == (prev & 0xFF)) {
+				int pr = prev >>> 24;
+				int pg = (prev >> 16) & 0xFF;
+				int pb = (prev >> 8) & 0xFF;
+
+				int r = clampDiff(pixel >>> 24, pr, -2, 1);
+				int g = clampDiff((pixel >> 16) & 0xFF, pg, -2, 1);
+				int b = clampDiff((pixel >> 8) & 0xFF, pb, -2, 1);
+				int diffPixel = r << 24 | g << 16 | b << 8 | (pixel & 0xFF);
+
+				if (isClose(pixel, diffPixel, maxError)) {
+					decoded = diffPixel;
+
+					data[pos++] = (byte) (QOI_OP_DIFF | ((byte) (r - pr) + 2) << 4 | ((byte) (g - pg) + 2) << 2 | ((byte) (b - pb) + 2));
+				} else if ((indexPos = findInIndex(index, pixel, maxError)) >= 0) {
+					decoded = index[indexPos];
+
+					data[pos++] = (byte) (QOI_OP_INDEX | indexPos);
+				} else {
+					// Green difference is clamped first, red and blue differences are relative to it
+					g = clampDiff((pixel >> 16) & 0xFF, pg, -32, 31);
+
+					int dg = (byte) (g - pg);
+					int rBase = (pr + dg) & 0xFF;
+					int bBase = (pb + dg) & 0xFF;
+
+					r = clampDiff(pixel >>> 24, rBase, -8, 7);
+					b = clampDiff((pixel >> 8) & 0xFF, bBase, -8, 7);
+
+					int lumaPixel = r << 24 | g << 16 | b << 8 | (pixel & 0xFF);
+
+					if (isClose(pixel, lumaPixel, maxError)) {
+						decoded = lumaPixel;
+
+						data[pos] = (byte) (QOI_OP_LUMA | (dg + 32));
+						data[pos + 1] = (byte) (((byte) (r - rBase) + 8) << 4 | ((byte) (b - bBase) + 8));
+						pos += 2;
+					} else {
+						data[pos] = (byte) QOI_OP_RGB;
+						// The byte after RGB is below the pixel limit and is overwritten by the next chunk
+						ByteArrays.setRGB(data, pos + 1, pixel);
+						pos += 4;
+					}
+				}
+			} else if ((indexPos = findInIndex(index, pixel, maxError)) >= 0) {
+				decoded = index[indexPos];
+
+				data[pos++] = (byte) (QOI_OP_INDEX | indexPos);
+			} else {
+				data[pos] = (byte) QOI_OP_RGBA;
+				ByteArrays.setInt(data, pos + 1, pixel);
+				pos += 5;
+			}
+
+			// Same update as the decoder does
+			index[getHashTableIndexRGBA(decoded)] = decoded;
+
+			prev = decoded;
+		}
+
+		if (this.statistics != null) {
+			this.statistics.countChunks(data, countFrom, pos);
+		}
+
+		this.previous = prev;
+		this.run = run;
+		this.position = pos;
+	}
+
+	/**
+	 * Prepares the encoder to continue an image after the specified pixel, when the decoder's index at this point is not known.
+	 * Index slots are filled with pixels that never hash into them, so a slot is used only after this encoder writes it.
+	 * @param previous Previous pixel, packed as 0xRRGGBBAA.
+	 */
+	void startSegment(int previous) {
+		// 0 hashes into slot 0, so slot 0 gets a pixel that hashes into another slot
+		Arrays.fill(this.index, 0);
+		this.index[0] = 0x01000000;
+
+		this.previous = previous;
+	}
+
+	/**
+	 * Writes already encoded chunks as is.
+	 */
+	void writeChunks(byte[] chunks, int offset, int length) throws IOException {
+		if (this.statistics != null) {
+			this.statistics.countChunks(chunks, offset, offset + length);
+		}
+
+		while (length > 0) {
+			if (this.position == this.limit) {
+				flush();
+			}
+
+			int count = Math.min(length, this.limit - this.position);
+
+			System.arraycopy(chunks, offset, this.buffer, this.position, count);
+
+			this.position += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Writes pending run and padding, and flushes the output.
+	 */
+	void finish() throws IOException {
+		finish(true);
+	}
+
+	/**
+	 * Writes pending run and, if requested, padding, and flushes the output.
+	 */
+	void finish(boolean writePadding) throws IOException {
+		writeRun();
+
+		if (writePadding) {
+			for (byte b : QOI_PADDING) {
+				write(b);
+			}
+		}
+
+		if (this.position > this.start) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes pending run, if any. After this, all pixels passed to the encoder are represented by written chunks.
+	 */
+	void writeRun() throws IOException {
+		if (this.run > 0) {
+			write(QOI_OP_RUN | (this.run - 1));
+
+			if (this.statistics != null) {
+				this.statistics.countRun(this.run);
+			}
+
+			this.run = 0;
+		}
+	}
+
+	/**
+	 * Returns count of bytes written so far, including bytes that are not flushed yet.
+	 */
+	long size() {
+		return this.flushed + (this.position - this.start);
+	}
+
+	/**
+	 * Returns position in the destination array after the last written byte.
+	 * Valid only after {@link #finish()} when writing directly into an array.
+	 */
+	int arrayPosition() {
+		return this.arrayPosition;
+	}
+
+	private void write(int value) throws IOException {
+		if (this.position == this.limit) {
+			flush();
+		}
+
+		this.buffer[this.position++] = (byte) value;
+	}
+
+	private void writeInt(int value) throws IOException {
+		write(value >> 24);
+		write(value >> 16);
+		write(value >> 8);
+		write(value);
+	}
+
+	private void flush() throws IOException {
+		int length = this.position - this.start;
+
+		this.flushed += length;
+
+		if (this.out != null) {
+			this.out.write(this.buffer, 0, length);
+		} else if (this.target != null) {
+			// Throws BufferOverflowException if there is not enough space
+			this.target.put(this.buffer, 0, length);
+		} else if (this.buffer == this.array) {
+			// Close to the end of the array, continue in a small buffer and copy from it only what fits
+			if (this.tailBuffer == null) {
+				this.tailBuffer = new byte[TAIL_BUFFER_SIZE];
+			}
+
+			this.arrayPosition = this.position;
+			this.buffer = this.tailBuffer;
+			this.start = 0;
+			this.limit = TAIL_BUFFER_SIZE;
+		} else {
+			if (length > this.arrayLimit - this.arrayPosition) {
+				throw new BufferOverflowException();
+			}
+
+			System.arraycopy(this.buffer, 0, this.array, this.arrayPosition, length);
+
+			this.arrayPosition += length;
+		}
+
+		this.position = this.start;
+	}
+
+	/**
+	 * Returns true if alpha of the pixels is equal, and other channels differ by no more than <code>maxError</code>.
+	 */
+	private static boolean isClose(int a, int b, int maxError) {
+		return (a & 0xFF) == (b & 0xFF)
+				&& Math.abs((a >>> 24) - (b >>> 24)) <= maxError
+				&& Math.abs(((a >> 16) & 0xFF) - ((b >> 16) & 0xFF)) <= maxError
+				&& Math.abs(((a >> 8) & 0xFF) - ((b >> 8) & 0xFF)) <= maxError;
+	}
+
+	/**
+	 * Returns position of an index entry that is close to the pixel, or -1.
+	 * Only entries stored in their own slot are used, these are guaranteed to be in the decoder's index too.
+	 */
+	private static int findInIndex(int[] index, int pixel, int maxError) {
+		for (int i = 0; i < index.length; i++) {
+			if (isClose(pixel, index[i], maxError) && getHashTableIndexRGBA(index[i]) == i) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns a channel value closest to <code>value</code> that differs from <code>base</code> by <code>min..max</code>,
+	 * with the difference wrapping around like in the decoder.
+	 */
+	private static int clampDiff(int value, int base, int min, int max) {
+		int diff = Math.max(min, Math.min(max, (byte) (value - base)));
+
+		return (base + diff) & 0xFF;
+	}
+
+	private static boolean smallDiff(int i) {
+		return i > -33 && i < 32;
+	}
+
+	private static boolean smallerDiff(int i) {
+		return i > -9 && i < 8;
+	}
+
+	private static boolean smallestDiff(int i) {
+		return i > -3 && i < 2;
+	}
+
+}
@@ -0,0 +1,45 @@
+package me.saharnooby.qoi;
+
+/**
+ * Reports encoded and decoded images to JDK Flight Recorder.
+ * <p>This Java 8 version does nothing. On Java 11+ it is replaced by the version from
+ * <code>META-INF/versions/11</code> of the multi-release jar, which emits <code>me.saharnooby.qoi.Encode</code>
+ * and <code>me.saharnooby.qoi.Decode</code> events.</p>
+ */
+final class CodecEvents {
+
+	/**
+	 * Starts timing an encoding.
+	 * @return Event to pass to {@link #endEncode}, or <code>null</code> if it is not recorded.
+	 */
+	static Object beginEncode() {
+		return null;
+	}
+
+	/**
+	 * Starts timing a decoding.
+	 * @return Event to pass to {@link #endDecode}, or <code>null</code> if it is not recorded.
+	 */
+	static Object beginDecode() {
+		return null;
+	}
+
+	/**
+	 * Ends timing a successful encoding and commits the event.
+	 * @param inputSize Size of the source pixels in bytes.
+	 * @param outputSize Size of the written QOI image in bytes.
+	 */
+	static void endEncode(Object event, QOIHeader header, long inputSize, long outputSize) {
+
+	}
+
+	/**
+	 * Ends timing a successful decoding and commits the event.
+	 * @param inputSize Count of bytes read, including any bytes that were buffered past the image.
+	 * @param outputSize Size of the decoded pixels in bytes.
+	 */
+	static void endDecode(Object event, QOIHeader header, long inputSize, long outputSize) {
+
+	}
+
+}
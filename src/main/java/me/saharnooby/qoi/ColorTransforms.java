@@ -0,0 +1,169 @@
+package me.saharnooby.qoi;
+
+/**
+ * Lookup tables and span conversions for {@link QOIColorTransform}. Tables are built when this class is first used.
+ */
+final class ColorTransforms {
+
+	/**
+	 * Linear value in range [0, 1] of each 8-bit sRGB value.
+	 */
+	static final float[] SRGB_TO_LINEAR = new float[256];
+
+	/**
+	 * Value in range [0, 1] of each 8-bit value, without conversion.
+	 */
+	static final float[] NORMALIZED = new float[256];
+
+	/**
+	 * Count of entries minus one in the table for converting float linear values to sRGB.
+	 */
+	static final int LINEAR_FLOAT_STEPS = 4095;
+
+	/**
+	 * 8-bit sRGB value of each linear value in range [0, 1] quantized to <code>LINEAR_FLOAT_STEPS</code> steps.
+	 */
+	static final byte[] LINEAR_FLOAT_TO_SRGB = new byte[LINEAR_FLOAT_STEPS + 1];
+
+	private static final byte[] SRGB_TO_LINEAR_8 = new byte[256];
+	private static final byte[] LINEAR_8_TO_SRGB = new byte[256];
+
+	// 255 * 2^16 / alpha, rounded
+	private static final int[] UNPREMULTIPLY = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			float linear = (float) srgbToLinear(i / 255.0);
+
+			SRGB_TO_LINEAR[i] = linear;
+			NORMALIZED[i] = i / 255F;
+			SRGB_TO_LINEAR_8[i] = (byte) Math.round(linear * 255);
+			LINEAR_8_TO_SRGB[i] = (byte) Math.round(linearToSrgb(i / 255.0) * 255);
+
+			if (i > 0) {
+				UNPREMULTIPLY[i] = (int) Math.round(255.0 * 65536 / i);
+			}
+		}
+
+		for (int i = 0; i <= LINEAR_FLOAT_STEPS; i++) {
+			LINEAR_FLOAT_TO_SRGB[i] = (byte) Math.round(linearToSrgb((double) i / LINEAR_FLOAT_STEPS) * 255);
+		}
+	}
+
+	private static double srgbToLinear(double value) {
+		return value <= 0.04045 ? value / 12.92 : Math.pow((value + 0.055) / 1.055, 2.4);
+	}
+
+	private static double linearToSrgb(double value) {
+		return value <= 0.0031308 ? value * 12.92 : 1.055 * Math.pow(value, 1 / 2.4) - 0.055;
+	}
+
+	/**
+	 * Converts decoded packed 0xRRGGBBAA pixels in place into the representation of the transform.
+	 * @param convertColorSpace Whether color values must be converted from sRGB to linear.
+	 */
+	static void decode(int[] pixels, int count, QOIColorTransform transform, boolean convertColorSpace) {
+		if (convertColorSpace) {
+			byte[] table = SRGB_TO_LINEAR_8;
+
+			for (int i = 0; i < count; i++) {
+				int pixel = pixels[i];
+
+				pixels[i] = (table[pixel >>> 24] & 0xFF) << 24 |
+						(table[(pixel >> 16) & 0xFF] & 0xFF) << 16 |
+						(table[(pixel >> 8) & 0xFF] & 0xFF) << 8 |
+						(pixel & 0xFF);
+			}
+		}
+
+		if (transform.premultiplied) {
+			for (int i = 0; i < count; i++) {
+				int pixel = pixels[i];
+				int a = pixel & 0xFF;
+
+				if (a != 0xFF) {
+					pixels[i] = multiply(pixel >>> 24, a) << 24 |
+							multiply((pixel >> 16) & 0xFF, a) << 16 |
+							multiply((pixel >> 8) & 0xFF, a) << 8 |
+							a;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts loaded packed 0xRRGGBBAA pixels in place from the representation of the transform into straight alpha
+	 * values of the image's color space.
+	 * @param convertColorSpace Whether color values must be converted from linear to sRGB.
+	 */
+	static void encode(int[] pixels, int count, QOIColorTransform transform, boolean convertColorSpace) {
+		if (transform.premultiplied) {
+			for (int i = 0; i < count; i++) {
+				int pixel = pixels[i];
+				int a = pixel & 0xFF;
+
+				if (a != 0xFF) {
+					int factor = UNPREMULTIPLY[a];
+
+					pixels[i] = divide(pixel >>> 24, factor) << 24 |
+							divide((pixel >> 16) & 0xFF, factor) << 16 |
+							divide((pixel >> 8) & 0xFF, factor) << 8 |
+							a;
+				}
+			}
+		}
+
+		if (convertColorSpace) {
+			byte[] table = LINEAR_8_TO_SRGB;
+
+			for (int i = 0; i < count; i++) {
+				int pixel = pixels[i];
+
+				pixels[i] = (table[pixel >>> 24] & 0xFF) << 24 |
+						(table[(pixel >> 16) & 0xFF] & 0xFF) << 16 |
+						(table[(pixel >> 8) & 0xFF] & 0xFF) << 8 |
+						(pixel & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * Returns <code>value * alpha / 255</code>, rounded.
+	 */
+	private static int multiply(int value, int alpha) {
+		int t = value * alpha + 128;
+
+		return (t + (t >> 8)) >> 8;
+	}
+
+	/**
+	 * Returns <code>value * 255 / alpha</code>, rounded and clamped to 255; zero alpha produces zero.
+	 */
+	private static int divide(int value, int factor) {
+		return Math.min((value * factor + 0x8000) >> 16, 255);
+	}
+
+	/**
+	 * Returns 8-bit sRGB value of a linear value, clamping it to range [0, 1].
+	 */
+	static int linearToSrgb(float value) {
+		// Negated comparison also maps NaN to zero
+		if (!(value > 0)) {
+			return 0;
+		}
+
+		return value >= 1 ? 255 : LINEAR_FLOAT_TO_SRGB[(int) (value * LINEAR_FLOAT_STEPS + 0.5F)] & 0xFF;
+	}
+
+	/**
+	 * Returns 8-bit value of a value in range [0, 1], clamping it.
+	 */
+	static int toByte(float value) {
+		if (!(value > 0)) {
+			return 0;
+		}
+
+		return value >= 1 ? 255 : (int) (value * 255 + 0.5F);
+	}
+
+}
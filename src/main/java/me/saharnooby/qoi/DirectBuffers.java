@@ -0,0 +1,40 @@
+package me.saharnooby.qoi;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases memory of direct and mapped byte buffers without waiting for garbage collection.
+ * <p>This Java 8 version calls the internal cleaner of the buffer. On Java 9+ it is replaced by the version from
+ * <code>META-INF/versions/11</code> of the multi-release jar, which uses <code>sun.misc.Unsafe.invokeCleaner</code>.</p>
+ */
+final class DirectBuffers {
+
+	/**
+	 * Releases memory of a direct buffer allocated by {@link ByteBuffer#allocateDirect(int)},
+	 * or unmaps a buffer returned by {@link java.nio.channels.FileChannel#map}.
+	 * The buffer and all its views must not be used after that.
+	 * @return <code>false</code> if the memory could not be released, then it is released by the garbage collector.
+	 */
+	static boolean release(ByteBuffer buffer) {
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+
+			Object cleaner = cleanerMethod.invoke(buffer);
+
+			if (cleaner == null) {
+				return false;
+			}
+
+			Method cleanMethod = cleaner.getClass().getMethod("clean");
+			cleanMethod.setAccessible(true);
+			cleanMethod.invoke(cleaner);
+
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package me.saharnooby.qoi;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A byte array output stream that exposes its buffer to avoid copying it.
+ */
+final class MemoryOutputStream extends ByteArrayOutputStream {
+
+	MemoryOutputStream(int initialSize) {
+		super(Math.max(32, initialSize));
+	}
+
+	/**
+	 * Returns the internal buffer. Only first {@link #size()} bytes are valid.
+	 */
+	byte[] array() {
+		return this.buf;
+	}
+
+	/**
+	 * Returns a buffer that wraps written bytes without copying them.
+	 */
+	ByteBuffer toByteBuffer() {
+		return ByteBuffer.wrap(this.buf, 0, this.count);
+	}
+
+}
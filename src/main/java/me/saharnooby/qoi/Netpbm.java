@@ -0,0 +1,176 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes headers of binary Netpbm images, which store raw pixel data in the same layout as {@link QOIImage}.
+ * Supported formats are PPM (<code>P6</code>, RGB) and PAM (<code>P7</code>, RGB or RGB_ALPHA), both with 8 bits per channel.
+ */
+final class Netpbm {
+
+	/**
+	 * Reads a header. The stream is positioned at the start of pixel data after that.
+	 * Since the header is read byte by byte, the stream should be buffered.
+	 * @return Header of the image; Netpbm does not store color space, so it is always sRGB.
+	 * @throws InvalidQOIStreamException If the header is invalid or the format is not supported.
+	 */
+	static QOIHeader readHeader(@NonNull InputStream in) throws IOException {
+		if (read(in) != 'P') {
+			throw new InvalidQOIStreamException("Invalid Netpbm magic");
+		}
+
+		int type = read(in);
+
+		if (type == '6') {
+			int width = readNumber(in);
+			int height = readNumber(in);
+			int maxValue = readNumber(in);
+
+			checkHeader(width, height, 3, maxValue);
+
+			return new QOIHeader(width, height, 3, QOIColorSpace.SRGB);
+		}
+
+		if (type != '7' || read(in) != '\n') {
+			throw new InvalidQOIStreamException("Unsupported Netpbm format, only binary PPM and PAM are supported");
+		}
+
+		int width = -1;
+		int height = -1;
+		int depth = -1;
+		int maxValue = -1;
+
+		String line;
+
+		while (!(line = readLine(in)).equals("ENDHDR")) {
+			String[] parts = line.trim().split("\\s+", 2);
+
+			switch (parts[0]) {
+				case "WIDTH":
+					width = parseNumber(parts);
+					break;
+				case "HEIGHT":
+					height = parseNumber(parts);
+					break;
+				case "DEPTH":
+					depth = parseNumber(parts);
+					break;
+				case "MAXVAL":
+					maxValue = parseNumber(parts);
+					break;
+				default:
+					// TUPLTYPE is implied by depth, comments and empty lines are ignored
+					break;
+			}
+		}
+
+		checkHeader(width, height, depth, maxValue);
+
+		return new QOIHeader(width, height, depth, QOIColorSpace.SRGB);
+	}
+
+	/**
+	 * Creates a header for the image: PPM for 3 channels and PAM for 4 channels.
+	 */
+	static byte[] createHeader(int width, int height, int channels) {
+		String header;
+
+		if (channels == 3) {
+			header = "P6\n" + width + " " + height + "\n255\n";
+		} else {
+			header = "P7\nWIDTH " + width + "\nHEIGHT " + height + "\nDEPTH 4\nMAXVAL 255\nTUPLTYPE RGB_ALPHA\nENDHDR\n";
+		}
+
+		return header.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static void checkHeader(int width, int height, int channels, int maxValue) throws InvalidQOIStreamException {
+		if (width < 1 || height < 1) {
+			throw new InvalidQOIStreamException("Invalid image size " + width + "x" + height);
+		}
+
+		if (channels != 3 && channels != 4) {
+			throw new InvalidQOIStreamException("Unsupported channel count " + channels);
+		}
+
+		if (maxValue != 255) {
+			throw new InvalidQOIStreamException("Unsupported max value " + maxValue + ", only 8-bit images are supported");
+		}
+	}
+
+	/**
+	 * Reads a decimal number of PPM header, skipping preceding whitespace and comments,
+	 * and a single whitespace character after it.
+	 */
+	private static int readNumber(@NonNull InputStream in) throws IOException {
+		int c = read(in);
+
+		while (Character.isWhitespace(c) || c == '#') {
+			if (c == '#') {
+				while (c != '\n') {
+					c = read(in);
+				}
+			}
+
+			c = read(in);
+		}
+
+		long value = 0;
+
+		while (c >= '0' && c <= '9') {
+			value = value * 10 + (c - '0');
+
+			if (value > Integer.MAX_VALUE) {
+				throw new InvalidQOIStreamException("Number in the header is too large");
+			}
+
+			c = read(in);
+		}
+
+		if (!Character.isWhitespace(c)) {
+			throw new InvalidQOIStreamException("Unexpected character in the header: " + (char) c);
+		}
+
+		return (int) value;
+	}
+
+	private static int parseNumber(@NonNull String[] parts) throws InvalidQOIStreamException {
+		try {
+			return Integer.parseInt(parts[1]);
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			throw new InvalidQOIStreamException("Invalid header line " + String.join(" ", parts));
+		}
+	}
+
+	private static String readLine(@NonNull InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+
+		while ((c = read(in)) != '\n') {
+			// Header lines are short, this protects from reading a whole binary file as a line
+			if (line.length() == 1024) {
+				throw new InvalidQOIStreamException("Header line is too long");
+			}
+
+			line.append((char) c);
+		}
+
+		return line.toString();
+	}
+
+	private static int read(@NonNull InputStream in) throws IOException {
+		int c = in.read();
+
+		if (c == -1) {
+			throw new EOFException("Unexpected end of header");
+		}
+
+		return c;
+	}
+
+}
@@ -0,0 +1,389 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Loads pixels from a source of bytes in some {@link QOIPixelFormat} or of packed ints into packed 0xRRGGBBAA pixels.
+ * Positions are measured in source elements, that is, bytes or ints.
+ */
+abstract class PixelReader {
+
+	/**
+	 * Count of source elements per pixel.
+	 */
+	final int pixelSize;
+
+	PixelReader(int pixelSize) {
+		this.pixelSize = pixelSize;
+	}
+
+	/**
+	 * Returns size of a pixel in the source in bytes.
+	 */
+	int bytesPerPixel() {
+		return this.pixelSize;
+	}
+
+	/**
+	 * Loads pixels from the source.
+	 * @param pixels Packed pixels.
+	 * @param count Pixel count.
+	 * @param position Source position of the first pixel.
+	 */
+	abstract void read(int[] pixels, int count, int position);
+
+	/**
+	 * Loads next <code>count</code> pixels from the source and encodes them.
+	 * @param span Temporary array to load pixels into, at least <code>count</code> long.
+	 */
+	void encode(ChunkEncoder encoder, int[] span, int count, int position) throws IOException {
+		read(span, count, position);
+
+		encoder.encode(span, 0, count);
+	}
+
+	static PixelReader create(byte @NonNull [] array, int channels) {
+		return create(array, QOIPixelFormat.of(channels));
+	}
+
+	static PixelReader create(byte @NonNull [] array, @NonNull QOIPixelFormat format) {
+		return new ArrayPixelReader(array, 0, format);
+	}
+
+	/**
+	 * Creates a reader for a buffer. Positions are absolute indices in the buffer,
+	 * buffer's own position is neither used nor changed.
+	 */
+	static PixelReader create(@NonNull ByteBuffer buffer, @NonNull QOIPixelFormat format) {
+		if (buffer.hasArray()) {
+			return new ArrayPixelReader(buffer.array(), buffer.arrayOffset(), format);
+		}
+
+		return new BufferPixelReader(buffer, format);
+	}
+
+	/**
+	 * Creates a reader for packed pixels. Alpha of pixels is ignored when channel count is 3.
+	 */
+	static PixelReader create(int @NonNull [] array, int channels, @NonNull QOIPixelPacking packing) {
+		return new IntArrayPixelReader(array, channels, packing);
+	}
+
+	/**
+	 * Creates a reader which converts pixels from the representation of the transform after loading them.
+	 * @param colorSpace Color space of the encoded image.
+	 */
+	static PixelReader create(@NonNull PixelReader reader, @NonNull QOIColorTransform transform, @NonNull QOIColorSpace colorSpace) {
+		return transform == QOIColorTransform.NONE ? reader : new TransformPixelReader(reader, transform, colorSpace);
+	}
+
+	/**
+	 * Creates a reader for pixels stored as 4 floats R, G, B, A in range [0, 1]. Alpha is ignored when channel count is 3.
+	 * @param colorSpace Color space of the encoded image.
+	 */
+	static PixelReader create(float @NonNull [] array, int channels, @NonNull QOIColorTransform transform, @NonNull QOIColorSpace colorSpace) {
+		return new FloatArrayPixelReader(array, channels, transform, colorSpace);
+	}
+
+	private static final class ArrayPixelReader extends PixelReader {
+
+		private final byte[] array;
+		private final int arrayOffset;
+		private final QOIPixelFormat format;
+
+		private ArrayPixelReader(byte[] array, int arrayOffset, QOIPixelFormat format) {
+			super(format.getChannels());
+			this.array = array;
+			this.arrayOffset = arrayOffset;
+			this.format = format;
+		}
+
+		@Override
+		void read(int[] pixels, int count, int position) {
+			byte[] array = this.array;
+
+			position += this.arrayOffset;
+
+			// Duplicating load loop for each format allows to avoid branching per pixel
+			switch (this.format) {
+				case RGB:
+					load3(pixels, count, array, position);
+					break;
+				case RGBA:
+					load4(pixels, count, array, position);
+					break;
+				case BGR:
+					loadBGR(pixels, count, array, position);
+					break;
+				case BGRA:
+					for (int i = 0; i < count; i++, position += 4) {
+						pixels[i] = Integer.reverseBytes(Integer.rotateRight(ByteArrays.getInt(array, position), 8));
+					}
+					break;
+				case ARGB:
+					for (int i = 0; i < count; i++, position += 4) {
+						pixels[i] = Integer.rotateLeft(ByteArrays.getInt(array, position), 8);
+					}
+					break;
+				case ABGR:
+					for (int i = 0; i < count; i++, position += 4) {
+						pixels[i] = Integer.reverseBytes(ByteArrays.getInt(array, position));
+					}
+					break;
+				default:
+					throw new IllegalStateException("Unsupported pixel format");
+			}
+		}
+
+		// Load from 3-channel RGB buffer
+		private static void load3(int[] pixels, int count, byte[] pixelData, int pixelPos) {
+			int last = count - 1;
+
+			// Every pixel except the last one is followed by a byte of the next pixel
+			for (int i = 0; i < last; i++, pixelPos += 3) {
+				pixels[i] = ByteArrays.getRGB(pixelData, pixelPos) | 0xFF;
+			}
+
+			if (last >= 0) {
+				pixels[last] = (pixelData[pixelPos] & 0xFF) << 24 |
+						(pixelData[pixelPos + 1] & 0xFF) << 16 |
+						(pixelData[pixelPos + 2] & 0xFF) << 8 |
+						0xFF;
+			}
+		}
+
+		// Load from 3-channel BGR buffer
+		private static void loadBGR(int[] pixels, int count, byte[] pixelData, int pixelPos) {
+			int last = count - 1;
+
+			for (int i = 0; i < last; i++, pixelPos += 3) {
+				// 0xBBGGRR00 becomes 0x00RRGGBB
+				pixels[i] = Integer.reverseBytes(ByteArrays.getRGB(pixelData, pixelPos)) << 8 | 0xFF;
+			}
+
+			if (last >= 0) {
+				pixels[last] = (pixelData[pixelPos + 2] & 0xFF) << 24 |
+						(pixelData[pixelPos + 1] & 0xFF) << 16 |
+						(pixelData[pixelPos] & 0xFF) << 8 |
+						0xFF;
+			}
+		}
+
+		// Load from 4-channel RGBA buffer
+		private static void load4(int[] pixels, int count, byte[] pixelData, int pixelPos) {
+			for (int i = 0; i < count; i++, pixelPos += 4) {
+				pixels[i] = ByteArrays.getInt(pixelData, pixelPos);
+			}
+		}
+
+	}
+
+	private static final class BufferPixelReader extends PixelReader {
+
+		private final ByteBuffer buffer;
+		private final QOIPixelFormat format;
+
+		private BufferPixelReader(ByteBuffer buffer, QOIPixelFormat format) {
+			super(format.getChannels());
+			// Duplicate does not share byte order, so caller's buffer is not affected
+			this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+			this.format = format;
+		}
+
+		@Override
+		void read(int[] pixels, int count, int position) {
+			ByteBuffer buffer = this.buffer;
+
+			switch (this.format) {
+				case RGB:
+					for (int i = 0; i < count; i++, position += 3) {
+						pixels[i] = (buffer.get(position) & 0xFF) << 24 |
+								(buffer.get(position + 1) & 0xFF) << 16 |
+								(buffer.get(position + 2) & 0xFF) << 8 |
+								0xFF;
+					}
+					break;
+				case RGBA:
+					for (int i = 0; i < count; i++, position += 4) {
+						pixels[i] = buffer.getInt(position);
+					}
+					break;
+				case BGR:
+					for (int i = 0; i < count; i++, position += 3) {
+						pixels[i] = (buffer.get(position + 2) & 0xFF) << 24 |
+								(buffer.get(position + 1) & 0xFF) << 16 |
+								(buffer.get(position) & 0xFF) << 8 |
+								0xFF;
+					}
+					break;
+				case BGRA:
+					for (int i = 0; i < count; i++, position += 4) {
+						pixels[i] = Integer.reverseBytes(Integer.rotateRight(buffer.getInt(position), 8));
+					}
+					break;
+				case ARGB:
+					for (int i = 0; i < count; i++, position += 4) {
+						pixels[i] = Integer.rotateLeft(buffer.getInt(position), 8);
+					}
+					break;
+				case ABGR:
+					for (int i = 0; i < count; i++, position += 4) {
+						pixels[i] = Integer.reverseBytes(buffer.getInt(position));
+					}
+					break;
+				default:
+					throw new IllegalStateException("Unsupported pixel format");
+			}
+		}
+
+	}
+
+	private static final class IntArrayPixelReader extends PixelReader {
+
+		private final int[] array;
+		private final QOIPixelPacking packing;
+		// Makes alpha opaque after conversion when encoding a 3-channel image
+		private final int alphaMask;
+
+		private IntArrayPixelReader(int[] array, int channels, QOIPixelPacking packing) {
+			super(1);
+			this.array = array;
+			this.packing = packing;
+			this.alphaMask = channels == 3 ? 0xFF : 0;
+		}
+
+		@Override
+		int bytesPerPixel() {
+			return Integer.BYTES;
+		}
+
+		@Override
+		void read(int[] pixels, int count, int position) {
+			int[] array = this.array;
+			int alphaMask = this.alphaMask;
+
+			// Checking packing once per span allows to avoid branching per pixel
+			switch (this.packing) {
+				case RGBA:
+					for (int i = 0; i < count; i++) {
+						pixels[i] = array[position + i] | alphaMask;
+					}
+					break;
+				case ARGB:
+					for (int i = 0; i < count; i++) {
+						pixels[i] = Integer.rotateLeft(array[position + i], 8) | alphaMask;
+					}
+					break;
+				case ABGR:
+					for (int i = 0; i < count; i++) {
+						pixels[i] = Integer.reverseBytes(array[position + i]) | alphaMask;
+					}
+					break;
+				case BGRA:
+					for (int i = 0; i < count; i++) {
+						pixels[i] = Integer.reverseBytes(Integer.rotateRight(array[position + i], 8)) | alphaMask;
+					}
+					break;
+				default:
+					throw new IllegalStateException("Unsupported pixel packing");
+			}
+		}
+
+		@Override
+		void encode(ChunkEncoder encoder, int[] span, int count, int position) throws IOException {
+			if (this.packing == QOIPixelPacking.RGBA && this.alphaMask == 0) {
+				// Source already has the encoder's layout, so there is nothing to convert
+				encoder.encode(this.array, position, count);
+			} else {
+				super.encode(encoder, span, count, position);
+			}
+		}
+
+	}
+
+	private static final class TransformPixelReader extends PixelReader {
+
+		private final PixelReader reader;
+		private final QOIColorTransform transform;
+		private final boolean convertColorSpace;
+
+		private TransformPixelReader(PixelReader reader, QOIColorTransform transform, QOIColorSpace colorSpace) {
+			super(reader.pixelSize);
+			this.reader = reader;
+			this.transform = transform;
+			this.convertColorSpace = transform.convertsColorSpace(colorSpace);
+		}
+
+		@Override
+		int bytesPerPixel() {
+			return this.reader.bytesPerPixel();
+		}
+
+		@Override
+		void read(int[] pixels, int count, int position) {
+			this.reader.read(pixels, count, position);
+
+			ColorTransforms.encode(pixels, count, this.transform, this.convertColorSpace);
+		}
+
+	}
+
+	private static final class FloatArrayPixelReader extends PixelReader {
+
+		private final float[] array;
+		private final boolean premultiplied;
+		private final boolean convertColorSpace;
+		private final boolean opaque;
+
+		private FloatArrayPixelReader(float[] array, int channels, QOIColorTransform transform, QOIColorSpace colorSpace) {
+			super(4);
+			this.array = array;
+			this.premultiplied = transform.premultiplied;
+			this.convertColorSpace = transform.convertsColorSpace(colorSpace);
+			this.opaque = channels == 3;
+		}
+
+		@Override
+		int bytesPerPixel() {
+			return 4 * Float.BYTES;
+		}
+
+		@Override
+		void read(int[] pixels, int count, int position) {
+			float[] array = this.array;
+
+			for (int i = 0; i < count; i++, position += 4) {
+				float r = array[position];
+				float g = array[position + 1];
+				float b = array[position + 2];
+				float a = this.opaque ? 1 : array[position + 3];
+
+				if (this.premultiplied && a < 1) {
+					float scale = a > 0 ? 1 / a : 0;
+
+					r *= scale;
+					g *= scale;
+					b *= scale;
+				}
+
+				if (this.convertColorSpace) {
+					pixels[i] = ColorTransforms.linearToSrgb(r) << 24 |
+							ColorTransforms.linearToSrgb(g) << 16 |
+							ColorTransforms.linearToSrgb(b) << 8 |
+							ColorTransforms.toByte(a);
+				} else {
+					pixels[i] = ColorTransforms.toByte(r) << 24 |
+							ColorTransforms.toByte(g) << 16 |
+							ColorTransforms.toByte(b) << 8 |
+							ColorTransforms.toByte(a);
+				}
+			}
+		}
+
+	}
+
+}
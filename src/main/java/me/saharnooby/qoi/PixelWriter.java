@@ -0,0 +1,433 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Stores packed 0xRRGGBBAA pixels into a destination as bytes in some {@link QOIPixelFormat} or as packed ints.
+ * Positions and lengths are measured in destination elements, that is, bytes or ints.
+ */
+abstract class PixelWriter {
+
+	/**
+	 * Count of destination elements per pixel.
+	 */
+	final int pixelSize;
+
+	PixelWriter(int pixelSize) {
+		this.pixelSize = pixelSize;
+	}
+
+	/**
+	 * Returns size of a pixel in the destination in bytes.
+	 */
+	int bytesPerPixel() {
+		return this.pixelSize;
+	}
+
+	/**
+	 * Stores pixels into the destination.
+	 * @param pixels Packed pixels.
+	 * @param count Pixel count.
+	 * @param position Destination position of the first pixel.
+	 */
+	abstract void write(int[] pixels, int count, int position);
+
+	/**
+	 * Returns destination length.
+	 */
+	abstract int capacity();
+
+	/**
+	 * Called after the header is read, before any pixels are stored.
+	 */
+	void start(QOIHeader header) {
+
+	}
+
+	/**
+	 * Decodes next <code>count</code> pixels and stores them into the destination.
+	 * @param span Temporary array to decode pixels into, at least <code>count</code> long.
+	 */
+	void decode(ChunkDecoder decoder, int[] span, int count, int position) throws IOException {
+		decoder.decode(span, 0, count);
+
+		write(span, count, position);
+	}
+
+	static PixelWriter create(byte @NonNull [] array, int channels) {
+		return create(array, QOIPixelFormat.of(channels));
+	}
+
+	static PixelWriter create(byte @NonNull [] array, @NonNull QOIPixelFormat format) {
+		return new ArrayPixelWriter(array, 0, array.length, format);
+	}
+
+	static PixelWriter create(int @NonNull [] array, @NonNull QOIPixelPacking packing) {
+		return new IntArrayPixelWriter(array, packing);
+	}
+
+	/**
+	 * Creates a writer for a buffer. Positions are absolute indices in the buffer,
+	 * buffer's own position is neither used nor changed.
+	 */
+	static PixelWriter create(@NonNull ByteBuffer buffer, int channels) {
+		return create(buffer, QOIPixelFormat.of(channels));
+	}
+
+	/**
+	 * Creates a writer for a buffer. Positions are absolute indices in the buffer,
+	 * buffer's own position is neither used nor changed.
+	 */
+	static PixelWriter create(@NonNull ByteBuffer buffer, @NonNull QOIPixelFormat format) {
+		if (buffer.hasArray()) {
+			return new ArrayPixelWriter(buffer.array(), buffer.arrayOffset(), buffer.limit(), format);
+		}
+
+		return new BufferPixelWriter(buffer, format);
+	}
+
+	/**
+	 * Creates a writer which converts pixels into the representation of the transform before storing them.
+	 */
+	static PixelWriter create(@NonNull PixelWriter writer, @NonNull QOIColorTransform transform) {
+		return transform == QOIColorTransform.NONE ? writer : new TransformPixelWriter(writer, transform);
+	}
+
+	/**
+	 * Creates a writer which stores each pixel as 4 floats R, G, B, A in range [0, 1].
+	 */
+	static PixelWriter create(float @NonNull [] array, @NonNull QOIColorTransform transform) {
+		return new FloatArrayPixelWriter(array, transform);
+	}
+
+	private static final class ArrayPixelWriter extends PixelWriter {
+
+		private final byte[] array;
+		private final int arrayOffset;
+		private final int limit;
+		private final QOIPixelFormat format;
+
+		private ArrayPixelWriter(byte[] array, int arrayOffset, int limit, QOIPixelFormat format) {
+			super(format.getChannels());
+			this.array = array;
+			this.arrayOffset = arrayOffset;
+			this.limit = limit;
+			this.format = format;
+		}
+
+		@Override
+		void write(int[] pixels, int count, int position) {
+			byte[] array = this.array;
+			int pos = this.arrayOffset + position;
+
+			// Duplicating store loop for each format allows to avoid branching per pixel
+			switch (this.format) {
+				case RGB:
+					store3(pixels, count, array, pos);
+					break;
+				case RGBA:
+					store4(pixels, count, array, pos);
+					break;
+				case BGR:
+					storeBGR(pixels, count, array, pos);
+					break;
+				case BGRA:
+					for (int i = 0; i < count; i++, pos += 4) {
+						ByteArrays.setInt(array, pos, Integer.reverseBytes(Integer.rotateRight(pixels[i], 8)));
+					}
+					break;
+				case ARGB:
+					for (int i = 0; i < count; i++, pos += 4) {
+						ByteArrays.setInt(array, pos, Integer.rotateRight(pixels[i], 8));
+					}
+					break;
+				case ABGR:
+					for (int i = 0; i < count; i++, pos += 4) {
+						ByteArrays.setInt(array, pos, Integer.reverseBytes(pixels[i]));
+					}
+					break;
+				default:
+					throw new IllegalStateException("Unsupported pixel format");
+			}
+		}
+
+		@Override
+		int capacity() {
+			return this.limit;
+		}
+
+		// Store into 3-channel RGB buffer
+		private static void store3(int[] pixels, int count, byte[] pixelData, int pixelPos) {
+			int last = count - 1;
+
+			// A byte after each pixel except the last one is overwritten by the next pixel
+			for (int i = 0; i < last; i++, pixelPos += 3) {
+				ByteArrays.setRGB(pixelData, pixelPos, pixels[i]);
+			}
+
+			if (last >= 0) {
+				int pixel = pixels[last];
+
+				pixelData[pixelPos] = (byte) (pixel >> 24);
+				pixelData[pixelPos + 1] = (byte) (pixel >> 16);
+				pixelData[pixelPos + 2] = (byte) (pixel >> 8);
+			}
+		}
+
+		// Store into 3-channel BGR buffer
+		private static void storeBGR(int[] pixels, int count, byte[] pixelData, int pixelPos) {
+			int last = count - 1;
+
+			for (int i = 0; i < last; i++, pixelPos += 3) {
+				// 0xBBGGRRAA
+				ByteArrays.setRGB(pixelData, pixelPos, Integer.reverseBytes(Integer.rotateRight(pixels[i], 8)));
+			}
+
+			if (last >= 0) {
+				int pixel = pixels[last];
+
+				pixelData[pixelPos] = (byte) (pixel >> 8);
+				pixelData[pixelPos + 1] = (byte) (pixel >> 16);
+				pixelData[pixelPos + 2] = (byte) (pixel >> 24);
+			}
+		}
+
+		// Store into 4-channel RGBA buffer
+		private static void store4(int[] pixels, int count, byte[] pixelData, int pixelPos) {
+			for (int i = 0; i < count; i++, pixelPos += 4) {
+				ByteArrays.setInt(pixelData, pixelPos, pixels[i]);
+			}
+		}
+
+	}
+
+	private static final class BufferPixelWriter extends PixelWriter {
+
+		private final ByteBuffer buffer;
+		private final QOIPixelFormat format;
+
+		private BufferPixelWriter(ByteBuffer buffer, QOIPixelFormat format) {
+			super(format.getChannels());
+			// Duplicate does not share byte order, so caller's buffer is not affected
+			this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+			this.format = format;
+		}
+
+		@Override
+		void write(int[] pixels, int count, int position) {
+			ByteBuffer buffer = this.buffer;
+
+			switch (this.format) {
+				case RGB:
+					for (int i = 0; i < count; i++, position += 3) {
+						int pixel = pixels[i];
+
+						buffer.put(position, (byte) (pixel >> 24));
+						buffer.put(position + 1, (byte) (pixel >> 16));
+						buffer.put(position + 2, (byte) (pixel >> 8));
+					}
+					break;
+				case RGBA:
+					for (int i = 0; i < count; i++, position += 4) {
+						buffer.putInt(position, pixels[i]);
+					}
+					break;
+				case BGR:
+					for (int i = 0; i < count; i++, position += 3) {
+						int pixel = pixels[i];
+
+						buffer.put(position, (byte) (pixel >> 8));
+						buffer.put(position + 1, (byte) (pixel >> 16));
+						buffer.put(position + 2, (byte) (pixel >> 24));
+					}
+					break;
+				case BGRA:
+					for (int i = 0; i < count; i++, position += 4) {
+						buffer.putInt(position, Integer.reverseBytes(Integer.rotateRight(pixels[i], 8)));
+					}
+					break;
+				case ARGB:
+					for (int i = 0; i < count; i++, position += 4) {
+						buffer.putInt(position, Integer.rotateRight(pixels[i], 8));
+					}
+					break;
+				case ABGR:
+					for (int i = 0; i < count; i++, position += 4) {
+						buffer.putInt(position, Integer.reverseBytes(pixels[i]));
+					}
+					break;
+				default:
+					throw new IllegalStateException("Unsupported pixel format");
+			}
+		}
+
+		@Override
+		int capacity() {
+			return this.buffer.limit();
+		}
+
+	}
+
+	private static final class IntArrayPixelWriter extends PixelWriter {
+
+		private final int[] array;
+		private final QOIPixelPacking packing;
+
+		private IntArrayPixelWriter(int[] array, QOIPixelPacking packing) {
+			super(1);
+			this.array = array;
+			this.packing = packing;
+		}
+
+		@Override
+		int bytesPerPixel() {
+			return Integer.BYTES;
+		}
+
+		@Override
+		void write(int[] pixels, int count, int position) {
+			int[] array = this.array;
+
+			// Checking packing once per span allows to avoid branching per pixel
+			switch (this.packing) {
+				case RGBA:
+					System.arraycopy(pixels, 0, array, position, count);
+					break;
+				case ARGB:
+					for (int i = 0; i < count; i++) {
+						array[position + i] = Integer.rotateRight(pixels[i], 8);
+					}
+					break;
+				case ABGR:
+					for (int i = 0; i < count; i++) {
+						array[position + i] = Integer.reverseBytes(pixels[i]);
+					}
+					break;
+				case BGRA:
+					for (int i = 0; i < count; i++) {
+						array[position + i] = Integer.rotateLeft(Integer.reverseBytes(pixels[i]), 8);
+					}
+					break;
+				default:
+					throw new IllegalStateException("Unsupported pixel packing");
+			}
+		}
+
+		@Override
+		int capacity() {
+			return this.array.length;
+		}
+
+		@Override
+		void decode(ChunkDecoder decoder, int[] span, int count, int position) throws IOException {
+			if (this.packing == QOIPixelPacking.RGBA) {
+				// Destination already has the decoder's layout, so there is nothing to convert
+				decoder.decode(this.array, position, count);
+			} else {
+				super.decode(decoder, span, count, position);
+			}
+		}
+
+	}
+
+	private static final class TransformPixelWriter extends PixelWriter {
+
+		private final PixelWriter writer;
+		private final QOIColorTransform transform;
+		private boolean convertColorSpace;
+
+		private TransformPixelWriter(PixelWriter writer, QOIColorTransform transform) {
+			super(writer.pixelSize);
+			this.writer = writer;
+			this.transform = transform;
+		}
+
+		@Override
+		int bytesPerPixel() {
+			return this.writer.bytesPerPixel();
+		}
+
+		@Override
+		void start(QOIHeader header) {
+			this.convertColorSpace = this.transform.convertsColorSpace(header.getColorSpace());
+			this.writer.start(header);
+		}
+
+		/**
+		 * Converts pixels in place and stores them.
+		 */
+		@Override
+		void write(int[] pixels, int count, int position) {
+			ColorTransforms.decode(pixels, count, this.transform, this.convertColorSpace);
+
+			this.writer.write(pixels, count, position);
+		}
+
+		@Override
+		int capacity() {
+			return this.writer.capacity();
+		}
+
+	}
+
+	private static final class FloatArrayPixelWriter extends PixelWriter {
+
+		private final float[] array;
+		private final QOIColorTransform transform;
+		private float[] table;
+
+		private FloatArrayPixelWriter(float[] array, QOIColorTransform transform) {
+			super(4);
+			this.array = array;
+			this.transform = transform;
+		}
+
+		@Override
+		int bytesPerPixel() {
+			return 4 * Float.BYTES;
+		}
+
+		@Override
+		void start(QOIHeader header) {
+			this.table = this.transform.convertsColorSpace(header.getColorSpace()) ? ColorTransforms.SRGB_TO_LINEAR : ColorTransforms.NORMALIZED;
+		}
+
+		@Override
+		void write(int[] pixels, int count, int position) {
+			float[] array = this.array;
+			float[] table = this.table;
+
+			if (this.transform.premultiplied) {
+				for (int i = 0; i < count; i++, position += 4) {
+					int pixel = pixels[i];
+					float a = (pixel & 0xFF) / 255F;
+
+					array[position] = table[pixel >>> 24] * a;
+					array[position + 1] = table[(pixel >> 16) & 0xFF] * a;
+					array[position + 2] = table[(pixel >> 8) & 0xFF] * a;
+					array[position + 3] = a;
+				}
+			} else {
+				for (int i = 0; i < count; i++, position += 4) {
+					int pixel = pixels[i];
+
+					array[position] = table[pixel >>> 24];
+					array[position + 1] = table[(pixel >> 16) & 0xFF];
+					array[position + 2] = table[(pixel >> 8) & 0xFF];
+					array[position + 3] = (pixel & 0xFF) / 255F;
+				}
+			}
+		}
+
+		@Override
+		int capacity() {
+			return this.array.length;
+		}
+
+	}
+
+}
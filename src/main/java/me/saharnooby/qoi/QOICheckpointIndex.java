@@ -0,0 +1,272 @@
+package me.saharnooby.qoi;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Decoder state recorded by the encoder every N rows of a QOI image, which allows to start decoding from these rows.
+ * Use {@link QOIEncoder#encodeWithCheckpoints} to create an index, and {@link QOIDecoder#decodeRows} and
+ * {@link QOIDecoder#decodeParallel} to use it.
+ * <p>The index is stored either as trailing data right after the image, or in a separate sidecar file.
+ * Decoders that do not know about the index ignore trailing data, so images with the index stay valid QOI images.</p>
+ * <p>Serialized index consists of checkpoints followed by a footer, all values are big-endian:</p>
+ * <ul>
+ *     <li>for each checkpoint: u64 offset of the next chunk from the start of the image, u32 previous pixel as 0xRRGGBBAA,
+ *     64 x u32 index table entries as 0xRRGGBBAA;</li>
+ *     <li>footer: u32 row interval, u32 checkpoint count, u32 image width, u32 image height, u32 magic <code>qoix</code>.</li>
+ * </ul>
+ * <p>Checkpoint <code>i</code> describes the state before row <code>(i + 1) * rowInterval</code>. There is no pending run at checkpoints.</p>
+ */
+public final class QOICheckpointIndex {
+
+	private static final int MAGIC = 'q' << 24 | 'o' << 16 | 'i' << 8 | 'x';
+
+	private static final int HASH_TABLE_SIZE = 64;
+
+	private static final int CHECKPOINT_SIZE = 8 + 4 + HASH_TABLE_SIZE * 4;
+
+	private static final int FOOTER_SIZE = 5 * 4;
+
+	/**
+	 * Count of rows between checkpoints. Positive value.
+	 */
+	@Getter
+	private final int rowInterval;
+
+	/**
+	 * Width of the indexed image.
+	 */
+	@Getter
+	private final int width;
+
+	/**
+	 * Height of the indexed image.
+	 */
+	@Getter
+	private final int height;
+
+	private final long[] offsets;
+
+	private final int[] pixels;
+
+	// Index tables of all checkpoints, one after another
+	private final int[] indexes;
+
+	QOICheckpointIndex(int rowInterval, int width, int height) {
+		this(rowInterval, width, height, new long[(height - 1) / rowInterval], new int[(height - 1) / rowInterval], new int[(height - 1) / rowInterval * HASH_TABLE_SIZE]);
+	}
+
+	private QOICheckpointIndex(int rowInterval, int width, int height, long[] offsets, int[] pixels, int[] indexes) {
+		this.rowInterval = rowInterval;
+		this.width = width;
+		this.height = height;
+		this.offsets = offsets;
+		this.pixels = pixels;
+		this.indexes = indexes;
+	}
+
+	/**
+	 * Returns count of checkpoints. Row 0 does not need a checkpoint and is not counted.
+	 */
+	public int getCheckpointCount() {
+		return this.offsets.length;
+	}
+
+	/**
+	 * Returns size of the serialized index in bytes.
+	 */
+	public int getSerializedSize() {
+		return this.offsets.length * CHECKPOINT_SIZE + FOOTER_SIZE;
+	}
+
+	/**
+	 * Writes the index into a stream. To store the index as trailing data,
+	 * write it into the same stream right after the image.
+	 * @param out Output stream.
+	 * @throws IOException On any IO error.
+	 */
+	public void write(@NonNull OutputStream out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(getSerializedSize());
+
+		for (int i = 0; i < this.offsets.length; i++) {
+			buffer.putLong(this.offsets[i]);
+			buffer.putInt(this.pixels[i]);
+
+			for (int j = 0; j < HASH_TABLE_SIZE; j++) {
+				buffer.putInt(this.indexes[i * HASH_TABLE_SIZE + j]);
+			}
+		}
+
+		buffer.putInt(this.rowInterval);
+		buffer.putInt(this.offsets.length);
+		buffer.putInt(this.width);
+		buffer.putInt(this.height);
+		buffer.putInt(MAGIC);
+
+		out.write(buffer.array());
+	}
+
+	/**
+	 * Reads an index from a sidecar stream. The stream is read until its end.
+	 * @param in Input stream.
+	 * @return Index.
+	 * @throws InvalidQOIStreamException If the stream does not contain a valid index.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOICheckpointIndex read(@NonNull InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+
+		QOICheckpointIndex index = find(ByteBuffer.wrap(out.toByteArray()));
+
+		if (index == null || index.getSerializedSize() != out.size()) {
+			throw new InvalidQOIStreamException("Invalid checkpoint index");
+		}
+
+		return index;
+	}
+
+	/**
+	 * Reads an index stored as trailing data at the end of a buffer, that is, right before its limit.
+	 * Buffer's position is neither used nor changed.
+	 * @param buffer Buffer containing QOI image followed by the index, for example a memory-mapped file.
+	 * @return Index, or <code>null</code> if there is no index at the end of the buffer.
+	 * @throws InvalidQOIStreamException If the index is corrupted.
+	 */
+	public static QOICheckpointIndex find(@NonNull ByteBuffer buffer) throws InvalidQOIStreamException {
+		// Duplicate does not share byte order, so caller's buffer is not affected
+		ByteBuffer data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+
+		int footer = data.limit() - FOOTER_SIZE;
+
+		if (footer < 0 || data.getInt(footer + 16) != MAGIC) {
+			return null;
+		}
+
+		int rowInterval = data.getInt(footer);
+		int count = data.getInt(footer + 4);
+		int width = data.getInt(footer + 8);
+		int height = data.getInt(footer + 12);
+
+		if (rowInterval < 1 || width < 1 || height < 1 || count != (height - 1) / rowInterval || count > footer / CHECKPOINT_SIZE) {
+			throw new InvalidQOIStreamException("Invalid checkpoint index");
+		}
+
+		QOICheckpointIndex index = new QOICheckpointIndex(rowInterval, width, height);
+
+		int position = footer - count * CHECKPOINT_SIZE;
+
+		for (int i = 0; i < count; i++, position += CHECKPOINT_SIZE) {
+			long offset = data.getLong(position);
+
+			if (offset < QOI_HEADER_SIZE || offset > Integer.MAX_VALUE) {
+				throw new InvalidQOIStreamException("Invalid checkpoint offset " + offset);
+			}
+
+			index.offsets[i] = offset;
+			index.pixels[i] = data.getInt(position + 8);
+
+			for (int j = 0; j < HASH_TABLE_SIZE; j++) {
+				index.indexes[i * HASH_TABLE_SIZE + j] = data.getInt(position + 12 + j * 4);
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns the row that the checkpoint describes the state before.
+	 */
+	int getRow(int checkpoint) {
+		return (checkpoint + 1) * this.rowInterval;
+	}
+
+	/**
+	 * Returns the last checkpoint before the row, or -1 if the row is before the first checkpoint.
+	 */
+	int getCheckpoint(int row) {
+		return Math.min(row / this.rowInterval, this.offsets.length) - 1;
+	}
+
+	/**
+	 * Records encoder state before the row of the checkpoint. The encoder must have no pending run.
+	 */
+	void record(int checkpoint, @NonNull ChunkEncoder encoder) {
+		this.offsets[checkpoint] = encoder.size();
+		this.pixels[checkpoint] = encoder.previous;
+
+		System.arraycopy(encoder.index, 0, this.indexes, checkpoint * HASH_TABLE_SIZE, HASH_TABLE_SIZE);
+	}
+
+	/**
+	 * Moves a decoder, which is positioned at the start of the image, to the checkpoint.
+	 */
+	void restore(int checkpoint, @NonNull ChunkDecoder decoder) throws InvalidQOIStreamException {
+		long position = decoder.position + this.offsets[checkpoint];
+
+		if (position > Integer.MAX_VALUE) {
+			throw new InvalidQOIStreamException("Invalid checkpoint offset " + this.offsets[checkpoint]);
+		}
+
+		decoder.position = (int) position;
+		decoder.pixel = this.pixels[checkpoint];
+		decoder.run = 0;
+
+		System.arraycopy(this.indexes, checkpoint * HASH_TABLE_SIZE, decoder.index, 0, HASH_TABLE_SIZE);
+	}
+
+	/**
+	 * Checks that a decoder, which has decoded all pixels before the row, is in the state recorded at the row.
+	 * Does nothing if there is no checkpoint at the row. This detects an index of another image with the same dimensions,
+	 * with which decoding from checkpoints would give wrong pixels.
+	 * @param start Position of the start of the image in the decoder.
+	 */
+	void verify(int row, @NonNull ChunkDecoder decoder, int start) throws InvalidQOIStreamException {
+		int checkpoint = getCheckpoint(row);
+
+		if (checkpoint < 0 || getRow(checkpoint) != row) {
+			return;
+		}
+
+		boolean matches = decoder.position - (long) start == this.offsets[checkpoint] &&
+				decoder.run == 0 &&
+				decoder.pixel == this.pixels[checkpoint];
+
+		for (int i = 0; i < HASH_TABLE_SIZE && matches; i++) {
+			int recorded = this.indexes[checkpoint * HASH_TABLE_SIZE + i];
+			int actual = decoder.index[i];
+
+			// Decoder also stores the initial pixel when the image starts with a run of it, the encoder does not.
+			// The encoder never references this empty slot, so it does not affect decoding
+			matches = recorded == actual || (recorded == 0 && actual == OPAQUE_BLACK && i == getHashTableIndexRGBA(OPAQUE_BLACK));
+		}
+
+		if (!matches) {
+			throw new InvalidQOIStreamException("Checkpoint index does not match the image");
+		}
+	}
+
+	/**
+	 * Checks that the index describes an image with this header.
+	 */
+	void check(@NonNull QOIHeader header) throws InvalidQOIStreamException {
+		if (header.getWidth() != this.width || header.getHeight() != this.height) {
+			throw new InvalidQOIStreamException("Checkpoint index does not match the image");
+		}
+	}
+
+}
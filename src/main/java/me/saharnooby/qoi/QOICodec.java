@@ -1,5 +1,10 @@
 package me.saharnooby.qoi;
 
+import lombok.NonNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 /**
  * Contains constants and utility methods for decoder and encoder.
  */
@@ -19,25 +24,52 @@ final class QOICodec {
 
 	static final int QOI_MAGIC = 'q' << 24 | 'o' << 16 | 'i' << 8 | 'f';
 
+	static final int QOI_HEADER_SIZE = 14;
+
 	// Seven 0x00 bytes followed by 0x01
 	static final byte[] QOI_PADDING = new byte[] {0, 0, 0, 0, 0, 0, 0, 1};
 
+	// In a valid stream every chunk is followed at least by the padding, so this many bytes
+	// are always available at chunk start. This is more than the longest chunk (QOI_OP_RGBA) needs
+	static final int CHUNK_LOOKAHEAD = 1 + 8;
+
+	// Count of pixels decoded or encoded at once, the span fits into L1 cache
+	static final int SPAN_SIZE = 2048;
+
+	// Initial value of the previous pixel, packed as 0xRRGGBBAA
+	static final int OPAQUE_BLACK = 0x000000FF;
+
 	private static final int HASH_TABLE_SIZE = 64;
 
-	static byte[] createHashTableRGBA() {
-		return new byte[HASH_TABLE_SIZE * 4];
+	static int[] createHashTableRGBA() {
+		return new int[HASH_TABLE_SIZE];
 	}
 
-	static int getHashTableIndexRGBA(byte r, byte g, byte b, byte a) {
-		int hash = (r & 0xFF) * 3 + (g & 0xFF) * 5 + (b & 0xFF) * 7 + (a & 0xFF) * 11;
+	static int getHashTableIndexRGBA(int pixel) {
+		int hash = (pixel >>> 24) * 3 + ((pixel >> 16) & 0xFF) * 5 + ((pixel >> 8) & 0xFF) * 7 + (pixel & 0xFF) * 11;
 
-		return (hash & 0x3F) << 2;
+		return hash & 0x3F;
 	}
 
-	static int getHashTableIndexRGB(byte r, byte g, byte b) {
-		int hash = (r & 0xFF) * 3 + (g & 0xFF) * 5 + (b & 0xFF) * 7 + 0xFF * 11;
+	/**
+	 * Waits for the future and returns its result. Unchecked exceptions of the task are rethrown as is.
+	 */
+	static <T> T join(@NonNull CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
 
-		return (hash & 0x3F) << 2;
+			throw e;
+		}
 	}
 
 }
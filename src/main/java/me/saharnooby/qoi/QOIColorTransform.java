@@ -0,0 +1,46 @@
+package me.saharnooby.qoi;
+
+/**
+ * Representation of color values of pixels in memory, which the decoder converts decoded pixels into,
+ * and the encoder converts source pixels from. Conversion is done on each span of pixels as they are stored or loaded,
+ * without separate passes over the image.
+ * <p>Linear representations are converted from and to sRGB only for images with {@link QOIColorSpace#SRGB} color space,
+ * images with {@link QOIColorSpace#LINEAR} color space already store linear values.
+ * Conversion uses lookup tables. Note that 8 bits are not enough for linear values of dark sRGB colors,
+ * so to keep precision, decode linear values into floats.</p>
+ */
+public enum QOIColorTransform {
+
+	/**
+	 * Pixels are stored as is.
+	 */
+	NONE(false, false),
+	/**
+	 * Color channels are multiplied by alpha.
+	 */
+	PREMULTIPLIED(false, true),
+	/**
+	 * Color channels are linear.
+	 */
+	LINEAR(true, false),
+	/**
+	 * Color channels are linear and multiplied by alpha. Alpha is applied in linear space, which is correct for compositing.
+	 */
+	LINEAR_PREMULTIPLIED(true, true);
+
+	final boolean linear;
+	final boolean premultiplied;
+
+	QOIColorTransform(boolean linear, boolean premultiplied) {
+		this.linear = linear;
+		this.premultiplied = premultiplied;
+	}
+
+	/**
+	 * Returns true if color values of an image with the specified color space must be converted between sRGB and linear.
+	 */
+	boolean convertsColorSpace(QOIColorSpace colorSpace) {
+		return this.linear && colorSpace == QOIColorSpace.SRGB;
+	}
+
+}
@@ -4,11 +4,24 @@ import lombok.NonNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static me.saharnooby.qoi.QOICodec.*;
 
 /**
- * Contains method that decodes data stream into raw pixel data.
+ * Contains methods that decode data stream into raw pixel data.
  */
 public final class QOIDecoder {
 
@@ -43,296 +56,1200 @@ public final class QOIDecoder {
 	 * @throws IOException On any IO error.
 	 */
 	public static QOIImage decode(@NonNull InputStream inputStream, int channels, boolean doNotTouchDataAfterImage) throws IOException {
-		if (channels != 0 && channels != 3 && channels != 4) {
-			throw new IllegalArgumentException("Invalid channel count, must be 0, 3 or 4");
+		checkChannels(channels);
+
+		// This custom buffering is faster than BufferedInputStream and allows for controlled buffering
+		return decode(new ArrayChunkDecoder(inputStream, !doNotTouchDataAfterImage), channels, null);
+	}
+
+	/**
+	 * Decodes data in the input stream into raw pixel data, and counts read chunks.
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @param statistics Statistics to add counts of read chunks to.
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIImage decode(@NonNull InputStream inputStream, int channels, @NonNull QOIStatistics statistics) throws IOException {
+		checkChannels(channels);
+
+		ChunkDecoder decoder = new ArrayChunkDecoder(inputStream, true);
+
+		decoder.statistics = statistics;
+
+		return decode(decoder, channels, null);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte array into raw pixel data.
+	 * Bytes after the image, if any, are ignored.
+	 * @param data Array containing QOI image.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIImage decode(byte @NonNull [] data, int channels) throws InvalidQOIStreamException {
+		return decode(data, 0, data.length, channels);
+	}
+
+	/**
+	 * Decodes QOI image stored in a region of a byte array into raw pixel data.
+	 * The array is read in place, without copying or buffering. Bytes after the image, if any, are ignored.
+	 * @param data Array containing QOI image.
+	 * @param offset Offset of the image in the array.
+	 * @param length Length of the region containing the image.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws IndexOutOfBoundsException If offset or length are invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIImage decode(byte @NonNull [] data, int offset, int length, int channels) throws InvalidQOIStreamException {
+		checkChannels(channels);
+
+		if (offset < 0 || length < 0 || offset > data.length - length) {
+			throw new IndexOutOfBoundsException("Invalid offset or length");
 		}
 
-		// This custom buffering class is faster than BufferedInputStream and allows for controlled buffering
-		Input in = new Input(inputStream, !doNotTouchDataAfterImage);
+		return decodeInMemory(() -> decode(new ArrayChunkDecoder(data, offset, length), channels, null));
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into raw pixel data.
+	 * Image is read starting at buffer's position. On success, position is advanced past the image.
+	 * Bytes after the image, if any, are ignored.
+	 * <p>The buffer is read in place, without copying or buffering. Any buffer is supported,
+	 * including direct and memory-mapped buffers. Byte order of the buffer does not matter.</p>
+	 * @param buffer Buffer containing QOI image.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIImage decode(@NonNull ByteBuffer buffer, int channels) throws InvalidQOIStreamException {
+		checkChannels(channels);
+
+		ChunkDecoder decoder = createDecoder(buffer);
 
-		int headerMagic = in.readInt();
+		QOIImage image = decodeInMemory(() -> decode(decoder, channels, null));
 
-		if (headerMagic != QOI_MAGIC) {
-			throw new InvalidQOIStreamException("Invalid magic value, probably not a QOI image");
+		updatePosition(buffer, decoder);
+
+		return image;
+	}
+
+	/**
+	 * Decodes data in the input stream into raw pixel data of a smaller image, which is the source image reduced
+	 * by an integer factor in both dimensions. Each target pixel is the average of a <code>factor x factor</code> block
+	 * of source pixels, color is weighted by alpha, and fully transparent blocks have zero color.
+	 * Blocks at right and bottom edges may be smaller.
+	 * <p>Pixels are decoded sequentially and accumulated into a single row of sums, so only the target image is allocated,
+	 * which makes this suitable for generating thumbnails of big images.</p>
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param factor Downscale factor, must be positive. Target size is source size divided by the factor, rounded up.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return Downscaled QOI image.
+	 * @throws IllegalArgumentException If channel count or factor is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIImage decodeDownscaled(@NonNull InputStream inputStream, int factor, int channels) throws IOException {
+		checkChannels(channels);
+		checkFactor(factor);
+
+		return decodeDownscaled(new ArrayChunkDecoder(inputStream, true), factor, channels);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into raw pixel data of a smaller image, like
+	 * {@link #decodeDownscaled(InputStream, int, int)}. Image is read starting at buffer's position.
+	 * On success, position is advanced past the image.
+	 * @param buffer Buffer containing QOI image.
+	 * @param factor Downscale factor, must be positive. Target size is source size divided by the factor, rounded up.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return Downscaled QOI image.
+	 * @throws IllegalArgumentException If channel count or factor is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIImage decodeDownscaled(@NonNull ByteBuffer buffer, int factor, int channels) throws InvalidQOIStreamException {
+		checkChannels(channels);
+		checkFactor(factor);
+
+		ChunkDecoder decoder = createDecoder(buffer);
+
+		QOIImage image = decodeInMemory(() -> decodeDownscaled(decoder, factor, channels));
+
+		updatePosition(buffer, decoder);
+
+		return image;
+	}
+
+	/**
+	 * Decodes QOI image stored in a file into raw pixel data.
+	 * The file is memory-mapped and read in place, without copying or buffering.
+	 * @param path File path.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided file does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIImage decode(@NonNull Path path, int channels) throws IOException {
+		checkChannels(channels);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			try {
+				return decode(buffer, channels);
+			} finally {
+				// Pixel data is a copy, so the mapping is released right away instead of keeping the file open until GC
+				DirectBuffers.release(buffer);
+			}
 		}
+	}
+
+	/**
+	 * Decodes a rectangular region of QOI image in the input stream into raw pixel data.
+	 * Only pixels inside the region are stored, pixels before it are decoded and discarded.
+	 * Reading stops right after the last pixel of the region, so decoding time is proportional to the position of the region
+	 * rather than to the image size. The rest of the image and its padding are not read or validated,
+	 * unless the region includes the last pixel of the image.
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past the region and the image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param x Left column of the region.
+	 * @param y Top row of the region.
+	 * @param width Width of the region, must be positive.
+	 * @param height Height of the region, must be positive.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image of the region.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws IndexOutOfBoundsException If the region is out of bounds of the image. This is detected after the header is read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIImage decodeRegion(@NonNull InputStream inputStream, int x, int y, int width, int height, int channels) throws IOException {
+		checkChannels(channels);
 
-		int width = in.readInt();
+		ChunkDecoder decoder = new ArrayChunkDecoder(inputStream, true);
 
-		if (width < 1) {
-			throw new InvalidQOIStreamException("Invalid image width");
+		Object event = CodecEvents.beginDecode();
+
+		QOIHeader header = decoder.readHeader();
+
+		checkRegion(header, x, y, width, height);
+
+		int imageChannels = channels == 0 ? header.getChannels() : channels;
+
+		byte[] pixelData = new byte[Math.multiplyExact(Math.multiplyExact(width, height), imageChannels)];
+
+		decodeRegion(decoder, header, 0, x, y, width, height, PixelWriter.create(pixelData, imageChannels), 0);
+
+		CodecEvents.endDecode(event, header, decoder.bytesRead(), pixelData.length);
+
+		return new QOIImage(width, height, imageChannels, header.getColorSpace(), pixelData);
+	}
+
+	/**
+	 * Decodes a rectangular region of QOI image stored in a byte buffer into raw pixel data, like
+	 * {@link #decodeRegion(InputStream, int, int, int, int, int)}. If a checkpoint index is provided,
+	 * decoding starts at the last checkpoint before the top row of the region, otherwise it starts at the beginning of the image.
+	 * <p>Image is read starting at buffer's position, which is not changed.</p>
+	 * @param source Buffer containing QOI image.
+	 * @param index Checkpoint index of the image, or <code>null</code> if the image has no index.
+	 * @param x Left column of the region.
+	 * @param y Top row of the region.
+	 * @param width Width of the region, must be positive.
+	 * @param height Height of the region, must be positive.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image of the region.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws IndexOutOfBoundsException If the region is out of bounds of the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image, or the index does not match it.
+	 */
+	public static QOIImage decodeRegion(@NonNull ByteBuffer source, QOICheckpointIndex index, int x, int y, int width, int height, int channels) throws InvalidQOIStreamException {
+		checkChannels(channels);
+
+		return decodeInMemory(() -> {
+			Object event = CodecEvents.beginDecode();
+
+			QOIHeader header = readHeader(source, index);
+
+			checkRegion(header, x, y, width, height);
+
+			int imageChannels = channels == 0 ? header.getChannels() : channels;
+
+			byte[] pixelData = new byte[Math.multiplyExact(Math.multiplyExact(width, height), imageChannels)];
+
+			int bytesRead = decodeRegion(source, header, index, x, y, width, height, PixelWriter.create(pixelData, imageChannels), 0);
+
+			CodecEvents.endDecode(event, header, bytesRead, pixelData.length);
+
+			return new QOIImage(width, height, imageChannels, header.getColorSpace(), pixelData);
+		});
+	}
+
+	private static void checkRegion(@NonNull QOIHeader header, int x, int y, int width, int height) {
+		if (x < 0 || width < 1 || x > header.getWidth() - width || y < 0 || height < 1 || y > header.getHeight() - height) {
+			throw new IndexOutOfBoundsException("Invalid region");
 		}
+	}
+
+	/**
+	 * Decodes data in the input stream into a large image, whose pixel data may exceed 2 GB.
+	 * Use this for images that are too big for {@link QOIImage}.
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return Large QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOILargeImage decodeLarge(@NonNull InputStream inputStream, int channels) throws IOException {
+		checkChannels(channels);
+
+		return decodeLarge(new ArrayChunkDecoder(inputStream, true), channels, QOILargeImage.DEFAULT_SEGMENT_PIXELS, false);
+	}
+
+	/**
+	 * Decodes data in the input stream into an image with pixel data in direct byte buffers, outside of the garbage-collected heap.
+	 * Images of up to 2^28 pixels have a single segment, which can be passed to native code without copying.
+	 * The image should be closed when no longer needed to release the memory. If decoding fails, the memory is released.
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return Direct QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOILargeImage decodeDirect(@NonNull InputStream inputStream, int channels) throws IOException {
+		checkChannels(channels);
+
+		return decodeLarge(new ArrayChunkDecoder(inputStream, true), channels, QOILargeImage.DEFAULT_SEGMENT_PIXELS, true);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into an image with pixel data in direct byte buffers,
+	 * like {@link #decodeDirect(InputStream, int)}. Image is read starting at buffer's position.
+	 * On success, position is advanced past the image.
+	 * <p>The buffer is read in place, without copying or buffering. Any buffer is supported,
+	 * including direct and memory-mapped buffers.</p>
+	 * @param buffer Buffer containing QOI image.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return Direct QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOILargeImage decodeDirect(@NonNull ByteBuffer buffer, int channels) throws InvalidQOIStreamException {
+		checkChannels(channels);
+
+		ChunkDecoder decoder = createDecoder(buffer);
+
+		QOILargeImage image = decodeInMemory(() -> decodeLarge(decoder, channels, QOILargeImage.DEFAULT_SEGMENT_PIXELS, true));
+
+		updatePosition(buffer, decoder);
+
+		return image;
+	}
 
-		int height = in.readInt();
+	/**
+	 * Decodes a band of rows of QOI image stored in a byte buffer into raw pixel data.
+	 * If a checkpoint index is provided, decoding starts at the last checkpoint before the first row,
+	 * otherwise it starts at the beginning of the image. Rows before the band are decoded and discarded.
+	 * <p>Image is read starting at buffer's position, which is not changed.</p>
+	 * @param source Buffer containing QOI image.
+	 * @param index Checkpoint index of the image, or <code>null</code> if the image has no index.
+	 * @param firstRow First row to decode.
+	 * @param rowCount Count of rows to decode, must be positive.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image of <code>rowCount</code> rows.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws IndexOutOfBoundsException If the rows are out of bounds of the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image, or the index does not match it.
+	 */
+	public static QOIImage decodeRows(@NonNull ByteBuffer source, QOICheckpointIndex index, int firstRow, int rowCount, int channels) throws InvalidQOIStreamException {
+		checkChannels(channels);
+
+		return decodeInMemory(() -> {
+			QOIHeader header = readHeader(source, index);
+
+			if (firstRow < 0 || rowCount < 1 || firstRow > header.getHeight() - rowCount) {
+				throw new IndexOutOfBoundsException("Invalid row range");
+			}
+
+			int imageChannels = channels == 0 ? header.getChannels() : channels;
+
+			Object event = CodecEvents.beginDecode();
+
+			byte[] pixelData = new byte[Math.multiplyExact(Math.multiplyExact(header.getWidth(), rowCount), imageChannels)];
+
+			int bytesRead = decodeBand(source, header, index, firstRow, rowCount, PixelWriter.create(pixelData, imageChannels), 0);
+
+			CodecEvents.endDecode(event, header, bytesRead, pixelData.length);
+
+			return new QOIImage(header.getWidth(), rowCount, imageChannels, header.getColorSpace(), pixelData);
+		});
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into raw pixel data using multiple threads of the common {@link ForkJoinPool}.
+	 * @param source Buffer containing QOI image.
+	 * @param index Checkpoint index of the image, or <code>null</code> if the image has no index.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image, or the index does not match it.
+	 * @see #decodeParallel(ByteBuffer, QOICheckpointIndex, int, Executor)
+	 */
+	public static QOIImage decodeParallel(@NonNull ByteBuffer source, QOICheckpointIndex index, int channels) throws InvalidQOIStreamException {
+		return decodeParallel(source, index, channels, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into raw pixel data using multiple threads of the provided executor.
+	 * Bands of rows between checkpoints of the index are decoded concurrently.
+	 * If there is no index, the image is decoded in the calling thread.
+	 * <p>Image is read starting at buffer's position, which is not changed. The buffer is not used after this method returns
+	 * or throws, so memory of the buffer may be released right away.</p>
+	 * @param source Buffer containing QOI image.
+	 * @param index Checkpoint index of the image, or <code>null</code> if the image has no index.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @param executor Executor to run decoding tasks in.
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image, or the index does not match it.
+	 */
+	public static QOIImage decodeParallel(@NonNull ByteBuffer source, QOICheckpointIndex index, int channels, @NonNull Executor executor) throws InvalidQOIStreamException {
+		checkChannels(channels);
 
-		if (height < 1) {
-			throw new InvalidQOIStreamException("Invalid image height");
+		QOIHeader header = decodeInMemory(() -> readHeader(source, index));
+
+		if (index == null || index.getCheckpointCount() == 0) {
+			return decode(source.duplicate(), channels);
 		}
 
-		int storedChannels = in.read() & 0xFF;
+		// A single event covers all bands, same as for sequential decoding
+		Object event = CodecEvents.beginDecode();
+
+		int imageChannels = channels == 0 ? header.getChannels() : channels;
+		int width = header.getWidth();
+		int height = header.getHeight();
+		int rowLength = Math.multiplyExact(width, imageChannels);
+
+		byte[] pixelData = new byte[Math.multiplyExact(rowLength, height)];
+
+		// Bands store into disjoint regions of the array, so they can share the writer
+		PixelWriter writer = PixelWriter.create(pixelData, imageChannels);
+
+		// Each band returns count of bytes it read
+		List<CompletableFuture<Integer>> bands = new ArrayList<>();
+
+		// Bands that did not start yet are skipped after a failure
+		AtomicBoolean failed = new AtomicBoolean();
+
+		try {
+			for (int firstRow = 0; firstRow < height; firstRow += index.getRowInterval()) {
+				int bandStart = firstRow;
+				int rowCount = Math.min(index.getRowInterval(), height - firstRow);
 
-		if (storedChannels != 3 && storedChannels != 4) {
-			throw new InvalidQOIStreamException("Invalid stored channel count");
+				bands.add(CompletableFuture.supplyAsync(() -> {
+					if (failed.get()) {
+						return 0;
+					}
+
+					try {
+						return decodeBand(source, header, index, bandStart, rowCount, writer, bandStart * rowLength);
+					} catch (IOException e) {
+						failed.set(true);
+
+						throw new UncheckedIOException(e);
+					} catch (RuntimeException | Error e) {
+						failed.set(true);
+
+						throw e;
+					}
+				}, executor));
+			}
+		} finally {
+			// Even on failure no band is left running, so the caller may release the source right after this method returns
+			CompletableFuture.allOf(bands.toArray(new CompletableFuture[0])).handle((result, e) -> null).join();
 		}
 
-		if (channels == 0) {
-			channels = storedChannels;
+		long bytesRead = 0;
+
+		try {
+			for (CompletableFuture<Integer> band : bands) {
+				bytesRead += join(band);
+			}
+		} catch (UncheckedIOException e) {
+			// Decoding from memory does no IO, so the only possible IO exception is an invalid stream
+			if (e.getCause() instanceof InvalidQOIStreamException) {
+				throw (InvalidQOIStreamException) e.getCause();
+			}
+
+			throw new IllegalStateException(e.getCause());
 		}
 
-		QOIColorSpace colorSpace = in.readColorSpace();
+		CodecEvents.endDecode(event, header, bytesRead, pixelData.length);
 
-		// Duplicating decoder for two specific cases improves performance almost by 26%
-		byte[] pixelData = channels == 3 ?
-				read3(in, width, height) :
-				read4(in, width, height);
+		return new QOIImage(width, height, imageChannels, header.getColorSpace(), pixelData);
+	}
 
-		for (int i = 0; i < 8; i++) {
-			if (QOI_PADDING[i] != in.readSkipBuffer()) {
-				throw new InvalidQOIStreamException("Invalid padding");
+	/**
+	 * Decodes QOI image stored in a file into raw pixel data using multiple threads of the common {@link ForkJoinPool}.
+	 * The file is memory-mapped. If the file has a checkpoint index as trailing data, bands of rows between checkpoints
+	 * are decoded concurrently, otherwise the file is decoded in the calling thread.
+	 * @param path File path.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided file does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIImage decodeParallel(@NonNull Path path, int channels) throws IOException {
+		checkChannels(channels);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			try {
+				return decodeParallel(buffer, QOICheckpointIndex.find(buffer), channels);
+			} finally {
+				// All bands are finished even on failure, so the mapping is released right away instead of keeping the file open until GC
+				DirectBuffers.release(buffer);
 			}
 		}
+	}
+
+	/**
+	 * Reads and validates only the header of a QOI image, without decoding pixels.
+	 * Exactly 14 bytes are read from the stream, in a single read if the stream allows it.
+	 * @param inputStream Input stream.
+	 * @return Header of the image.
+	 * @throws InvalidQOIStreamException If provided data does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader readHeader(@NonNull InputStream inputStream) throws IOException {
+		return new ArrayChunkDecoder(inputStream, false).readHeader();
+	}
 
-		return new QOIImage(width, height, channels, colorSpace, pixelData);
+	/**
+	 * Reads and validates only the header of a QOI image stored in a byte buffer, without decoding pixels.
+	 * Header is read starting at buffer's position. Buffer's position is not changed,
+	 * so the buffer can be passed to a decoding method afterwards.
+	 * @param buffer Buffer containing QOI image.
+	 * @return Header of the image.
+	 * @throws InvalidQOIStreamException If provided data does not start with a valid QOI header.
+	 */
+	public static QOIHeader readHeader(@NonNull ByteBuffer buffer) throws InvalidQOIStreamException {
+		return decodeInMemory(() -> createDecoder(buffer).readHeader());
 	}
 
-	// Read into 3-channel RGB buffer
-	private static byte[] read3(@NonNull Input in, int width, int height) throws IOException {
-		// Check for overflow on big images
-		int pixelDataLength = Math.multiplyExact(Math.multiplyExact(width, height), 3);
-
-		byte[] pixelData = new byte[pixelDataLength];
-
-		byte[] index = createHashTableRGBA();
-
-		byte pixelR = 0;
-		byte pixelG = 0;
-		byte pixelB = 0;
-		byte pixelA = (byte) 0xFF;
-
-		for (int pixelPos = 0; pixelPos < pixelDataLength; pixelPos += 3) {
-			int b1 = in.read() & 0xFF;
-
-			if (b1 == QOI_OP_RGB) {
-				pixelR = in.read();
-				pixelG = in.read();
-				pixelB = in.read();
-			} else if (b1 == QOI_OP_RGBA) {
-				pixelR = in.read();
-				pixelG = in.read();
-				pixelB = in.read();
-				pixelA = in.read();
-			} else {
-				switch (b1 & QOI_MASK_2) {
-					case QOI_OP_INDEX:
-						int indexPos = (b1 & ~QOI_MASK_2) << 2;
-
-						pixelR = index[indexPos];
-						pixelG = index[indexPos + 1];
-						pixelB = index[indexPos + 2];
-						pixelA = index[indexPos + 3];
-
-						break;
-					case QOI_OP_DIFF:
-						pixelR += ((b1 >> 4) & 0x03) - 2;
-						pixelG += ((b1 >> 2) & 0x03) - 2;
-						pixelB += (b1 & 0x03) - 2;
-
-						break;
-					case QOI_OP_LUMA:
-						// Safe widening conversion
-						int b2 = in.read();
-						int vg = (b1 & 0x3F) - 32;
-						pixelR += vg - 8 + ((b2 >> 4) & 0x0F);
-						pixelG += vg;
-						pixelB += vg - 8 + (b2 & 0x0F);
-
-						break;
-					case QOI_OP_RUN:
-						int run = b1 & 0x3F;
-
-						for (int i = 0; i < run; i++) {
-							pixelData[pixelPos] = pixelR;
-							pixelData[pixelPos + 1] = pixelG;
-							pixelData[pixelPos + 2] = pixelB;
-
-							pixelPos += 3;
-						}
-
-						break;
-				}
-			}
+	/**
+	 * Decodes data in the input stream into a caller-provided array, without allocating pixel data.
+	 * Pixels are stored as [R, G, B, (A,) ...], row by row. Each row starts <code>stride</code> bytes after the previous one,
+	 * bytes between rows are left untouched, which allows to decode directly into a region of a larger image.
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * channels</code>.
+	 * @param channels Channel count of the stored pixels. Allowed values are 3 and 4.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If channel count is invalid, or destination is too small for the image.
+	 *                                  The latter is detected after the header is read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader decode(@NonNull InputStream inputStream, byte @NonNull [] destination, int offset, int stride, int channels) throws IOException {
+		checkDestination(offset, stride, channels);
 
-			int indexPos = getHashTableIndexRGBA(pixelR, pixelG, pixelB, pixelA);
-			index[indexPos] = pixelR;
-			index[indexPos + 1] = pixelG;
-			index[indexPos + 2] = pixelB;
-			index[indexPos + 3] = pixelA;
+		return decode(new ArrayChunkDecoder(inputStream, true), PixelWriter.create(destination, channels), offset, stride, null);
+	}
 
-			pixelData[pixelPos] = pixelR;
-			pixelData[pixelPos + 1] = pixelG;
-			pixelData[pixelPos + 2] = pixelB;
+	/**
+	 * Decodes data in the input stream into a caller-provided buffer, without allocating pixel data.
+	 * Pixels are stored as [R, G, B, (A,) ...], row by row. Each row starts <code>stride</code> bytes after the previous one,
+	 * bytes between rows are left untouched, which allows to decode directly into a region of a larger image.
+	 * <p>Offset is an absolute index in the buffer, buffer's position is neither used nor changed;
+	 * pixels must fit under buffer's limit. Any writable buffer is supported, including direct buffers.</p>
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param destination Destination buffer.
+	 * @param offset Position of the first pixel of the first row in the destination buffer.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * channels</code>.
+	 * @param channels Channel count of the stored pixels. Allowed values are 3 and 4.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If channel count is invalid, or destination is too small for the image.
+	 *                                  The latter is detected after the header is read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader decode(@NonNull InputStream inputStream, @NonNull ByteBuffer destination, int offset, int stride, int channels) throws IOException {
+		checkDestination(offset, stride, channels);
+
+		return decode(new ArrayChunkDecoder(inputStream, true), PixelWriter.create(destination, channels), offset, stride, null);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided array, without allocating pixel data.
+	 * Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * To decode from a byte array, wrap it using {@link ByteBuffer#wrap(byte[])}.
+	 * <p>Pixels are stored as [R, G, B, (A,) ...], row by row. Each row starts <code>stride</code> bytes after the previous one,
+	 * bytes between rows are left untouched, which allows to decode directly into a region of a larger image.</p>
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * channels</code>.
+	 * @param channels Channel count of the stored pixels. Allowed values are 3 and 4.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If channel count is invalid, or destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIHeader decode(@NonNull ByteBuffer source, byte @NonNull [] destination, int offset, int stride, int channels) throws InvalidQOIStreamException {
+		checkDestination(offset, stride, channels);
+
+		return decode(source, PixelWriter.create(destination, channels), offset, stride);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided buffer, without allocating pixel data.
+	 * Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * To decode from a byte array, wrap it using {@link ByteBuffer#wrap(byte[])}.
+	 * <p>Pixels are stored as [R, G, B, (A,) ...], row by row. Each row starts <code>stride</code> bytes after the previous one,
+	 * bytes between rows are left untouched, which allows to decode directly into a region of a larger image.</p>
+	 * <p>Offset is an absolute index in the destination buffer, its position is neither used nor changed;
+	 * pixels must fit under buffer's limit. Any writable buffer is supported, including direct buffers.</p>
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination buffer.
+	 * @param offset Position of the first pixel of the first row in the destination buffer.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * channels</code>.
+	 * @param channels Channel count of the stored pixels. Allowed values are 3 and 4.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If channel count is invalid, or destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIHeader decode(@NonNull ByteBuffer source, @NonNull ByteBuffer destination, int offset, int stride, int channels) throws InvalidQOIStreamException {
+		checkDestination(offset, stride, channels);
+
+		return decode(source, PixelWriter.create(destination, channels), offset, stride);
+	}
+
+	/**
+	 * Decodes data in the input stream into a caller-provided array in the specified pixel format, without allocating pixel data.
+	 * Pixels are stored in the channel order of the format, row by row. Each row starts <code>stride</code> bytes after the previous one,
+	 * bytes between rows are left untouched. Alpha of 3-channel images is 255 in 4-channel formats, alpha of 4-channel images
+	 * is dropped in 3-channel formats. Channels are reordered while storing decoded pixels, without a separate pass.
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * format.getChannels()</code>.
+	 * @param format Format of the stored pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image. This is detected after the header is read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader decode(@NonNull InputStream inputStream, byte @NonNull [] destination, int offset, int stride, @NonNull QOIPixelFormat format) throws IOException {
+		checkDestination(offset, stride);
+
+		return decode(new ArrayChunkDecoder(inputStream, true), PixelWriter.create(destination, format), offset, stride, null);
+	}
+
+	/**
+	 * Decodes data in the input stream into a caller-provided buffer in the specified pixel format, without allocating pixel data.
+	 * Pixels are stored like in {@link #decode(InputStream, byte[], int, int, QOIPixelFormat)}.
+	 * <p>Offset is an absolute index in the buffer, buffer's position is neither used nor changed;
+	 * pixels must fit under buffer's limit. Any writable buffer is supported, including direct buffers.</p>
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param destination Destination buffer.
+	 * @param offset Position of the first pixel of the first row in the destination buffer.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * format.getChannels()</code>.
+	 * @param format Format of the stored pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image. This is detected after the header is read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader decode(@NonNull InputStream inputStream, @NonNull ByteBuffer destination, int offset, int stride, @NonNull QOIPixelFormat format) throws IOException {
+		checkDestination(offset, stride);
+
+		return decode(new ArrayChunkDecoder(inputStream, true), PixelWriter.create(destination, format), offset, stride, null);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided array in the specified pixel format, without allocating pixel data.
+	 * Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * Pixels are stored like in {@link #decode(InputStream, byte[], int, int, QOIPixelFormat)}.
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * format.getChannels()</code>.
+	 * @param format Format of the stored pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIHeader decode(@NonNull ByteBuffer source, byte @NonNull [] destination, int offset, int stride, @NonNull QOIPixelFormat format) throws InvalidQOIStreamException {
+		checkDestination(offset, stride);
+
+		return decode(source, PixelWriter.create(destination, format), offset, stride);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided buffer in the specified pixel format, without allocating pixel data.
+	 * Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * Pixels are stored like in {@link #decode(InputStream, byte[], int, int, QOIPixelFormat)}.
+	 * <p>Offset is an absolute index in the destination buffer, its position is neither used nor changed;
+	 * pixels must fit under buffer's limit. Any writable buffer is supported, including direct buffers.</p>
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination buffer.
+	 * @param offset Position of the first pixel of the first row in the destination buffer.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * format.getChannels()</code>.
+	 * @param format Format of the stored pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIHeader decode(@NonNull ByteBuffer source, @NonNull ByteBuffer destination, int offset, int stride, @NonNull QOIPixelFormat format) throws InvalidQOIStreamException {
+		checkDestination(offset, stride);
+
+		return decode(source, PixelWriter.create(destination, format), offset, stride);
+	}
+
+	/**
+	 * Decodes data in the input stream into a caller-provided array in the specified pixel format and color representation,
+	 * without allocating pixel data. Pixels are stored like in {@link #decode(InputStream, byte[], int, int, QOIPixelFormat)},
+	 * after being converted into the representation of the transform, without a separate pass.
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * format.getChannels()</code>.
+	 * @param format Format of the stored pixels.
+	 * @param transform Representation of color values of the stored pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image. This is detected after the header is read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader decode(@NonNull InputStream inputStream, byte @NonNull [] destination, int offset, int stride,
+								   @NonNull QOIPixelFormat format, @NonNull QOIColorTransform transform) throws IOException {
+		checkDestination(offset, stride);
+
+		PixelWriter writer = PixelWriter.create(PixelWriter.create(destination, format), transform);
+
+		return decode(new ArrayChunkDecoder(inputStream, true), writer, offset, stride, null);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided array in the specified pixel format and color representation,
+	 * without allocating pixel data. Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * Pixels are stored like in {@link #decode(InputStream, byte[], int, int, QOIPixelFormat, QOIColorTransform)}.
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * format.getChannels()</code>.
+	 * @param format Format of the stored pixels.
+	 * @param transform Representation of color values of the stored pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIHeader decode(@NonNull ByteBuffer source, byte @NonNull [] destination, int offset, int stride,
+								   @NonNull QOIPixelFormat format, @NonNull QOIColorTransform transform) throws InvalidQOIStreamException {
+		checkDestination(offset, stride);
+
+		return decode(source, PixelWriter.create(PixelWriter.create(destination, format), transform), offset, stride);
+	}
+
+	/**
+	 * Decodes data in the input stream into a caller-provided array of floats, without allocating pixel data.
+	 * Each pixel is stored as 4 floats R, G, B, A in range [0, 1], row by row, after being converted into
+	 * the representation of the transform. Floats keep full precision of linear values of dark sRGB colors.
+	 * Each row starts <code>stride</code> floats after the previous one, floats between rows are left untouched.
+	 * Alpha of 3-channel images is always 1.
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in floats, must be at least <code>width * 4</code>.
+	 * @param transform Representation of color values of the stored pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image. This is detected after the header is read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader decode(@NonNull InputStream inputStream, float @NonNull [] destination, int offset, int stride,
+								   @NonNull QOIColorTransform transform) throws IOException {
+		checkDestination(offset, stride);
+
+		return decode(new ArrayChunkDecoder(inputStream, true), PixelWriter.create(destination, transform), offset, stride, null);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided array of floats, without allocating pixel data.
+	 * Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * Pixels are stored like in {@link #decode(InputStream, float[], int, int, QOIColorTransform)}.
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in floats, must be at least <code>width * 4</code>.
+	 * @param transform Representation of color values of the stored pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIHeader decode(@NonNull ByteBuffer source, float @NonNull [] destination, int offset, int stride,
+								   @NonNull QOIColorTransform transform) throws InvalidQOIStreamException {
+		checkDestination(offset, stride);
+
+		return decode(source, PixelWriter.create(destination, transform), offset, stride);
+	}
+
+	/**
+	 * Decodes data in the input stream into a caller-provided array of packed pixels, without allocating pixel data.
+	 * Each pixel is stored as a single int in the specified layout, row by row. Each row starts <code>stride</code> ints
+	 * after the previous one, ints between rows are left untouched. Alpha of 3-channel images is always 255.
+	 * <p>Decoding into {@link QOIPixelPacking#RGBA} ints requires no conversion and is the fastest.</p>
+	 * <p>This method does buffering by itself, for optimal performance the input stream should not be buffered.
+	 * It may read past a single valid QOI image, if more data is available in the stream.</p>
+	 * @param inputStream Input stream.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in pixels, must be at least <code>width</code>.
+	 * @param packing Layout of the packed pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image. This is detected after the header is read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader decode(@NonNull InputStream inputStream, int @NonNull [] destination, int offset, int stride, @NonNull QOIPixelPacking packing) throws IOException {
+		checkDestination(offset, stride);
+
+		return decode(new ArrayChunkDecoder(inputStream, true), PixelWriter.create(destination, packing), offset, stride, null);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided array of packed pixels, without allocating pixel data.
+	 * Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * To decode from a byte array, wrap it using {@link ByteBuffer#wrap(byte[])}.
+	 * <p>Each pixel is stored as a single int in the specified layout, row by row. Each row starts <code>stride</code> ints
+	 * after the previous one, ints between rows are left untouched. Alpha of 3-channel images is always 255.</p>
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in pixels, must be at least <code>width</code>.
+	 * @param packing Layout of the packed pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 */
+	public static QOIHeader decode(@NonNull ByteBuffer source, int @NonNull [] destination, int offset, int stride, @NonNull QOIPixelPacking packing) throws InvalidQOIStreamException {
+		checkDestination(offset, stride);
+
+		return decode(source, PixelWriter.create(destination, packing), offset, stride);
+	}
+
+	private static QOIHeader decode(@NonNull ByteBuffer source, @NonNull PixelWriter writer, int offset, int stride) throws InvalidQOIStreamException {
+		ChunkDecoder decoder = createDecoder(source);
+
+		QOIHeader header = decodeInMemory(() -> decode(decoder, writer, offset, stride, null));
+
+		updatePosition(source, decoder);
+
+		return header;
+	}
+
+	// Reads the header without changing buffer's position
+	private static QOIHeader readHeader(@NonNull ByteBuffer source, QOICheckpointIndex index) throws IOException {
+		QOIHeader header = createDecoder(source.duplicate()).readHeader();
+
+		if (index != null) {
+			index.check(header);
 		}
 
-		return pixelData;
+		return header;
 	}
 
-	// Read into 4-channel RGBA buffer
-	private static byte[] read4(@NonNull Input in, int width, int height) throws IOException {
-		// Check for overflow on big images
-		int pixelDataLength = Math.multiplyExact(Math.multiplyExact(width, height), 4);
-
-		byte[] pixelData = new byte[pixelDataLength];
-
-		byte[] index = createHashTableRGBA();
-
-		byte pixelR = 0;
-		byte pixelG = 0;
-		byte pixelB = 0;
-		byte pixelA = (byte) 0xFF;
-
-		for (int pixelPos = 0; pixelPos < pixelDataLength; pixelPos += 4) {
-			int b1 = in.read() & 0xFF;
-
-			if (b1 == QOI_OP_RGB) {
-				pixelR = in.read();
-				pixelG = in.read();
-				pixelB = in.read();
-			} else if (b1 == QOI_OP_RGBA) {
-				pixelR = in.read();
-				pixelG = in.read();
-				pixelB = in.read();
-				pixelA = in.read();
-			} else {
-				switch (b1 & QOI_MASK_2) {
-					case QOI_OP_INDEX:
-						int indexPos = (b1 & ~QOI_MASK_2) << 2;
-
-						pixelR = index[indexPos];
-						pixelG = index[indexPos + 1];
-						pixelB = index[indexPos + 2];
-						pixelA = index[indexPos + 3];
-
-						break;
-					case QOI_OP_DIFF:
-						pixelR += ((b1 >> 4) & 0x03) - 2;
-						pixelG += ((b1 >> 2) & 0x03) - 2;
-						pixelB += (b1 & 0x03) - 2;
-
-						break;
-					case QOI_OP_LUMA:
-						// Safe widening conversion
-						int b2 = in.read();
-						int vg = (b1 & 0x3F) - 32;
-						pixelR += vg - 8 + ((b2 >> 4) & 0x0F);
-						pixelG += vg;
-						pixelB += vg - 8 + (b2 & 0x0F);
-
-						break;
-					case QOI_OP_RUN:
-						int run = b1 & 0x3F;
-
-						for (int i = 0; i < run; i++) {
-							pixelData[pixelPos] = pixelR;
-							pixelData[pixelPos + 1] = pixelG;
-							pixelData[pixelPos + 2] = pixelB;
-							pixelData[pixelPos + 3] = pixelA;
-
-							pixelPos += 4;
-						}
-
-						break;
-				}
+	/**
+	 * Decodes <code>rowCount</code> rows starting at <code>firstRow</code>, and stores them into the destination starting at <code>offset</code>.
+	 * @return Count of bytes read.
+	 */
+	private static int decodeBand(@NonNull ByteBuffer source, @NonNull QOIHeader header, QOICheckpointIndex index,
+								  int firstRow, int rowCount, @NonNull PixelWriter writer, int offset) throws IOException {
+		return decodeRegion(source, header, index, 0, firstRow, header.getWidth(), rowCount, writer, offset);
+	}
+
+	/**
+	 * Decodes the region starting at the last checkpoint before it, or at the beginning of the image.
+	 * @return Count of bytes read, from the checkpoint or from the header. Counts of bands between adjacent checkpoints
+	 *         add up to the image size.
+	 */
+	private static int decodeRegion(@NonNull ByteBuffer source, @NonNull QOIHeader header, QOICheckpointIndex index,
+									int x, int y, int width, int height, @NonNull PixelWriter writer, int offset) throws IOException {
+		// Each band has its own view of the source, so bands can be decoded concurrently
+		ChunkDecoder decoder = createDecoder(source.duplicate());
+		int start = decoder.position;
+
+		int checkpoint = index == null ? -1 : index.getCheckpoint(y);
+		int row;
+
+		if (checkpoint < 0) {
+			decoder.readHeader();
+
+			row = 0;
+		} else {
+			index.restore(checkpoint, decoder);
+
+			row = index.getRow(checkpoint);
+		}
+
+		int readFrom = checkpoint < 0 ? start : decoder.position;
+
+		decodeRegion(decoder, header, row, x, y, width, height, writer, offset);
+
+		// A band that ends at a checkpoint is where the next band starts, so the index must agree with the decoded data
+		if (index != null && x + width == header.getWidth()) {
+			index.verify(y + height, decoder, start);
+		}
+
+		return decoder.position - readFrom;
+	}
+
+	/**
+	 * Decodes pixels of the region row by row, starting at the first pixel of the row <code>row</code>.
+	 * Pixels outside the region are decoded and discarded. Decoding stops after the last pixel of the region,
+	 * so padding is checked only when the region ends at the last pixel of the image.
+	 */
+	private static void decodeRegion(@NonNull ChunkDecoder decoder, @NonNull QOIHeader header, int row,
+									 int x, int y, int width, int height, @NonNull PixelWriter writer, int offset) throws IOException {
+		int imageWidth = header.getWidth();
+		int[] span = new int[Math.min(imageWidth, SPAN_SIZE)];
+
+		skipPixels(decoder, span, (long) (y - row) * imageWidth + x);
+
+		int rowLength = width * writer.pixelSize;
+
+		for (int i = 0; i < height; i++) {
+			if (i > 0) {
+				skipPixels(decoder, span, imageWidth - width);
 			}
 
-			int indexPos = getHashTableIndexRGBA(pixelR, pixelG, pixelB, pixelA);
-			index[indexPos] = pixelR;
-			index[indexPos + 1] = pixelG;
-			index[indexPos + 2] = pixelB;
-			index[indexPos + 3] = pixelA;
+			decodeRow(decoder, writer, span, width, offset + i * rowLength);
+		}
 
-			pixelData[pixelPos] = pixelR;
-			pixelData[pixelPos + 1] = pixelG;
-			pixelData[pixelPos + 2] = pixelB;
-			pixelData[pixelPos + 3] = pixelA;
+		if (y + height == header.getHeight() && x + width == imageWidth) {
+			decoder.readPadding();
 		}
+	}
 
-		return pixelData;
+	private static void skipPixels(@NonNull ChunkDecoder decoder, int @NonNull [] span, long count) throws IOException {
+		while (count > 0) {
+			int spanCount = (int) Math.min(span.length, count);
+
+			decoder.decode(span, 0, spanCount);
+
+			count -= spanCount;
+		}
 	}
 
-	private static final class Input {
+	private static ChunkDecoder createDecoder(@NonNull ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			return new ArrayChunkDecoder(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
 
-		private static final int BUFFER_SIZE = 8192;
+		return new BufferChunkDecoder(buffer);
+	}
 
-		private final InputStream in;
-		private final byte[] buffer;
-		private int position;
-		private int read;
+	static void updatePosition(@NonNull ByteBuffer buffer, @NonNull ChunkDecoder decoder) {
+		buffer.position(buffer.hasArray() ? decoder.position - buffer.arrayOffset() : decoder.position);
+	}
 
-		private Input(@NonNull InputStream in, boolean useBuffer) {
-			this.in = in;
-			this.buffer = useBuffer ? new byte[BUFFER_SIZE] : null;
+	// Decoding from memory does no IO, so the only possible IO exception is an invalid stream
+	static <T> T decodeInMemory(@NonNull DecodeAction<T> action) throws InvalidQOIStreamException {
+		try {
+			return action.decode();
+		} catch (InvalidQOIStreamException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
 		}
+	}
 
-		public byte read() throws IOException {
-			if (this.buffer == null) {
-				return readSingleByte();
-			}
+	static void checkDestination(int offset, int stride, int channels) {
+		if (channels != 3 && channels != 4) {
+			throw new IllegalArgumentException("Invalid channel count, must be 3 or 4");
+		}
+
+		checkDestination(offset, stride);
+	}
+
+	static void checkDestination(int offset, int stride) {
+		if (offset < 0) {
+			throw new IllegalArgumentException("Offset must be non-negative");
+		}
+
+		if (stride < 1) {
+			throw new IllegalArgumentException("Stride must be positive");
+		}
+	}
+
+	static void checkFactor(int factor) {
+		if (factor < 1) {
+			throw new IllegalArgumentException("Factor must be positive");
+		}
+	}
+
+	static void checkChannels(int channels) {
+		if (channels != 0 && channels != 3 && channels != 4) {
+			throw new IllegalArgumentException("Invalid channel count, must be 0, 3 or 4");
+		}
+	}
+
+	/**
+	 * Decodes the image using the decoder, which must be in the initial state.
+	 * @param span Span to decode pixels into, or <code>null</code> to allocate one.
+	 */
+	static QOIImage decode(@NonNull ChunkDecoder decoder, int channels, int[] span) throws IOException {
+		Object event = CodecEvents.beginDecode();
+
+		QOIHeader header = decoder.readHeader();
+
+		if (channels == 0) {
+			channels = header.getChannels();
+		}
+
+		int width = header.getWidth();
+		int height = header.getHeight();
+
+		// Check for overflow on big images
+		byte[] pixelData = new byte[Math.multiplyExact(Math.multiplyExact(width, height), channels)];
+
+		decodePixels(decoder, header, PixelWriter.create(pixelData, channels), 0, width * channels, span);
+
+		decoder.readPadding();
+
+		CodecEvents.endDecode(event, header, decoder.bytesRead(), pixelData.length);
+
+		return new QOIImage(width, height, channels, header.getColorSpace(), pixelData);
+	}
+
+	/**
+	 * Decodes the image reduced by the factor using the decoder, which must be in the initial state.
+	 */
+	static QOIImage decodeDownscaled(@NonNull ChunkDecoder decoder, int factor, int channels) throws IOException {
+		Object event = CodecEvents.beginDecode();
+
+		QOIHeader header = decoder.readHeader();
+
+		if (channels == 0) {
+			channels = header.getChannels();
+		}
+
+		int width = header.getWidth();
+		int height = header.getHeight();
+		int targetWidth = (width - 1) / factor + 1;
+		int targetHeight = (height - 1) / factor + 1;
+
+		byte[] pixelData = new byte[Math.multiplyExact(Math.multiplyExact(targetWidth, targetHeight), channels)];
+
+		PixelWriter writer = PixelWriter.create(pixelData, channels);
+
+		// Sums of alpha-weighted R, G, B and of A for each pixel of the current target row
+		long[] sums = new long[Math.multiplyExact(targetWidth, 4)];
+		int[] span = new int[Math.min(width, SPAN_SIZE)];
+		int[] row = new int[targetWidth];
 
-			if (this.position == this.read) {
-				this.read = this.in.read(this.buffer);
+		for (int y = 0; y < height; y++) {
+			int sumIndex = 0;
+			int blockLeft = factor;
 
-				if (this.read == -1) {
-					throw new InvalidQOIStreamException("Unexpected end of stream");
+			for (int x = 0; x < width; ) {
+				int count = Math.min(span.length, width - x);
+
+				decoder.decode(span, 0, count);
+
+				for (int i = 0; i < count; i++) {
+					int pixel = span[i];
+					int a = pixel & 0xFF;
+
+					sums[sumIndex] += (pixel >>> 24) * a;
+					sums[sumIndex + 1] += ((pixel >> 16) & 0xFF) * a;
+					sums[sumIndex + 2] += ((pixel >> 8) & 0xFF) * a;
+					sums[sumIndex + 3] += a;
+
+					if (--blockLeft == 0) {
+						sumIndex += 4;
+						blockLeft = factor;
+					}
 				}
 
-				this.position = 0;
+				x += count;
 			}
 
-			return this.buffer[this.position++];
-		}
+			if (y % factor == factor - 1 || y == height - 1) {
+				averageBlocks(sums, row, width, factor, y % factor + 1);
+
+				writer.write(row, targetWidth, y / factor * targetWidth * channels);
 
-		public byte readSkipBuffer() throws IOException {
-			if (this.buffer == null) {
-				return readSingleByte();
+				Arrays.fill(sums, 0);
 			}
+		}
 
-			if (this.position == this.read) {
-				return readSingleByte();
+		decoder.readPadding();
+
+		CodecEvents.endDecode(event, header, decoder.bytesRead(), pixelData.length);
+
+		return new QOIImage(targetWidth, targetHeight, channels, header.getColorSpace(), pixelData);
+	}
+
+	// Converts sums of blocks into packed pixels
+	private static void averageBlocks(long[] sums, int[] row, int width, int factor, int blockHeight) {
+		for (int i = 0; i < row.length; i++) {
+			long blockSize = (long) Math.min(factor, width - i * factor) * blockHeight;
+			long alpha = sums[i * 4 + 3];
+
+			if (alpha == 0) {
+				row[i] = 0;
+				continue;
 			}
 
-			return this.buffer[this.position++];
+			long half = alpha / 2;
+
+			row[i] = (int) ((sums[i * 4] + half) / alpha) << 24 |
+					(int) ((sums[i * 4 + 1] + half) / alpha) << 16 |
+					(int) ((sums[i * 4 + 2] + half) / alpha) << 8 |
+					(int) ((alpha + blockSize / 2) / blockSize);
 		}
+	}
 
-		private byte readSingleByte() throws IOException {
-			int read = this.in.read();
+	/**
+	 * Decodes the image into a large image with the specified segment size using the decoder, which must be in the initial state.
+	 * The image is closed if decoding fails.
+	 */
+	static QOILargeImage decodeLarge(@NonNull ChunkDecoder decoder, int channels, int segmentPixels, boolean direct) throws IOException {
+		Object event = CodecEvents.beginDecode();
+
+		QOIHeader header = decoder.readHeader();
+
+		if (channels == 0) {
+			channels = header.getChannels();
+		}
+
+		QOILargeImage image = new QOILargeImage(header.getWidth(), header.getHeight(), channels, header.getColorSpace(), segmentPixels, direct);
 
-			if (read == -1) {
-				throw new InvalidQOIStreamException("Unexpected end of stream");
+		try {
+			int[] span = new int[(int) Math.min(image.getPixelCount(), SPAN_SIZE)];
+
+			// Segments hold whole pixels, so each one is decoded as a single row
+			for (int i = 0; i < image.getSegmentCount(); i++) {
+				ByteBuffer segment = image.segment(i);
+
+				decodeRow(decoder, PixelWriter.create(segment, channels), span, segment.capacity() / channels, 0);
 			}
 
-			return (byte) read;
+			decoder.readPadding();
+		} catch (Throwable e) {
+			image.close();
+
+			throw e;
+		}
+
+		CodecEvents.endDecode(event, header, decoder.bytesRead(), image.getPixelDataSize());
+
+		return image;
+	}
+
+	/**
+	 * Decodes the image into the destination using the decoder, which must be in the initial state.
+	 * @param span Span to decode pixels into, or <code>null</code> to allocate one.
+	 */
+	static QOIHeader decode(@NonNull ChunkDecoder decoder, @NonNull PixelWriter writer, int offset, int stride, int[] span) throws IOException {
+		Object event = CodecEvents.beginDecode();
+
+		QOIHeader header = decoder.readHeader();
+
+		int rowLength = Math.multiplyExact(header.getWidth(), writer.pixelSize);
+
+		if (stride < rowLength) {
+			throw new IllegalArgumentException("Stride " + stride + " is less than row length " + rowLength);
 		}
 
-		public int readInt() throws IOException {
-			int a = read() & 0xFF;
-			int b = read() & 0xFF;
-			int c = read() & 0xFF;
-			int d = read() & 0xFF;
-			return (a << 24) | (b << 16) | (c << 8) | d;
+		if (offset + (header.getHeight() - 1) * (long) stride + rowLength > writer.capacity()) {
+			throw new IllegalArgumentException("Destination is too small for " + header.getWidth() + " x " + header.getHeight() + " image");
 		}
 
-		public QOIColorSpace readColorSpace() throws IOException {
-			int value = read() & 0xFF;
+		writer.start(header);
 
-			switch (value) {
-				case QOI_SRGB:
-					return QOIColorSpace.SRGB;
-				case QOI_LINEAR:
-					return QOIColorSpace.LINEAR;
-			}
+		decodePixels(decoder, header, writer, offset, stride, span);
+
+		decoder.readPadding();
 
-			throw new InvalidQOIStreamException("Invalid color space value " + value);
+		CodecEvents.endDecode(event, header, decoder.bytesRead(), (long) header.getWidth() * header.getHeight() * writer.bytesPerPixel());
+
+		return header;
+	}
+
+	private static void decodePixels(@NonNull ChunkDecoder decoder, @NonNull QOIHeader header, @NonNull PixelWriter writer, int offset, int stride, int[] span) throws IOException {
+		int rowPixels = header.getWidth();
+		int rows = header.getHeight();
+
+		if (stride == rowPixels * writer.pixelSize) {
+			// Rows are contiguous, so the whole image can be stored as a single row
+			rowPixels = Math.multiplyExact(rowPixels, rows);
+			rows = 1;
 		}
 
+		// Chunks are decoded into a small reusable span of packed pixels, which then is stored into the destination
+		if (span == null) {
+			span = new int[Math.min(rowPixels, SPAN_SIZE)];
+		}
+
+		for (int row = 0; row < rows; row++) {
+			decodeRow(decoder, writer, span, rowPixels, offset + row * stride);
+		}
+	}
+
+	/**
+	 * Decodes next <code>count</code> pixels span by span, and stores them into the destination starting at <code>position</code>.
+	 */
+	static void decodeRow(@NonNull ChunkDecoder decoder, @NonNull PixelWriter writer, int @NonNull [] span, int count, int position) throws IOException {
+		for (int x = 0; x < count; ) {
+			int spanCount = Math.min(span.length, count - x);
+
+			writer.decode(decoder, span, spanCount, position);
+
+			x += spanCount;
+			position += spanCount * writer.pixelSize;
+		}
+	}
+
+	@FunctionalInterface
+	interface DecodeAction<T> {
+
+		T decode() throws IOException;
+
 	}
 
 }
@@ -0,0 +1,272 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Decodes QOI images like {@link QOIDecoder}, but reuses the input buffer, the index table and other working memory
+ * between images. Decoding many small images with a single context allocates nothing except the decoded pixels.
+ * <p>A context is not thread-safe. Create a context per thread, or use {@link #forCurrentThread()}.</p>
+ */
+public final class QOIDecoderContext {
+
+	private static final ThreadLocal<QOIDecoderContext> THREAD_LOCAL = ThreadLocal.withInitial(QOIDecoderContext::new);
+
+	private final ArrayChunkDecoder arrayDecoder = new ArrayChunkDecoder();
+
+	private final BufferChunkDecoder bufferDecoder = new BufferChunkDecoder();
+
+	private final int[] span = new int[SPAN_SIZE];
+
+	/**
+	 * Returns a context bound to the current thread, which is created on first use.
+	 * It must not be used from other threads, or by code that is called while it decodes, for example by the input stream.
+	 */
+	public static QOIDecoderContext forCurrentThread() {
+		return THREAD_LOCAL.get();
+	}
+
+	/**
+	 * Returns statistics that chunks read by this context are counted into, or <code>null</code> if chunks are not counted.
+	 */
+	public QOIStatistics getStatistics() {
+		return this.arrayDecoder.statistics;
+	}
+
+	/**
+	 * Sets statistics to count chunks of all images decoded by this context into.
+	 * @param statistics Statistics, or <code>null</code> to stop counting.
+	 */
+	public void setStatistics(QOIStatistics statistics) {
+		this.arrayDecoder.statistics = statistics;
+		this.bufferDecoder.statistics = statistics;
+	}
+
+	/**
+	 * Decodes data in the input stream into raw pixel data.
+	 * @param inputStream Input stream.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 * @see QOIDecoder#decode(InputStream, int)
+	 */
+	public QOIImage decode(@NonNull InputStream inputStream, int channels) throws IOException {
+		return decode(inputStream, channels, false);
+	}
+
+	/**
+	 * Decodes data in the input stream into raw pixel data.
+	 * @param inputStream Input stream.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @param doNotTouchDataAfterImage If set to true, decoder will not read past a single valid QOI image.
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 * @see QOIDecoder#decode(InputStream, int, boolean)
+	 */
+	public QOIImage decode(@NonNull InputStream inputStream, int channels, boolean doNotTouchDataAfterImage) throws IOException {
+		QOIDecoder.checkChannels(channels);
+
+		this.arrayDecoder.reset(inputStream, !doNotTouchDataAfterImage);
+
+		try {
+			return QOIDecoder.decode(this.arrayDecoder, channels, this.span);
+		} finally {
+			this.arrayDecoder.clear();
+		}
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte array into raw pixel data.
+	 * @param data Array containing QOI image.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @see QOIDecoder#decode(byte[], int)
+	 */
+	public QOIImage decode(byte @NonNull [] data, int channels) throws InvalidQOIStreamException {
+		return decode(data, 0, data.length, channels);
+	}
+
+	/**
+	 * Decodes QOI image stored in a region of a byte array into raw pixel data.
+	 * @param data Array containing QOI image.
+	 * @param offset Offset of the image in the array.
+	 * @param length Length of the region containing the image.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws IndexOutOfBoundsException If offset or length are invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @see QOIDecoder#decode(byte[], int, int, int)
+	 */
+	public QOIImage decode(byte @NonNull [] data, int offset, int length, int channels) throws InvalidQOIStreamException {
+		QOIDecoder.checkChannels(channels);
+
+		if (offset < 0 || length < 0 || offset > data.length - length) {
+			throw new IndexOutOfBoundsException("Invalid offset or length");
+		}
+
+		this.arrayDecoder.reset(data, offset, length);
+
+		try {
+			return QOIDecoder.decodeInMemory(() -> QOIDecoder.decode(this.arrayDecoder, channels, this.span));
+		} finally {
+			this.arrayDecoder.clear();
+		}
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into raw pixel data.
+	 * Image is read starting at buffer's position. On success, position is advanced past the image.
+	 * @param buffer Buffer containing QOI image.
+	 * @param channels Channel count. Allowed values are 3, 4 and 0 (read as many channels as actually stored).
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @see QOIDecoder#decode(ByteBuffer, int)
+	 */
+	public QOIImage decode(@NonNull ByteBuffer buffer, int channels) throws InvalidQOIStreamException {
+		QOIDecoder.checkChannels(channels);
+
+		ChunkDecoder decoder = getDecoder(buffer);
+
+		try {
+			QOIImage image = QOIDecoder.decodeInMemory(() -> QOIDecoder.decode(decoder, channels, this.span));
+
+			QOIDecoder.updatePosition(buffer, decoder);
+
+			return image;
+		} finally {
+			clear();
+		}
+	}
+
+	/**
+	 * Decodes data in the input stream into a caller-provided array, without allocating pixel data.
+	 * @param inputStream Input stream.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * channels</code>.
+	 * @param channels Channel count of the stored pixels. Allowed values are 3 and 4.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If channel count is invalid, or destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 * @see QOIDecoder#decode(InputStream, byte[], int, int, int)
+	 */
+	public QOIHeader decode(@NonNull InputStream inputStream, byte @NonNull [] destination, int offset, int stride, int channels) throws IOException {
+		QOIDecoder.checkDestination(offset, stride, channels);
+
+		return decode(inputStream, PixelWriter.create(destination, channels), offset, stride);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided array, without allocating pixel data.
+	 * Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in bytes, must be at least <code>width * channels</code>.
+	 * @param channels Channel count of the stored pixels. Allowed values are 3 and 4.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If channel count is invalid, or destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @see QOIDecoder#decode(ByteBuffer, byte[], int, int, int)
+	 */
+	public QOIHeader decode(@NonNull ByteBuffer source, byte @NonNull [] destination, int offset, int stride, int channels) throws InvalidQOIStreamException {
+		QOIDecoder.checkDestination(offset, stride, channels);
+
+		return decode(source, PixelWriter.create(destination, channels), offset, stride);
+	}
+
+	/**
+	 * Decodes data in the input stream into a caller-provided array of packed pixels, without allocating pixel data.
+	 * @param inputStream Input stream.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in pixels, must be at least <code>width</code>.
+	 * @param packing Layout of the packed pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 * @see QOIDecoder#decode(InputStream, int[], int, int, QOIPixelPacking)
+	 */
+	public QOIHeader decode(@NonNull InputStream inputStream, int @NonNull [] destination, int offset, int stride, @NonNull QOIPixelPacking packing) throws IOException {
+		QOIDecoder.checkDestination(offset, stride);
+
+		return decode(inputStream, PixelWriter.create(destination, packing), offset, stride);
+	}
+
+	/**
+	 * Decodes QOI image stored in a byte buffer into a caller-provided array of packed pixels, without allocating pixel data.
+	 * Image is read starting at source buffer's position. On success, position is advanced past the image.
+	 * @param source Buffer containing QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position of the first pixel of the first row in the destination array.
+	 * @param stride Distance between starts of two adjacent rows in pixels, must be at least <code>width</code>.
+	 * @param packing Layout of the packed pixels.
+	 * @return Header of the decoded image.
+	 * @throws IllegalArgumentException If destination is too small for the image.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @see QOIDecoder#decode(ByteBuffer, int[], int, int, QOIPixelPacking)
+	 */
+	public QOIHeader decode(@NonNull ByteBuffer source, int @NonNull [] destination, int offset, int stride, @NonNull QOIPixelPacking packing) throws InvalidQOIStreamException {
+		QOIDecoder.checkDestination(offset, stride);
+
+		return decode(source, PixelWriter.create(destination, packing), offset, stride);
+	}
+
+	private QOIHeader decode(@NonNull InputStream inputStream, @NonNull PixelWriter writer, int offset, int stride) throws IOException {
+		this.arrayDecoder.reset(inputStream, true);
+
+		try {
+			return QOIDecoder.decode(this.arrayDecoder, writer, offset, stride, this.span);
+		} finally {
+			this.arrayDecoder.clear();
+		}
+	}
+
+	private QOIHeader decode(@NonNull ByteBuffer source, @NonNull PixelWriter writer, int offset, int stride) throws InvalidQOIStreamException {
+		ChunkDecoder decoder = getDecoder(source);
+
+		try {
+			QOIHeader header = QOIDecoder.decodeInMemory(() -> QOIDecoder.decode(decoder, writer, offset, stride, this.span));
+
+			QOIDecoder.updatePosition(source, decoder);
+
+			return header;
+		} finally {
+			clear();
+		}
+	}
+
+	// Same choice as QOIDecoder.createDecoder, but with reused decoders
+	private ChunkDecoder getDecoder(@NonNull ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			this.arrayDecoder.reset(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+
+			return this.arrayDecoder;
+		}
+
+		this.bufferDecoder.reset(buffer);
+
+		return this.bufferDecoder;
+	}
+
+	private void clear() {
+		this.arrayDecoder.clear();
+		this.bufferDecoder.clear();
+	}
+
+}
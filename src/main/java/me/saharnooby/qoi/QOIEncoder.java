@@ -4,14 +4,25 @@ import lombok.NonNull;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import static me.saharnooby.qoi.QOICodec.*;
 
 /**
- * Contains method that encodes raw pixel data into bytes.
+ * Contains methods that encode raw pixel data into bytes.
  */
 public final class QOIEncoder {
 
+	// Minimal count of pixels in a segment encoded by a single task of the parallel encoder
+	private static final int MIN_SEGMENT_SIZE = 1 << 16;
+
 	/**
 	 * Encodes raw pixel data into QOI image, which then is written into the provided output stream.
 	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
@@ -20,298 +31,609 @@ public final class QOIEncoder {
 	 * @throws IOException On any IO error.
 	 */
 	public static void encode(@NonNull QOIImage image, @NonNull OutputStream outputStream) throws IOException {
-		int channels = image.getChannels();
+		// This custom buffering is slightly faster than BufferedOutputStream
+		encode(getHeader(image), createReader(image), new ChunkEncoder(outputStream), null);
+	}
 
-		byte[] pixelData = image.getPixelData();
+	/**
+	 * Encodes raw pixel data into QOI image, which then is written into the provided output stream,
+	 * and counts written chunks.
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param image QOI image.
+	 * @param outputStream Output stream.
+	 * @param statistics Statistics to add counts of written chunks to.
+	 * @throws IOException On any IO error.
+	 */
+	public static void encode(@NonNull QOIImage image, @NonNull OutputStream outputStream, @NonNull QOIStatistics statistics) throws IOException {
+		ChunkEncoder encoder = new ChunkEncoder(outputStream);
 
-		// This custom buffering class is slightly faster than BufferedOutputStream
-		Output out = new Output(outputStream);
+		encoder.statistics = statistics;
 
-		out.writeInt(QOI_MAGIC);
-		out.writeInt(image.getWidth());
-		out.writeInt(image.getHeight());
-		out.write(image.getChannels());
-		out.writeColorSpace(image.getColorSpace());
+		encode(getHeader(image), createReader(image), encoder, null);
+	}
 
-		// Duplicating encoder for two specific cases improves performance almost by 20% for RGBA images
-		if (channels == 3) {
-			encode3(out, pixelData);
-		} else {
-			encode4(out, pixelData);
+	/**
+	 * Encodes raw pixel data into QOI image with a bounded per-channel error, which then is written into the provided output stream.
+	 * <p>R, G and B of each pixel may differ from the source by up to <code>maxError</code>, alpha is kept exact.
+	 * Pixels are replaced by close ones when this allows to store them in shorter chunks: runs, index references,
+	 * <code>QOI_OP_DIFF</code> and <code>QOI_OP_LUMA</code> instead of <code>QOI_OP_RGB</code>. This mostly helps photos
+	 * and other noisy images. The output is a standard QOI image that any decoder can read.</p>
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param image QOI image.
+	 * @param outputStream Output stream.
+	 * @param maxError Maximum difference between source and decoded channel value, from 0 to 255. 0 means lossless encoding.
+	 * @throws IllegalArgumentException If max error is invalid.
+	 * @throws IOException On any IO error.
+	 */
+	public static void encodeNearLossless(@NonNull QOIImage image, @NonNull OutputStream outputStream, int maxError) throws IOException {
+		checkMaxError(maxError);
+
+		ChunkEncoder encoder = new ChunkEncoder(outputStream);
+
+		encoder.maxError = maxError;
+
+		encode(getHeader(image), createReader(image), encoder, null);
+	}
+
+	/**
+	 * Encodes raw pixel data into QOI image, which then is written directly into the provided array.
+	 * Use {@link #maxEncodedSize(int, int, int)} to allocate an array that is large enough for any image.
+	 * @param image QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position in the destination array to start writing at.
+	 * @return Count of bytes written.
+	 * @throws IndexOutOfBoundsException If offset is invalid.
+	 * @throws BufferOverflowException If encoded image does not fit into the array.
+	 *                                 Contents of the array after the offset are undefined in this case.
+	 */
+	public static int encode(@NonNull QOIImage image, byte @NonNull [] destination, int offset) {
+		return encode(getHeader(image), createReader(image), destination, offset, new ChunkEncoder(), null);
+	}
+
+	/**
+	 * Encodes raw pixel data into QOI image, which then is written into the provided buffer.
+	 * Image is written starting at buffer's position. On success, position is advanced past the image.
+	 * Use {@link #maxEncodedSize(int, int, int)} to allocate a buffer that is large enough for any image.
+	 * <p>Heap buffers are written directly. Direct buffers are written using bulk puts.</p>
+	 * @param image QOI image.
+	 * @param destination Destination buffer.
+	 * @return Count of bytes written.
+	 * @throws BufferOverflowException If encoded image does not fit into the remaining space of the buffer.
+	 *                                 Buffer position is not changed in this case, but contents after it are undefined.
+	 * @throws java.nio.ReadOnlyBufferException If the buffer is read-only.
+	 */
+	public static int encode(@NonNull QOIImage image, @NonNull ByteBuffer destination) {
+		return encode(getHeader(image), createReader(image), destination, new ChunkEncoder(), null);
+	}
+
+	/**
+	 * Encodes raw pixel data into QOI image using multiple threads of the common {@link ForkJoinPool},
+	 * and writes it into the provided output stream.
+	 * @param image QOI image.
+	 * @param outputStream Output stream.
+	 * @throws IOException On any IO error.
+	 * @see #encodeParallel(QOIImage, OutputStream, Executor)
+	 */
+	public static void encodeParallel(@NonNull QOIImage image, @NonNull OutputStream outputStream) throws IOException {
+		encodeParallel(image, outputStream, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Encodes raw pixel data into QOI image using multiple threads of the provided executor,
+	 * and writes it into the provided output stream.
+	 * <p>Pixels are split into segments that are encoded concurrently. Encoded segments are written into the stream
+	 * in order, as soon as they are ready. The output is a standard QOI image that any decoder can read, but it may be
+	 * slightly larger than the output of {@link #encode(QOIImage, OutputStream)}, because encoder's index is not shared
+	 * between segments. Small images are encoded in the calling thread.</p>
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param image QOI image.
+	 * @param outputStream Output stream.
+	 * @param executor Executor to run encoding tasks in.
+	 * @throws IOException On any IO error.
+	 */
+	public static void encodeParallel(@NonNull QOIImage image, @NonNull OutputStream outputStream, @NonNull Executor executor) throws IOException {
+		QOIHeader header = getHeader(image);
+		PixelReader reader = createReader(image);
+		ChunkEncoder encoder = new ChunkEncoder(outputStream);
+
+		int pixelCount = header.getWidth() * header.getHeight();
+
+		// A few segments per core allow to balance load between segments of different complexity
+		int segmentSize = Math.max(MIN_SEGMENT_SIZE, (pixelCount - 1) / (Runtime.getRuntime().availableProcessors() * 4) + 1);
+
+		if (segmentSize >= pixelCount) {
+			encode(header, reader, encoder, null);
+
+			return;
 		}
 
-		for (byte b : QOI_PADDING) {
-			out.write(b);
+		// A single event covers all segments, same as for sequential encoding
+		Object event = CodecEvents.beginEncode();
+
+		List<CompletableFuture<MemoryOutputStream>> segments = new ArrayList<>();
+
+		for (int start = 0; start < pixelCount; start += segmentSize) {
+			int segmentStart = start;
+			int count = Math.min(segmentSize, pixelCount - start);
+
+			segments.add(CompletableFuture.supplyAsync(() -> encodeSegment(reader, segmentStart, count), executor));
 		}
 
-		out.flush();
-	}
+		try {
+			encoder.writeHeader(header.getWidth(), header.getHeight(), header.getChannels(), header.getColorSpace());
+
+			for (CompletableFuture<MemoryOutputStream> future : segments) {
+				MemoryOutputStream segment = join(future);
 
-	// Encode 3-channel RGB buffer
-	private static void encode3(@NonNull Output out, byte @NonNull [] pixelData) throws IOException {
-		byte[] index = createHashTableRGBA();
-
-		int run = 0;
-
-		byte prevR = 0;
-		byte prevG = 0;
-		byte prevB = 0;
-
-		byte pixelR;
-		byte pixelG;
-		byte pixelB;
-
-		for (int pixelPos = 0; pixelPos < pixelData.length; pixelPos += 3) {
-			pixelR = pixelData[pixelPos];
-			pixelG = pixelData[pixelPos + 1];
-			pixelB = pixelData[pixelPos + 2];
-
-			if (equals(prevR, prevG, prevB, pixelR, pixelG, pixelB)) {
-				run++;
-
-				if (run == 62) {
-					out.write(QOI_OP_RUN | (run - 1));
-
-					run = 0;
-				}
-			} else {
-				if (run > 0) {
-					out.write(QOI_OP_RUN | (run - 1));
-
-					run = 0;
-				}
-
-				int indexPos = getHashTableIndexRGB(pixelR, pixelG, pixelB);
-
-				if (equals(pixelR, pixelG, pixelB, (byte) 0xFF, index[indexPos], index[indexPos + 1], index[indexPos + 2], index[indexPos + 3])) {
-					out.write(QOI_OP_INDEX | (indexPos / 4));
-				} else {
-					index[indexPos] = pixelR;
-					index[indexPos + 1] = pixelG;
-					index[indexPos + 2] = pixelB;
-					index[indexPos + 3] = (byte) 0xFF;
-
-					byte dr = (byte) (pixelR - prevR);
-					byte dg = (byte) (pixelG - prevG);
-					byte db = (byte) (pixelB - prevB);
-
-					if (smallestDiff(dr) && smallestDiff(dg) && smallestDiff(db)) {
-						out.write(QOI_OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
-					} else {
-						int dgr = dr - dg;
-						int dgb = db - dg;
-
-						if (smallerDiff(dgr) && smallDiff(dg) && smallerDiff(dgb)) {
-							out.write(QOI_OP_LUMA | (dg + 32));
-							out.write((dgr + 8) << 4 | (dgb + 8));
-						} else {
-							out.write(QOI_OP_RGB);
-							out.write(pixelR, pixelG, pixelB);
-						}
-					}
-				}
-
-				prevR = pixelR;
-				prevG = pixelG;
-				prevB = pixelB;
+				encoder.writeChunks(segment.array(), 0, segment.size());
 			}
-		}
 
-		if (run > 0) {
-			out.write(QOI_OP_RUN | (run - 1));
+			encoder.finish();
+
+			CodecEvents.endEncode(event, header, image.getPixelData().length, encoder.size());
+		} finally {
+			// Does nothing on success, otherwise skips segments that did not start yet
+			for (CompletableFuture<MemoryOutputStream> future : segments) {
+				future.cancel(false);
+			}
 		}
 	}
 
-	// Encode 4-channel RGBA buffer
-	private static void encode4(@NonNull Output out, byte @NonNull [] pixelData) throws IOException {
-		byte[] index = createHashTableRGBA();
-
-		int run = 0;
-
-		byte prevR = 0;
-		byte prevG = 0;
-		byte prevB = 0;
-		byte prevA = (byte) 0xFF;
-
-		byte pixelR;
-		byte pixelG;
-		byte pixelB;
-		byte pixelA;
-
-		for (int pixelPos = 0; pixelPos < pixelData.length; pixelPos += 4) {
-			pixelR = pixelData[pixelPos];
-			pixelG = pixelData[pixelPos + 1];
-			pixelB = pixelData[pixelPos + 2];
-			pixelA = pixelData[pixelPos + 3];
-
-			if (equals(prevR, prevG, prevB, prevA, pixelR, pixelG, pixelB, pixelA)) {
-				run++;
-
-				if (run == 62) {
-					out.write(QOI_OP_RUN | (run - 1));
-
-					run = 0;
-				}
-			} else {
-				if (run > 0) {
-					out.write(QOI_OP_RUN | (run - 1));
-
-					run = 0;
-				}
-
-				int indexPos = getHashTableIndexRGBA(pixelR, pixelG, pixelB, pixelA);
-
-				if (equals(pixelR, pixelG, pixelB, pixelA, index[indexPos], index[indexPos + 1], index[indexPos + 2], index[indexPos + 3])) {
-					out.write(QOI_OP_INDEX | (indexPos / 4));
-				} else {
-					index[indexPos] = pixelR;
-					index[indexPos + 1] = pixelG;
-					index[indexPos + 2] = pixelB;
-					index[indexPos + 3] = pixelA;
-
-					if (prevA == pixelA) {
-						byte dr = (byte) (pixelR - prevR);
-						byte dg = (byte) (pixelG - prevG);
-						byte db = (byte) (pixelB - prevB);
-
-						if (smallestDiff(dr) && smallestDiff(dg) && smallestDiff(db)) {
-							out.write(QOI_OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
-						} else {
-							int dgr = dr - dg;
-							int dgb = db - dg;
-
-							if (smallerDiff(dgr) && smallDiff(dg) && smallerDiff(dgb)) {
-								out.write(QOI_OP_LUMA | (dg + 32));
-								out.write((dgr + 8) << 4 | (dgb + 8));
-							} else {
-								out.write(QOI_OP_RGB);
-								out.write(pixelR, pixelG, pixelB);
-							}
-						}
-					} else {
-						out.write(QOI_OP_RGBA);
-						out.write(pixelR, pixelG, pixelB, pixelA);
-					}
-				}
-
-				prevR = pixelR;
-				prevG = pixelG;
-				prevB = pixelB;
-				prevA = pixelA;
-			}
+	/**
+	 * Encodes raw pixel data into QOI image, which then is written into the provided output stream,
+	 * and records decoder state every <code>rowInterval</code> rows.
+	 * <p>The returned index is not written anywhere. To allow parallel and random-access decoding,
+	 * write it into the same stream right after the image using {@link QOICheckpointIndex#write(OutputStream)},
+	 * or into a sidecar file. The image itself is a standard QOI image, which is at most one byte per checkpoint
+	 * larger than the output of {@link #encode(QOIImage, OutputStream)}.</p>
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param image QOI image.
+	 * @param outputStream Output stream.
+	 * @param rowInterval Count of rows between checkpoints, must be positive.
+	 * @return Checkpoint index of the image.
+	 * @throws IllegalArgumentException If row interval is invalid.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOICheckpointIndex encodeWithCheckpoints(@NonNull QOIImage image, @NonNull OutputStream outputStream, int rowInterval) throws IOException {
+		if (rowInterval < 1) {
+			throw new IllegalArgumentException("Row interval must be positive");
 		}
 
-		if (run > 0) {
-			out.write(QOI_OP_RUN | (run - 1));
+		Object event = CodecEvents.beginEncode();
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		PixelReader reader = createReader(image);
+		ChunkEncoder encoder = new ChunkEncoder(outputStream);
+		QOICheckpointIndex index = new QOICheckpointIndex(rowInterval, width, height);
+
+		encoder.writeHeader(width, height, image.getChannels(), image.getColorSpace());
+
+		int[] span = new int[Math.min(width, SPAN_SIZE)];
+
+		for (int row = 0; row < height; row++) {
+			if (row > 0 && row % rowInterval == 0) {
+				// Runs do not cross checkpoints, so the decoder can start right at a chunk
+				encoder.writeRun();
+
+				index.record(row / rowInterval - 1, encoder);
+			}
+
+			encodePixels(encoder, reader, span, width, row * width * reader.pixelSize);
 		}
+
+		encoder.finish();
+
+		CodecEvents.endEncode(event, getHeader(image), image.getPixelData().length, encoder.size());
+
+		return index;
 	}
 
-	private static boolean smallDiff(int i) {
-		return i > -33 && i < 32;
+	/**
+	 * Encodes packed pixels into QOI image, which then is written into the provided output stream.
+	 * <p>Encoding {@link QOIPixelPacking#RGBA} ints of a 4-channel image requires no conversion and is the fastest.</p>
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param pixels Pixels packed into ints in the specified layout, row by row. The array has (width * height) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4. When it is 3, alpha of the pixels is ignored.
+	 * @param colorSpace Color space.
+	 * @param packing Layout of the packed pixels.
+	 * @param outputStream Output stream.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IOException On any IO error.
+	 */
+	public static void encode(int @NonNull [] pixels, int width, int height, int channels, @NonNull QOIColorSpace colorSpace,
+							  @NonNull QOIPixelPacking packing, @NonNull OutputStream outputStream) throws IOException {
+		QOIHeader header = getHeader(pixels, width, height, channels, colorSpace);
+
+		encode(header, PixelReader.create(pixels, channels, packing), new ChunkEncoder(outputStream), null);
 	}
 
-	private static boolean smallerDiff(int i) {
-		return i > -9 && i < 8;
+	/**
+	 * Encodes packed pixels into QOI image, which then is written directly into the provided array.
+	 * Use {@link #maxEncodedSize(int, int, int)} to allocate an array that is large enough for any image.
+	 * @param pixels Pixels packed into ints in the specified layout, row by row. The array has (width * height) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4. When it is 3, alpha of the pixels is ignored.
+	 * @param colorSpace Color space.
+	 * @param packing Layout of the packed pixels.
+	 * @param destination Destination array.
+	 * @param offset Position in the destination array to start writing at.
+	 * @return Count of bytes written.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IndexOutOfBoundsException If offset is invalid.
+	 * @throws BufferOverflowException If encoded image does not fit into the array.
+	 *                                 Contents of the array after the offset are undefined in this case.
+	 */
+	public static int encode(int @NonNull [] pixels, int width, int height, int channels, @NonNull QOIColorSpace colorSpace,
+							 @NonNull QOIPixelPacking packing, byte @NonNull [] destination, int offset) {
+		QOIHeader header = getHeader(pixels, width, height, channels, colorSpace);
+
+		return encode(header, PixelReader.create(pixels, channels, packing), destination, offset, new ChunkEncoder(), null);
 	}
 
-	private static boolean smallestDiff(int i) {
-		return i > -3 && i < 2;
+	/**
+	 * Encodes packed pixels into QOI image, which then is written into the provided buffer.
+	 * Image is written starting at buffer's position. On success, position is advanced past the image.
+	 * Use {@link #maxEncodedSize(int, int, int)} to allocate a buffer that is large enough for any image.
+	 * @param pixels Pixels packed into ints in the specified layout, row by row. The array has (width * height) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4. When it is 3, alpha of the pixels is ignored.
+	 * @param colorSpace Color space.
+	 * @param packing Layout of the packed pixels.
+	 * @param destination Destination buffer.
+	 * @return Count of bytes written.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws BufferOverflowException If encoded image does not fit into the remaining space of the buffer.
+	 *                                 Buffer position is not changed in this case, but contents after it are undefined.
+	 * @throws java.nio.ReadOnlyBufferException If the buffer is read-only.
+	 */
+	public static int encode(int @NonNull [] pixels, int width, int height, int channels, @NonNull QOIColorSpace colorSpace,
+							 @NonNull QOIPixelPacking packing, @NonNull ByteBuffer destination) {
+		QOIHeader header = getHeader(pixels, width, height, channels, colorSpace);
+
+		return encode(header, PixelReader.create(pixels, channels, packing), destination, new ChunkEncoder(), null);
 	}
 
-	private static boolean equals(byte r1, byte g1, byte b1, byte a1, byte r2, byte g2, byte b2, byte a2) {
-		return r1 == r2 &&
-				g1 == g2 &&
-				b1 == b2 &&
-				a1 == a2;
+	/**
+	 * Encodes pixel data in the specified pixel format into QOI image, which then is written into the provided output stream.
+	 * Channels are reordered while loading pixels, without a separate pass. The image is stored with the channel count of the format.
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param pixelData Pixel data in the channel order of the format, row by row. The array has (width * height * format.getChannels()) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param format Format of the pixels.
+	 * @param colorSpace Color space.
+	 * @param outputStream Output stream.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IOException On any IO error.
+	 */
+	public static void encode(byte @NonNull [] pixelData, int width, int height, @NonNull QOIPixelFormat format,
+							  @NonNull QOIColorSpace colorSpace, @NonNull OutputStream outputStream) throws IOException {
+		QOIHeader header = getHeader(pixelData, width, height, format, colorSpace);
+
+		encode(header, PixelReader.create(pixelData, format), new ChunkEncoder(outputStream), null);
 	}
 
-	private static boolean equals(byte r1, byte g1, byte b1, byte r2, byte g2, byte b2) {
-		return r1 == r2 &&
-				g1 == g2 &&
-				b1 == b2;
+	/**
+	 * Encodes pixel data in the specified pixel format into QOI image, which then is written directly into the provided array.
+	 * Use {@link #maxEncodedSize(int, int, int)} to allocate an array that is large enough for any image.
+	 * @param pixelData Pixel data in the channel order of the format, row by row. The array has (width * height * format.getChannels()) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param format Format of the pixels.
+	 * @param colorSpace Color space.
+	 * @param destination Destination array.
+	 * @param offset Position in the destination array to start writing at.
+	 * @return Count of bytes written.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IndexOutOfBoundsException If offset is invalid.
+	 * @throws BufferOverflowException If encoded image does not fit into the array.
+	 *                                 Contents of the array after the offset are undefined in this case.
+	 */
+	public static int encode(byte @NonNull [] pixelData, int width, int height, @NonNull QOIPixelFormat format,
+							 @NonNull QOIColorSpace colorSpace, byte @NonNull [] destination, int offset) {
+		QOIHeader header = getHeader(pixelData, width, height, format, colorSpace);
+
+		return encode(header, PixelReader.create(pixelData, format), destination, offset, new ChunkEncoder(), null);
 	}
 
-	private static final class Output {
+	/**
+	 * Encodes pixel data in the specified pixel format into QOI image, which then is written into the provided buffer.
+	 * Image is written starting at buffer's position. On success, position is advanced past the image.
+	 * Use {@link #maxEncodedSize(int, int, int)} to allocate a buffer that is large enough for any image.
+	 * @param pixelData Pixel data in the channel order of the format, row by row. The array has (width * height * format.getChannels()) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param format Format of the pixels.
+	 * @param colorSpace Color space.
+	 * @param destination Destination buffer.
+	 * @return Count of bytes written.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws BufferOverflowException If encoded image does not fit into the remaining space of the buffer.
+	 *                                 Buffer position is not changed in this case, but contents after it are undefined.
+	 * @throws java.nio.ReadOnlyBufferException If the buffer is read-only.
+	 */
+	public static int encode(byte @NonNull [] pixelData, int width, int height, @NonNull QOIPixelFormat format,
+							 @NonNull QOIColorSpace colorSpace, @NonNull ByteBuffer destination) {
+		QOIHeader header = getHeader(pixelData, width, height, format, colorSpace);
 
-		private static final int BUFFER_SIZE = 8192;
+		return encode(header, PixelReader.create(pixelData, format), destination, new ChunkEncoder(), null);
+	}
 
-		private final OutputStream out;
-		private final byte[] buffer = new byte[BUFFER_SIZE];
-		private int written;
+	/**
+	 * Encodes pixel data in the specified pixel format and color representation into QOI image, which then is written into the output stream.
+	 * Pixels are converted from the representation of the transform into straight alpha values of the color space while loading them,
+	 * without a separate pass. Linear values are converted to sRGB only when the color space is {@link QOIColorSpace#SRGB}.
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param pixelData Pixel data in the channel order of the format, row by row. The array has (width * height * format.getChannels()) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param format Format of the pixels.
+	 * @param colorSpace Color space of the encoded image.
+	 * @param transform Representation of color values of the pixels.
+	 * @param outputStream Output stream.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IOException On any IO error.
+	 */
+	public static void encode(byte @NonNull [] pixelData, int width, int height, @NonNull QOIPixelFormat format,
+							  @NonNull QOIColorSpace colorSpace, @NonNull QOIColorTransform transform, @NonNull OutputStream outputStream) throws IOException {
+		QOIHeader header = getHeader(pixelData, width, height, format, colorSpace);
+
+		encode(header, PixelReader.create(PixelReader.create(pixelData, format), transform, colorSpace), new ChunkEncoder(outputStream), null);
+	}
+
+	/**
+	 * Encodes pixels stored as floats into QOI image, which then is written into the output stream.
+	 * Each pixel is 4 floats R, G, B, A in range [0, 1], values out of range are clamped.
+	 * Pixels are converted from the representation of the transform into straight alpha 8-bit values of the color space
+	 * while loading them. Linear values are converted to sRGB only when the color space is {@link QOIColorSpace#SRGB}.
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param pixels Pixels, row by row. The array has (width * height * 4) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count of the encoded image, must be 3 or 4. Alpha is ignored when it is 3.
+	 * @param colorSpace Color space of the encoded image.
+	 * @param transform Representation of color values of the pixels.
+	 * @param outputStream Output stream.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IOException On any IO error.
+	 */
+	public static void encode(float @NonNull [] pixels, int width, int height, int channels, @NonNull QOIColorSpace colorSpace,
+							  @NonNull QOIColorTransform transform, @NonNull OutputStream outputStream) throws IOException {
+		checkDimensions(width, height, channels);
 
-		private Output(@NonNull OutputStream out) {
-			this.out = out;
+		if (pixels.length != (long) width * height * 4) {
+			throw new IllegalArgumentException("Unexpected pixel array length, must match width * height * 4");
 		}
 
-		public void write(byte value) throws IOException {
-			if (this.written == BUFFER_SIZE) {
-				doFlush();
-			}
+		QOIHeader header = new QOIHeader(width, height, channels, colorSpace);
+
+		encode(header, PixelReader.create(pixels, channels, transform, colorSpace), new ChunkEncoder(outputStream), null);
+	}
+
+	/**
+	 * Encodes a large image, whose pixel data may exceed 2 GB, into QOI image, which then is written into the output stream.
+	 * <p>This method does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+	 * @param image Large image.
+	 * @param outputStream Output stream.
+	 * @throws IOException On any IO error.
+	 */
+	public static void encode(@NonNull QOILargeImage image, @NonNull OutputStream outputStream) throws IOException {
+		Object event = CodecEvents.beginEncode();
+
+		QOIHeader header = new QOIHeader(image.getWidth(), image.getHeight(), image.getChannels(), image.getColorSpace());
+		QOIPixelFormat format = QOIPixelFormat.of(image.getChannels());
+
+		ChunkEncoder encoder = new ChunkEncoder(outputStream);
+
+		encoder.writeHeader(header.getWidth(), header.getHeight(), header.getChannels(), header.getColorSpace());
 
-			this.buffer[this.written++] = value;
+		int[] span = new int[(int) Math.min(image.getPixelCount(), SPAN_SIZE)];
+
+		// Segments hold whole pixels, so each one is encoded as a single row
+		for (int i = 0; i < image.getSegmentCount(); i++) {
+			ByteBuffer segment = image.segment(i);
+
+			encodePixels(encoder, PixelReader.create(segment, format), span, segment.capacity() / format.getChannels(), 0);
 		}
 
-		public void write(int value) throws IOException {
-			write((byte) value);
+		encoder.finish();
+
+		CodecEvents.endEncode(event, header, image.getPixelDataSize(), encoder.size());
+	}
+
+	/**
+	 * Calculates the maximum possible size of an encoded QOI image with specified dimensions.
+	 * A buffer of this size can fit any image with these dimensions.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4.
+	 * @return Maximum encoded size in bytes.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws ArithmeticException If the size does not fit into an int.
+	 */
+	public static int maxEncodedSize(int width, int height, int channels) {
+		checkDimensions(width, height, channels);
+
+		// Worst case is a QOI_OP_RGB or QOI_OP_RGBA op for every pixel
+		int chunksSize = Math.multiplyExact(Math.multiplyExact(width, height), channels + 1);
+
+		return Math.addExact(chunksSize, QOI_HEADER_SIZE + QOI_PADDING.length);
+	}
+
+	// Encodes pixels that follow the pixel at (start - 1), without the header and the padding
+	private static MemoryOutputStream encodeSegment(@NonNull PixelReader reader, int start, int count) {
+		// Most images compress at least by half
+		MemoryOutputStream segment = new MemoryOutputStream(count * 2);
+		ChunkEncoder encoder = new ChunkEncoder(segment);
+
+		int[] span = new int[Math.min(count, SPAN_SIZE)];
+
+		// First segment has the usual initial state, which the decoder knows
+		if (start > 0) {
+			reader.read(span, 1, (start - 1) * reader.pixelSize);
+
+			encoder.startSegment(span[0]);
 		}
 
-		public void write(byte a, byte b, byte c) throws IOException {
-			if (this.written > BUFFER_SIZE - 3) {
-				doFlush();
-			}
+		try {
+			encodePixels(encoder, reader, span, count, start * reader.pixelSize);
 
-			this.buffer[this.written] = a;
-			this.buffer[this.written + 1] = b;
-			this.buffer[this.written + 2] = c;
-			this.written += 3;
+			encoder.finish(false);
+		} catch (IOException e) {
+			// Writing into memory does no IO
+			throw new IllegalStateException(e);
 		}
 
-		public void write(byte a, byte b, byte c, byte d) throws IOException {
-			if (this.written > BUFFER_SIZE - 4) {
-				doFlush();
-			}
+		return segment;
+	}
+
+	static QOIHeader getHeader(@NonNull QOIImage image) {
+		return new QOIHeader(image.getWidth(), image.getHeight(), image.getChannels(), image.getColorSpace());
+	}
+
+	static PixelReader createReader(@NonNull QOIImage image) {
+		return PixelReader.create(image.getPixelData(), image.getChannels());
+	}
 
-			this.buffer[this.written] = a;
-			this.buffer[this.written + 1] = b;
-			this.buffer[this.written + 2] = c;
-			this.buffer[this.written + 3] = d;
-			this.written += 4;
+	static QOIHeader getHeader(int @NonNull [] pixels, int width, int height, int channels, @NonNull QOIColorSpace colorSpace) {
+		checkDimensions(width, height, channels);
+
+		if (pixels.length != (long) width * height) {
+			throw new IllegalArgumentException("Unexpected pixel array length, must match width * height");
 		}
 
-		public void writeColorSpace(@NonNull QOIColorSpace colorSpace) throws IOException {
-			switch (colorSpace) {
-				case SRGB:
-					write(QOI_SRGB);
-					break;
-				case LINEAR:
-					write(QOI_LINEAR);
-					break;
-				default:
-					throw new IllegalStateException("Unsupported color space");
-			}
+		return new QOIHeader(width, height, channels, colorSpace);
+	}
+
+	private static QOIHeader getHeader(byte @NonNull [] pixelData, int width, int height, @NonNull QOIPixelFormat format, @NonNull QOIColorSpace colorSpace) {
+		checkDimensions(width, height, format.getChannels());
+
+		if (pixelData.length != (long) width * height * format.getChannels()) {
+			throw new IllegalArgumentException("Unexpected pixel data length, must match width * height * channels");
+		}
+
+		return new QOIHeader(width, height, format.getChannels(), colorSpace);
+	}
+
+	private static void checkDimensions(int width, int height, int channels) {
+		if (width < 1) {
+			throw new IllegalArgumentException("Width must be positive");
 		}
 
-		public void writeInt(int value) throws IOException {
-			write(value >> 24);
-			write(value >> 16);
-			write(value >> 8);
-			write(value);
+		if (height < 1) {
+			throw new IllegalArgumentException("Height must be positive");
+		}
+
+		if (channels != 3 && channels != 4) {
+			throw new IllegalArgumentException("3 or 4 channels are supported");
+		}
+	}
+
+	/**
+	 * Encodes the image directly into the array using the encoder, which is reset to the array.
+	 * @param span Span to load pixels into, or <code>null</code> to allocate one.
+	 */
+	static int encode(@NonNull QOIHeader header, @NonNull PixelReader reader, byte @NonNull [] destination, int offset, @NonNull ChunkEncoder encoder, int[] span) {
+		if (offset < 0 || offset > destination.length) {
+			throw new IndexOutOfBoundsException("Invalid offset");
 		}
 
-		public void flush() throws IOException {
-			if (this.written == 0) {
-				return;
+		encoder.reset(destination, offset, destination.length - offset);
+
+		encodeInMemory(header, reader, encoder, span);
+
+		return encoder.arrayPosition() - offset;
+	}
+
+	/**
+	 * Encodes the image into the buffer using the encoder, which is reset to the buffer.
+	 * @param span Span to load pixels into, or <code>null</code> to allocate one.
+	 */
+	static int encode(@NonNull QOIHeader header, @NonNull PixelReader reader, @NonNull ByteBuffer destination, @NonNull ChunkEncoder encoder, int[] span) {
+		int position = destination.position();
+
+		if (destination.hasArray()) {
+			int offset = destination.arrayOffset() + position;
+
+			encoder.reset(destination.array(), offset, destination.remaining());
+
+			encodeInMemory(header, reader, encoder, span);
+
+			destination.position(position + encoder.arrayPosition() - offset);
+		} else {
+			if (destination.isReadOnly()) {
+				throw new ReadOnlyBufferException();
 			}
 
-			doFlush();
+			// Slice keeps caller's buffer position intact if the image does not fit
+			ByteBuffer slice = destination.slice();
+
+			encoder.reset(slice);
+
+			encodeInMemory(header, reader, encoder, span);
+
+			destination.position(position + slice.position());
+		}
+
+		return destination.position() - position;
+	}
+
+	static void checkMaxError(int maxError) {
+		if (maxError < 0 || maxError > 255) {
+			throw new IllegalArgumentException("Invalid max error, must be from 0 to 255");
+		}
+	}
+
+	// Writing into memory does no IO, so IO exceptions are not possible
+	private static void encodeInMemory(@NonNull QOIHeader header, @NonNull PixelReader reader, @NonNull ChunkEncoder encoder, int[] span) {
+		try {
+			encode(header, reader, encoder, span);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
 		}
+	}
+
+	/**
+	 * Encodes the image using the encoder, which must be in the initial state.
+	 * @param span Span to load pixels into, or <code>null</code> to allocate one.
+	 */
+	static void encode(@NonNull QOIHeader header, @NonNull PixelReader reader, @NonNull ChunkEncoder encoder, int[] span) throws IOException {
+		Object event = CodecEvents.beginEncode();
+
+		encoder.writeHeader(header.getWidth(), header.getHeight(), header.getChannels(), header.getColorSpace());
 
-		private void doFlush() throws IOException {
-			this.out.write(this.buffer, 0, this.written);
+		int pixelCount = header.getWidth() * header.getHeight();
 
-			this.written = 0;
+		// Pixels are loaded into a small reusable span of packed pixels, which then is encoded
+		if (span == null) {
+			span = new int[Math.min(pixelCount, SPAN_SIZE)];
 		}
 
+		encodePixels(encoder, reader, span, pixelCount, 0);
+
+		encoder.finish();
+
+		CodecEvents.endEncode(event, header, (long) pixelCount * reader.bytesPerPixel(), encoder.size());
+	}
+
+	/**
+	 * Loads next <code>count</code> pixels span by span from the source starting at <code>position</code>, and encodes them.
+	 */
+	static void encodePixels(@NonNull ChunkEncoder encoder, @NonNull PixelReader reader, int @NonNull [] span, int count, int position) throws IOException {
+		for (int i = 0; i < count; ) {
+			int spanCount = Math.min(span.length, count - i);
+
+			reader.encode(encoder, span, spanCount, position);
+
+			i += spanCount;
+			position += spanCount * reader.pixelSize;
+		}
 	}
 
 }
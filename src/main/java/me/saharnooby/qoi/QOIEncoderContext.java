@@ -0,0 +1,199 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Encodes QOI images like {@link QOIEncoder}, but reuses the output buffer, the index table and other working memory
+ * between images. Encoding many small images with a single context into caller-provided arrays or buffers
+ * allocates almost nothing.
+ * <p>A context is not thread-safe. Create a context per thread, or use {@link #forCurrentThread()}.</p>
+ */
+public final class QOIEncoderContext {
+
+	private static final ThreadLocal<QOIEncoderContext> THREAD_LOCAL = ThreadLocal.withInitial(QOIEncoderContext::new);
+
+	private final ChunkEncoder encoder = new ChunkEncoder();
+
+	private final int[] span = new int[SPAN_SIZE];
+
+	/**
+	 * Returns a context bound to the current thread, which is created on first use.
+	 * It must not be used from other threads, or by code that is called while it encodes, for example by the output stream.
+	 */
+	public static QOIEncoderContext forCurrentThread() {
+		return THREAD_LOCAL.get();
+	}
+
+	/**
+	 * Returns statistics that chunks written by this context are counted into, or <code>null</code> if chunks are not counted.
+	 */
+	public QOIStatistics getStatistics() {
+		return this.encoder.statistics;
+	}
+
+	/**
+	 * Sets statistics to count chunks of all images encoded by this context into.
+	 * @param statistics Statistics, or <code>null</code> to stop counting.
+	 */
+	public void setStatistics(QOIStatistics statistics) {
+		this.encoder.statistics = statistics;
+	}
+
+	/**
+	 * Returns maximum per-channel error of images encoded by this context, 0 means lossless encoding.
+	 */
+	public int getMaxError() {
+		return this.encoder.maxError;
+	}
+
+	/**
+	 * Sets maximum per-channel error of all images encoded by this context.
+	 * @param maxError Maximum difference between source and decoded channel value, from 0 to 255. 0 means lossless encoding.
+	 * @throws IllegalArgumentException If max error is invalid.
+	 * @see QOIEncoder#encodeNearLossless(QOIImage, OutputStream, int)
+	 */
+	public void setMaxError(int maxError) {
+		QOIEncoder.checkMaxError(maxError);
+
+		this.encoder.maxError = maxError;
+	}
+
+	/**
+	 * Encodes raw pixel data into QOI image, which then is written into the provided output stream.
+	 * @param image QOI image.
+	 * @param outputStream Output stream.
+	 * @throws IOException On any IO error.
+	 * @see QOIEncoder#encode(QOIImage, OutputStream)
+	 */
+	public void encode(@NonNull QOIImage image, @NonNull OutputStream outputStream) throws IOException {
+		encode(QOIEncoder.getHeader(image), QOIEncoder.createReader(image), outputStream);
+	}
+
+	/**
+	 * Encodes raw pixel data into QOI image, which then is written directly into the provided array.
+	 * @param image QOI image.
+	 * @param destination Destination array.
+	 * @param offset Position in the destination array to start writing at.
+	 * @return Count of bytes written.
+	 * @throws IndexOutOfBoundsException If offset is invalid.
+	 * @throws BufferOverflowException If encoded image does not fit into the array.
+	 * @see QOIEncoder#encode(QOIImage, byte[], int)
+	 */
+	public int encode(@NonNull QOIImage image, byte @NonNull [] destination, int offset) {
+		try {
+			return QOIEncoder.encode(QOIEncoder.getHeader(image), QOIEncoder.createReader(image), destination, offset, this.encoder, this.span);
+		} finally {
+			this.encoder.clear();
+		}
+	}
+
+	/**
+	 * Encodes raw pixel data into QOI image, which then is written into the provided buffer.
+	 * Image is written starting at buffer's position. On success, position is advanced past the image.
+	 * @param image QOI image.
+	 * @param destination Destination buffer.
+	 * @return Count of bytes written.
+	 * @throws BufferOverflowException If encoded image does not fit into the remaining space of the buffer.
+	 * @throws java.nio.ReadOnlyBufferException If the buffer is read-only.
+	 * @see QOIEncoder#encode(QOIImage, ByteBuffer)
+	 */
+	public int encode(@NonNull QOIImage image, @NonNull ByteBuffer destination) {
+		try {
+			return QOIEncoder.encode(QOIEncoder.getHeader(image), QOIEncoder.createReader(image), destination, this.encoder, this.span);
+		} finally {
+			this.encoder.clear();
+		}
+	}
+
+	/**
+	 * Encodes packed pixels into QOI image, which then is written into the provided output stream.
+	 * @param pixels Pixels packed into ints in the specified layout, row by row. The array has (width * height) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4. When it is 3, alpha of the pixels is ignored.
+	 * @param colorSpace Color space.
+	 * @param packing Layout of the packed pixels.
+	 * @param outputStream Output stream.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IOException On any IO error.
+	 * @see QOIEncoder#encode(int[], int, int, int, QOIColorSpace, QOIPixelPacking, OutputStream)
+	 */
+	public void encode(int @NonNull [] pixels, int width, int height, int channels, @NonNull QOIColorSpace colorSpace,
+					   @NonNull QOIPixelPacking packing, @NonNull OutputStream outputStream) throws IOException {
+		QOIHeader header = QOIEncoder.getHeader(pixels, width, height, channels, colorSpace);
+
+		encode(header, PixelReader.create(pixels, channels, packing), outputStream);
+	}
+
+	/**
+	 * Encodes packed pixels into QOI image, which then is written directly into the provided array.
+	 * @param pixels Pixels packed into ints in the specified layout, row by row. The array has (width * height) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4. When it is 3, alpha of the pixels is ignored.
+	 * @param colorSpace Color space.
+	 * @param packing Layout of the packed pixels.
+	 * @param destination Destination array.
+	 * @param offset Position in the destination array to start writing at.
+	 * @return Count of bytes written.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IndexOutOfBoundsException If offset is invalid.
+	 * @throws BufferOverflowException If encoded image does not fit into the array.
+	 * @see QOIEncoder#encode(int[], int, int, int, QOIColorSpace, QOIPixelPacking, byte[], int)
+	 */
+	public int encode(int @NonNull [] pixels, int width, int height, int channels, @NonNull QOIColorSpace colorSpace,
+					  @NonNull QOIPixelPacking packing, byte @NonNull [] destination, int offset) {
+		QOIHeader header = QOIEncoder.getHeader(pixels, width, height, channels, colorSpace);
+
+		try {
+			return QOIEncoder.encode(header, PixelReader.create(pixels, channels, packing), destination, offset, this.encoder, this.span);
+		} finally {
+			this.encoder.clear();
+		}
+	}
+
+	/**
+	 * Encodes packed pixels into QOI image, which then is written into the provided buffer.
+	 * Image is written starting at buffer's position. On success, position is advanced past the image.
+	 * @param pixels Pixels packed into ints in the specified layout, row by row. The array has (width * height) elements.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4. When it is 3, alpha of the pixels is ignored.
+	 * @param colorSpace Color space.
+	 * @param packing Layout of the packed pixels.
+	 * @param destination Destination buffer.
+	 * @return Count of bytes written.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws BufferOverflowException If encoded image does not fit into the remaining space of the buffer.
+	 * @throws java.nio.ReadOnlyBufferException If the buffer is read-only.
+	 * @see QOIEncoder#encode(int[], int, int, int, QOIColorSpace, QOIPixelPacking, ByteBuffer)
+	 */
+	public int encode(int @NonNull [] pixels, int width, int height, int channels, @NonNull QOIColorSpace colorSpace,
+					  @NonNull QOIPixelPacking packing, @NonNull ByteBuffer destination) {
+		QOIHeader header = QOIEncoder.getHeader(pixels, width, height, channels, colorSpace);
+
+		try {
+			return QOIEncoder.encode(header, PixelReader.create(pixels, channels, packing), destination, this.encoder, this.span);
+		} finally {
+			this.encoder.clear();
+		}
+	}
+
+	private void encode(@NonNull QOIHeader header, @NonNull PixelReader reader, @NonNull OutputStream outputStream) throws IOException {
+		this.encoder.reset(outputStream);
+
+		try {
+			QOIEncoder.encode(header, reader, this.encoder, this.span);
+		} finally {
+			this.encoder.clear();
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package me.saharnooby.qoi;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * QOI image metadata stored in the header.
+ */
+@Data
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public final class QOIHeader {
+
+	/**
+	 * Image width. Positive value.
+	 */
+	private final int width;
+	/**
+	 * Image height. Positive value.
+	 */
+	private final int height;
+	/**
+	 * Stored channel count. Possible values are 3 (no alpha) and 4 (with alpha).
+	 */
+	private final int channels;
+	/**
+	 * Color space of the image.
+	 */
+	@NonNull
+	private final QOIColorSpace colorSpace;
+
+}
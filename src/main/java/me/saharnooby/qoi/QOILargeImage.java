@@ -0,0 +1,205 @@
+package me.saharnooby.qoi;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A QOI image whose pixel data may exceed 2 GB, which is the limit of {@link QOIImage}, and may be stored off-heap.
+ * Use methods in {@link QOIUtil} to create instances of this class.
+ * <p>Pixel data is split into segments. Each segment is a byte buffer with raw pixel data in the form of [R, G, B, (A,) ...],
+ * every segment except the last one holds exactly {@link #getSegmentPixels()} pixels. Pixels are never split between segments.
+ * Individual pixels are addressed by <code>long</code> indices, which are <code>y * width + x</code>.</p>
+ * <p>Segments of a direct image are direct byte buffers, which are outside of the garbage-collected heap and can be passed
+ * to native code without copying. Images of up to 2^28 pixels have a single segment. Memory of a direct image
+ * should be released explicitly by {@link #close()}.</p>
+ * <p>This class is not thread-safe, closing must not happen concurrently with access to pixels.</p>
+ */
+public final class QOILargeImage implements AutoCloseable {
+
+	/**
+	 * Count of pixels in a segment by default, so that a segment is at most 1 GB.
+	 */
+	static final int DEFAULT_SEGMENT_PIXELS = 1 << 28;
+
+	/**
+	 * Image width. Positive value.
+	 */
+	@Getter
+	private final int width;
+	/**
+	 * Image height. Positive value.
+	 */
+	@Getter
+	private final int height;
+	/**
+	 * Channel count. Supported values are 3 (no alpha) and 4 (with alpha).
+	 */
+	@Getter
+	private final int channels;
+	/**
+	 * Color space of the image.
+	 */
+	@Getter
+	private final QOIColorSpace colorSpace;
+	/**
+	 * Count of pixels in each segment except the last one, which may have less.
+	 */
+	@Getter
+	private final int segmentPixels;
+	/**
+	 * Whether segments are direct byte buffers.
+	 */
+	@Getter
+	private final boolean direct;
+
+	private final ByteBuffer[] segments;
+
+	private boolean closed;
+
+	QOILargeImage(int width, int height, int channels, @NonNull QOIColorSpace colorSpace, int segmentPixels, boolean direct) {
+		this.width = width;
+		this.height = height;
+		this.channels = channels;
+		this.colorSpace = colorSpace;
+		this.segmentPixels = segmentPixels;
+		this.direct = direct;
+
+		long pixelCount = getPixelCount();
+
+		this.segments = new ByteBuffer[Math.toIntExact((pixelCount - 1) / segmentPixels + 1)];
+
+		for (int i = 0; i < this.segments.length; i++) {
+			long pixels = Math.min(segmentPixels, pixelCount - (long) i * segmentPixels);
+
+			try {
+				this.segments[i] = direct ? ByteBuffer.allocateDirect((int) pixels * channels) : ByteBuffer.allocate((int) pixels * channels);
+			} catch (OutOfMemoryError e) {
+				// Segments allocated so far would otherwise be held until garbage collection
+				close();
+
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Returns count of pixels in the image.
+	 */
+	public long getPixelCount() {
+		return (long) this.width * this.height;
+	}
+
+	/**
+	 * Returns size of pixel data in bytes.
+	 */
+	public long getPixelDataSize() {
+		return getPixelCount() * this.channels;
+	}
+
+	/**
+	 * Returns count of segments.
+	 */
+	public int getSegmentCount() {
+		return this.segments.length;
+	}
+
+	/**
+	 * Returns a segment of pixel data. The returned buffer shares content with the image, but has its own position and limit,
+	 * which initially span the whole segment. Buffers of a direct image must not be used after the image is closed.
+	 * @param index Segment index.
+	 * @return Buffer with pixel data of the segment.
+	 * @throws IndexOutOfBoundsException If the index is out of bounds.
+	 * @throws IllegalStateException If the image is closed.
+	 */
+	public ByteBuffer getSegment(int index) {
+		return segment(index).duplicate();
+	}
+
+	/**
+	 * Returns a pixel as a packed 0xRRGGBBAA int. Alpha of 3-channel images is 255.
+	 * @param index Pixel index, <code>y * width + x</code>.
+	 * @throws IndexOutOfBoundsException If the index is out of bounds.
+	 * @throws IllegalStateException If the image is closed.
+	 */
+	public int getPixel(long index) {
+		ByteBuffer segment = segmentOf(index);
+		int position = (int) (index % this.segmentPixels) * this.channels;
+
+		int pixel = (segment.get(position) & 0xFF) << 24 |
+				(segment.get(position + 1) & 0xFF) << 16 |
+				(segment.get(position + 2) & 0xFF) << 8;
+
+		return pixel | (this.channels == 4 ? segment.get(position + 3) & 0xFF : 0xFF);
+	}
+
+	/**
+	 * Sets a pixel from a packed 0xRRGGBBAA int. Alpha is ignored for 3-channel images.
+	 * @param index Pixel index, <code>y * width + x</code>.
+	 * @throws IndexOutOfBoundsException If the index is out of bounds.
+	 * @throws IllegalStateException If the image is closed.
+	 */
+	public void setPixel(long index, int pixel) {
+		ByteBuffer segment = segmentOf(index);
+		int position = (int) (index % this.segmentPixels) * this.channels;
+
+		segment.put(position, (byte) (pixel >> 24));
+		segment.put(position + 1, (byte) (pixel >> 16));
+		segment.put(position + 2, (byte) (pixel >> 8));
+
+		if (this.channels == 4) {
+			segment.put(position + 3, (byte) pixel);
+		}
+	}
+
+	private ByteBuffer segmentOf(long index) {
+		if (index < 0 || index >= getPixelCount()) {
+			throw new IndexOutOfBoundsException("Invalid pixel index " + index);
+		}
+
+		return segment((int) (index / this.segmentPixels));
+	}
+
+	/**
+	 * Returns the segment itself, for use by the codec.
+	 */
+	ByteBuffer segment(int index) {
+		if (this.closed) {
+			throw new IllegalStateException("Image is closed");
+		}
+
+		return this.segments[index];
+	}
+
+	/**
+	 * Returns true if the image is closed.
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Closes the image. Memory of direct segments is released immediately, and heap segments become unreachable.
+	 * Pixels can not be accessed after that. Closing a closed image does nothing.
+	 */
+	@Override
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+
+		this.closed = true;
+
+		for (int i = 0; i < this.segments.length; i++) {
+			ByteBuffer segment = this.segments[i];
+
+			if (segment != null && segment.isDirect()) {
+				DirectBuffers.release(segment);
+			}
+
+			this.segments[i] = null;
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package me.saharnooby.qoi;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+
+/**
+ * A QOI image whose header is read eagerly, and pixel data is decoded on first access.
+ * Use methods in {@link QOIUtil} to create instances of this class.
+ * <p>This class is thread-safe. Pixel data is decoded at most once, the decoded image is then kept by this object.</p>
+ */
+public final class QOILazyImage {
+
+	/**
+	 * Header of the image.
+	 */
+	@Getter
+	private final QOIHeader header;
+
+	private final int channels;
+
+	// Set to null after the image is decoded, so that the source can be garbage collected
+	private ImageSource source;
+
+	private volatile QOIImage image;
+
+	QOILazyImage(@NonNull QOIHeader header, int channels, @NonNull ImageSource source) {
+		this.header = header;
+		this.channels = channels == 0 ? header.getChannels() : channels;
+		this.source = source;
+	}
+
+	/**
+	 * Returns image width. Does not decode pixel data.
+	 */
+	public int getWidth() {
+		return this.header.getWidth();
+	}
+
+	/**
+	 * Returns image height. Does not decode pixel data.
+	 */
+	public int getHeight() {
+		return this.header.getHeight();
+	}
+
+	/**
+	 * Returns channel count of the decoded image. This is the requested channel count,
+	 * or stored channel count if it was not specified. Does not decode pixel data.
+	 */
+	public int getChannels() {
+		return this.channels;
+	}
+
+	/**
+	 * Returns color space of the image. Does not decode pixel data.
+	 */
+	public QOIColorSpace getColorSpace() {
+		return this.header.getColorSpace();
+	}
+
+	/**
+	 * Returns <code>true</code> if pixel data was already decoded.
+	 */
+	public boolean isDecoded() {
+		return this.image != null;
+	}
+
+	/**
+	 * Returns the image, decoding its pixel data on first call.
+	 * If decoding fails, the next call will try to decode the image again.
+	 * @return Decoded image.
+	 * @throws InvalidQOIStreamException If the source does not represent a valid QOI image,
+	 *                                   or if the header is not the same as it was when this object was created.
+	 * @throws IOException On any IO error.
+	 */
+	public QOIImage getImage() throws IOException {
+		QOIImage image = this.image;
+
+		if (image == null) {
+			synchronized (this) {
+				image = this.image;
+
+				if (image == null) {
+					image = this.source.decode(this.channels);
+
+					if (image.getWidth() != getWidth() || image.getHeight() != getHeight() || image.getColorSpace() != getColorSpace()) {
+						throw new InvalidQOIStreamException("Image header has changed since it was read");
+					}
+
+					this.image = image;
+					this.source = null;
+				}
+			}
+		}
+
+		return image;
+	}
+
+	@FunctionalInterface
+	interface ImageSource {
+
+		QOIImage decode(int channels) throws IOException;
+
+	}
+
+}
@@ -0,0 +1,50 @@
+package me.saharnooby.qoi;
+
+/**
+ * Order of channels of a pixel stored as bytes, from the first byte to the last one.
+ */
+public enum QOIPixelFormat {
+
+	/**
+	 * [R, G, B]. This is the layout of 3-channel {@link QOIImage} pixel data.
+	 */
+	RGB(3),
+	/**
+	 * [R, G, B, A]. This is the layout of 4-channel {@link QOIImage} pixel data.
+	 */
+	RGBA(4),
+	/**
+	 * [B, G, R]. This is the layout of {@link java.awt.image.BufferedImage#TYPE_3BYTE_BGR} and 24-bit BMP and DIB images.
+	 */
+	BGR(3),
+	/**
+	 * [B, G, R, A]. This is the layout preferred by most graphics APIs and video encoders on little-endian platforms.
+	 */
+	BGRA(4),
+	/**
+	 * [A, R, G, B]. Such pixel has the same bytes as a {@link QOIPixelPacking#ARGB} int stored in big-endian byte order.
+	 */
+	ARGB(4),
+	/**
+	 * [A, B, G, R]. This is the layout of {@link java.awt.image.BufferedImage#TYPE_4BYTE_ABGR}.
+	 */
+	ABGR(4);
+
+	private final int channels;
+
+	QOIPixelFormat(int channels) {
+		this.channels = channels;
+	}
+
+	/**
+	 * Returns channel count of the format, 3 or 4. Images are stored with this channel count when encoded from this format.
+	 */
+	public int getChannels() {
+		return this.channels;
+	}
+
+	static QOIPixelFormat of(int channels) {
+		return channels == 3 ? RGB : RGBA;
+	}
+
+}
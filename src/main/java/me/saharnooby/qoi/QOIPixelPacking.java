@@ -0,0 +1,25 @@
+package me.saharnooby.qoi;
+
+/**
+ * Layout of a pixel packed into a single int, from the most significant byte to the least significant one.
+ */
+public enum QOIPixelPacking {
+
+	/**
+	 * 0xRRGGBBAA. This is the layout used internally by the decoder and the encoder, so no conversion is done.
+	 */
+	RGBA,
+	/**
+	 * 0xAARRGGBB. This is the layout of {@link java.awt.image.BufferedImage#TYPE_INT_ARGB} and Android color ints.
+	 */
+	ARGB,
+	/**
+	 * 0xAABBGGRR. Stored in little-endian byte order, such int has the same bytes as an [R, G, B, A] pixel.
+	 */
+	ABGR,
+	/**
+	 * 0xBBGGRRAA. Stored in little-endian byte order, such int has the same bytes as an [A, R, G, B] pixel.
+	 */
+	BGRA;
+
+}
@@ -0,0 +1,180 @@
+package me.saharnooby.qoi;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Decodes a QOI image row by row, keeping decoder state between rows.
+ * Memory usage is proportional to image width, not to the whole image size,
+ * and each row is available as soon as it is decoded.
+ * <p>The header is read when the reader is created. After the last row is read, padding is read and validated.</p>
+ * <p>The reader does buffering by itself, for optimal performance the input stream should not be buffered.
+ * It may read past a single valid QOI image, if more data is available in the stream.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class QOIRowReader implements Closeable {
+
+	private final InputStream in;
+
+	private final ChunkDecoder decoder;
+
+	/**
+	 * Header of the image.
+	 */
+	@Getter
+	private final QOIHeader header;
+
+	/**
+	 * Channel count of the returned rows.
+	 */
+	@Getter
+	private final int channels;
+
+	/**
+	 * Index of the next row to read.
+	 */
+	@Getter
+	private int row;
+
+	private final int[] span;
+
+	// Created on first use of readRow()
+	private byte[] rowBuffer;
+	private PixelWriter rowWriter;
+
+	// Event covers the whole image, including time spent by the caller between rows
+	private final Object event;
+	private long outputSize;
+
+	/**
+	 * Creates a reader and reads the header from the stream.
+	 * @param in Input stream.
+	 * @param channels Channel count of the returned rows. Allowed values are 3, 4 and 0 (as many channels as actually stored).
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public QOIRowReader(@NonNull InputStream in, int channels) throws IOException {
+		if (channels != 0 && channels != 3 && channels != 4) {
+			throw new IllegalArgumentException("Invalid channel count, must be 0, 3 or 4");
+		}
+
+		this.event = CodecEvents.beginDecode();
+		this.in = in;
+		this.decoder = new ArrayChunkDecoder(in, true);
+		this.header = this.decoder.readHeader();
+		this.channels = channels == 0 ? this.header.getChannels() : channels;
+		this.span = new int[Math.min(this.header.getWidth(), SPAN_SIZE)];
+	}
+
+	/**
+	 * Creates a reader and reads the header from the channel.
+	 * @param channel Channel.
+	 * @param channels Channel count of the returned rows. Allowed values are 3, 4 and 0 (as many channels as actually stored).
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public QOIRowReader(@NonNull ReadableByteChannel channel, int channels) throws IOException {
+		this(Channels.newInputStream(channel), channels);
+	}
+
+	/**
+	 * Returns <code>true</code> if not all rows were read yet.
+	 */
+	public boolean hasNextRow() {
+		return this.row < this.header.getHeight();
+	}
+
+	/**
+	 * Decodes the next row into a reusable array. The array is overwritten by the next call to this method.
+	 * @return Array of <code>width * channels</code> bytes containing pixels as [R, G, B, (A,) ...].
+	 * @throws IllegalStateException If all rows were already read.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public byte[] readRow() throws IOException {
+		if (this.rowBuffer == null) {
+			this.rowBuffer = new byte[Math.multiplyExact(this.header.getWidth(), this.channels)];
+			this.rowWriter = PixelWriter.create(this.rowBuffer, this.channels);
+		}
+
+		readRow(this.rowWriter, 0);
+
+		return this.rowBuffer;
+	}
+
+	/**
+	 * Decodes the next row into a caller-provided array.
+	 * @param destination Destination array.
+	 * @param offset Position in the destination array to store pixels as [R, G, B, (A,) ...] at.
+	 *               <code>width * channels</code> bytes are written.
+	 * @throws IllegalStateException If all rows were already read.
+	 * @throws IndexOutOfBoundsException If the row does not fit into the array at the offset.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public void readRow(byte @NonNull [] destination, int offset) throws IOException {
+		checkRange(destination.length, offset, this.header.getWidth() * this.channels);
+
+		readRow(PixelWriter.create(destination, this.channels), offset);
+	}
+
+	/**
+	 * Decodes the next row into a caller-provided array of packed pixels.
+	 * Alpha of 3-channel images is always 255, regardless of channel count of the reader.
+	 * @param destination Destination array.
+	 * @param offset Position in the destination array to store <code>width</code> pixels at.
+	 * @param packing Layout of the packed pixels.
+	 * @throws IllegalStateException If all rows were already read.
+	 * @throws IndexOutOfBoundsException If the row does not fit into the array at the offset.
+	 * @throws InvalidQOIStreamException If provided data does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public void readRow(int @NonNull [] destination, int offset, @NonNull QOIPixelPacking packing) throws IOException {
+		checkRange(destination.length, offset, this.header.getWidth());
+
+		readRow(PixelWriter.create(destination, packing), offset);
+	}
+
+	/**
+	 * Closes the underlying stream or channel.
+	 * @throws IOException On any IO error.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	private void readRow(@NonNull PixelWriter writer, int offset) throws IOException {
+		if (!hasNextRow()) {
+			throw new IllegalStateException("All rows were already read");
+		}
+
+		QOIDecoder.decodeRow(this.decoder, writer, this.span, this.header.getWidth(), offset);
+
+		this.row++;
+		this.outputSize += (long) this.header.getWidth() * writer.bytesPerPixel();
+
+		if (!hasNextRow()) {
+			this.decoder.readPadding();
+
+			CodecEvents.endDecode(this.event, this.header, this.decoder.bytesRead(), this.outputSize);
+		}
+	}
+
+	private static void checkRange(int length, int offset, int count) {
+		if (offset < 0 || offset > length - count) {
+			throw new IndexOutOfBoundsException("Row does not fit into the destination at offset " + offset);
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+package me.saharnooby.qoi;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Encodes a QOI image row by row, or span by span, keeping encoder state between calls.
+ * Pixels may be written in portions of any length, not necessarily aligned to rows;
+ * memory usage does not depend on the image size.
+ * <p>The header is written when the writer is created. {@link #close()} writes the end of the image
+ * and checks that exactly <code>width * height</code> pixels were written.</p>
+ * <p>The writer does buffering by itself, for optimal performance the output stream should not be buffered.</p>
+ * <p>This class is not thread-safe.</p>
+ */
+public final class QOIRowWriter implements Closeable {
+
+	private final OutputStream out;
+
+	private final ChunkEncoder encoder;
+
+	/**
+	 * Header of the image.
+	 */
+	@Getter
+	private final QOIHeader header;
+
+	/**
+	 * Count of pixels written so far.
+	 */
+	@Getter
+	private long pixelsWritten;
+
+	private final long pixelCount;
+
+	private final int[] span;
+
+	private boolean closed;
+
+	// Event covers the whole image, including time spent by the caller between rows
+	private final Object event;
+	private long inputSize;
+
+	/**
+	 * Creates a writer and writes the header into the stream.
+	 * @param out Output stream.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4.
+	 * @param colorSpace Color space.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IOException On any IO error.
+	 */
+	public QOIRowWriter(@NonNull OutputStream out, int width, int height, int channels, @NonNull QOIColorSpace colorSpace) throws IOException {
+		if (width < 1) {
+			throw new IllegalArgumentException("Width must be positive");
+		}
+
+		if (height < 1) {
+			throw new IllegalArgumentException("Height must be positive");
+		}
+
+		if (channels != 3 && channels != 4) {
+			throw new IllegalArgumentException("3 or 4 channels are supported");
+		}
+
+		this.event = CodecEvents.beginEncode();
+		this.out = out;
+		this.encoder = new ChunkEncoder(out);
+		this.header = new QOIHeader(width, height, channels, colorSpace);
+		this.pixelCount = (long) width * height;
+		this.span = new int[Math.min(width, SPAN_SIZE)];
+
+		this.encoder.writeHeader(width, height, channels, colorSpace);
+	}
+
+	/**
+	 * Creates a writer and writes the header into the channel.
+	 * @param channel Channel.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4.
+	 * @param colorSpace Color space.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 * @throws IOException On any IO error.
+	 */
+	public QOIRowWriter(@NonNull WritableByteChannel channel, int width, int height, int channels, @NonNull QOIColorSpace colorSpace) throws IOException {
+		this(Channels.newOutputStream(channel), width, height, channels, colorSpace);
+	}
+
+	/**
+	 * Encodes a single row of pixels.
+	 * @param pixelData Source array.
+	 * @param offset Position of the row in the source array. The row has <code>width * channels</code> bytes
+	 *               in the form of [R, G, B, (A,) ...]. Alpha must be present only if channel count is 4.
+	 * @throws IllegalStateException If the row does not fit into the image, or the writer is closed.
+	 * @throws IndexOutOfBoundsException If the row is out of bounds of the source array.
+	 * @throws IOException On any IO error.
+	 */
+	public void writeRow(byte @NonNull [] pixelData, int offset) throws IOException {
+		writePixels(pixelData, offset, this.header.getWidth());
+	}
+
+	/**
+	 * Encodes a span of pixels. The span does not need to be aligned to rows.
+	 * @param pixelData Source array.
+	 * @param offset Position of the span in the source array.
+	 * @param count Pixel count. The span has <code>count * channels</code> bytes in the form of [R, G, B, (A,) ...].
+	 *              Alpha must be present only if channel count is 4.
+	 * @throws IllegalStateException If the span does not fit into the image, or the writer is closed.
+	 * @throws IndexOutOfBoundsException If the span is out of bounds of the source array.
+	 * @throws IOException On any IO error.
+	 */
+	public void writePixels(byte @NonNull [] pixelData, int offset, int count) throws IOException {
+		int channels = this.header.getChannels();
+
+		checkRange(pixelData.length, offset, (long) count * channels);
+
+		writePixels(PixelReader.create(pixelData, channels), offset, count);
+	}
+
+	/**
+	 * Encodes a span of packed pixels. The span does not need to be aligned to rows.
+	 * @param pixels Source array.
+	 * @param offset Position of the first pixel in the source array.
+	 * @param count Pixel count.
+	 * @param packing Layout of the packed pixels. When channel count is 3, alpha of the pixels is ignored.
+	 * @throws IllegalStateException If the span does not fit into the image, or the writer is closed.
+	 * @throws IndexOutOfBoundsException If the span is out of bounds of the source array.
+	 * @throws IOException On any IO error.
+	 */
+	public void writePixels(int @NonNull [] pixels, int offset, int count, @NonNull QOIPixelPacking packing) throws IOException {
+		checkRange(pixels.length, offset, count);
+
+		writePixels(PixelReader.create(pixels, this.header.getChannels(), packing), offset, count);
+	}
+
+	/**
+	 * Finishes the image and closes the underlying stream or channel.
+	 * Does nothing if the writer is already closed.
+	 * @throws IllegalStateException If not all pixels of the image were written.
+	 *                               The stream is closed in this case too, but the image in it is incomplete.
+	 * @throws IOException On any IO error.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+
+		this.closed = true;
+
+		try (OutputStream out = this.out) {
+			if (this.pixelsWritten != this.pixelCount) {
+				throw new IllegalStateException("Expected " + this.pixelCount + " pixels, but " + this.pixelsWritten + " were written");
+			}
+
+			this.encoder.finish();
+
+			CodecEvents.endEncode(this.event, this.header, this.inputSize, this.encoder.size());
+		}
+	}
+
+	private void writePixels(@NonNull PixelReader reader, int offset, int count) throws IOException {
+		if (this.closed) {
+			throw new IllegalStateException("Writer is closed");
+		}
+
+		if (count > this.pixelCount - this.pixelsWritten) {
+			throw new IllegalStateException("Only " + (this.pixelCount - this.pixelsWritten) + " pixels left to write, got " + count);
+		}
+
+		QOIEncoder.encodePixels(this.encoder, reader, this.span, count, offset);
+
+		this.pixelsWritten += count;
+		this.inputSize += (long) count * reader.bytesPerPixel();
+	}
+
+	private static void checkRange(int length, int offset, long count) {
+		if (offset < 0 || count < 0 || offset > length - count) {
+			throw new IndexOutOfBoundsException("Invalid offset or count");
+		}
+	}
+
+}
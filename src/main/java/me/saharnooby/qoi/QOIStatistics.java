@@ -0,0 +1,180 @@
+package me.saharnooby.qoi;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+
+import static me.saharnooby.qoi.QOICodec.*;
+
+/**
+ * Counts chunks of each type written by the encoder or read by the decoder, which explains how well images compress
+ * and how fast they decode: for example, many <code>QOI_OP_RGBA</code> chunks, few runs or a low index hit rate.
+ * <p>Statistics accumulate over all images encoded or decoded with it, until {@link #reset()} is called.
+ * Chunks are counted by scanning the bytes once more after a span is encoded or decoded,
+ * so the coding loops are not changed, and collection costs nothing when no statistics object is passed.</p>
+ * <p>This class is not thread-safe. Header and padding are not counted.</p>
+ */
+@Getter
+public final class QOIStatistics {
+
+	/**
+	 * Count of <code>QOI_OP_INDEX</code> chunks.
+	 */
+	private long indexCount;
+	/**
+	 * Count of <code>QOI_OP_DIFF</code> chunks.
+	 */
+	private long diffCount;
+	/**
+	 * Count of <code>QOI_OP_LUMA</code> chunks.
+	 */
+	private long lumaCount;
+	/**
+	 * Count of <code>QOI_OP_RUN</code> chunks.
+	 */
+	private long runCount;
+	/**
+	 * Count of <code>QOI_OP_RGB</code> chunks.
+	 */
+	private long rgbCount;
+	/**
+	 * Count of <code>QOI_OP_RGBA</code> chunks.
+	 */
+	private long rgbaCount;
+	/**
+	 * Total count of pixels encoded by <code>QOI_OP_RUN</code> chunks.
+	 */
+	private long runLength;
+
+	/**
+	 * Returns total count of chunks of all types.
+	 */
+	public long getChunkCount() {
+		return this.indexCount + this.diffCount + this.lumaCount + this.runCount + this.rgbCount + this.rgbaCount;
+	}
+
+	/**
+	 * Returns total size of chunks in bytes.
+	 */
+	public long getChunkSize() {
+		return this.indexCount + this.diffCount + this.lumaCount * 2 + this.runCount + this.rgbCount * 4 + this.rgbaCount * 5;
+	}
+
+	/**
+	 * Returns total count of pixels represented by the chunks.
+	 */
+	public long getPixelCount() {
+		return this.runLength + getChunkCount() - this.runCount;
+	}
+
+	/**
+	 * Returns the share of pixels found in the index among pixels that are not part of a run, from 0 to 1.
+	 * These are the pixels that the encoder looks up in the index. Returns 0 if there are no such pixels.
+	 */
+	public double getIndexHitRate() {
+		long lookups = getChunkCount() - this.runCount;
+
+		return lookups == 0 ? 0 : (double) this.indexCount / lookups;
+	}
+
+	/**
+	 * Adds counts of other statistics to this one, for example to merge statistics collected by different threads.
+	 * @param other Other statistics.
+	 */
+	public void add(@NonNull QOIStatistics other) {
+		this.indexCount += other.indexCount;
+		this.diffCount += other.diffCount;
+		this.lumaCount += other.lumaCount;
+		this.runCount += other.runCount;
+		this.rgbCount += other.rgbCount;
+		this.rgbaCount += other.rgbaCount;
+		this.runLength += other.runLength;
+	}
+
+	/**
+	 * Sets all counts to zero.
+	 */
+	public void reset() {
+		this.indexCount = 0;
+		this.diffCount = 0;
+		this.lumaCount = 0;
+		this.runCount = 0;
+		this.rgbCount = 0;
+		this.rgbaCount = 0;
+		this.runLength = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "QOIStatistics(index=" + this.indexCount +
+				", diff=" + this.diffCount +
+				", luma=" + this.lumaCount +
+				", run=" + this.runCount +
+				", rgb=" + this.rgbCount +
+				", rgba=" + this.rgbaCount +
+				", runLength=" + this.runLength +
+				", indexHitRate=" + getIndexHitRate() + ")";
+	}
+
+	/**
+	 * Counts chunks in the array. The region must start at a chunk and contain only whole chunks.
+	 */
+	void countChunks(byte @NonNull [] data, int from, int to) {
+		for (int pos = from; pos < to; ) {
+			pos += countChunk(data[pos] & 0xFF);
+		}
+	}
+
+	/**
+	 * Counts chunks in the buffer using absolute reads. The region must start at a chunk and contain only whole chunks.
+	 */
+	void countChunks(@NonNull ByteBuffer data, int from, int to) {
+		for (int pos = from; pos < to; ) {
+			pos += countChunk(data.get(pos) & 0xFF);
+		}
+	}
+
+	/**
+	 * Counts a run that is written without being scanned.
+	 */
+	void countRun(int length) {
+		this.runCount++;
+		this.runLength += length;
+	}
+
+	// Returns chunk size in bytes
+	private int countChunk(int b1) {
+		if (b1 == QOI_OP_RGB) {
+			this.rgbCount++;
+
+			return 4;
+		}
+
+		if (b1 == QOI_OP_RGBA) {
+			this.rgbaCount++;
+
+			return 5;
+		}
+
+		switch (b1 & QOI_MASK_2) {
+			case QOI_OP_INDEX:
+				this.indexCount++;
+
+				return 1;
+			case QOI_OP_DIFF:
+				this.diffCount++;
+
+				return 1;
+			case QOI_OP_LUMA:
+				this.lumaCount++;
+
+				return 2;
+			default:
+				countRun((b1 & 0x3F) + 1);
+
+				return 1;
+		}
+	}
+
+}
@@ -0,0 +1,300 @@
+package me.saharnooby.qoi;
+
+import lombok.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Command-line tool that converts all images in a directory tree between QOI and raw pixel data in parallel.
+ * <p>Usage: <code>java -jar qoi-java.jar (encode|decode) &lt;source dir&gt; &lt;target dir&gt; [--threads N] [--memory MB]</code></p>
+ * <p>Raw pixel data is stored as binary Netpbm images: <code>encode</code> converts <code>.ppm</code> and <code>.pam</code> files
+ * into <code>.qoi</code> files, <code>decode</code> converts <code>.qoi</code> files into <code>.ppm</code> (RGB) or <code>.pam</code> (RGBA) files.
+ * Directory structure of the source is recreated in the target directory.</p>
+ * <p>Files are transcoded on a pool of worker threads, one thread per processor by default. Total size of pixel data
+ * of files being transcoded is limited (by default, to a quarter of max heap size); an image larger than the limit
+ * is transcoded alone. A failed file does not stop the batch, but the exit code is 1 then.</p>
+ */
+public final class QOITranscoder {
+
+	private static final String USAGE = "Usage: java -jar qoi-java.jar (encode|decode) <source dir> <target dir> [--threads N] [--memory MB]";
+
+	// Memory limit is tracked in KiB, so a Semaphore can represent up to 2 TiB
+	private static final int PERMIT_SIZE = 1024;
+
+	enum Mode {
+		ENCODE,
+		DECODE
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			exit(USAGE);
+		}
+
+		Mode mode = null;
+
+		try {
+			mode = Mode.valueOf(args[0].toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			exit("Unknown mode " + args[0] + "\n" + USAGE);
+		}
+
+		Path source = Paths.get(args[1]);
+		Path target = Paths.get(args[2]);
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		long memoryLimit = Runtime.getRuntime().maxMemory() / 4;
+
+		for (int i = 3; i < args.length; i += 2) {
+			if (i + 1 == args.length) {
+				exit("Missing value of " + args[i] + "\n" + USAGE);
+			}
+
+			try {
+				switch (args[i]) {
+					case "--threads":
+						threads = Integer.parseInt(args[i + 1]);
+						break;
+					case "--memory":
+						memoryLimit = Long.parseLong(args[i + 1]) << 20;
+						break;
+					default:
+						exit("Unknown option " + args[i] + "\n" + USAGE);
+				}
+			} catch (NumberFormatException e) {
+				exit("Invalid value of " + args[i] + ": " + args[i + 1]);
+			}
+		}
+
+		if (threads < 1 || memoryLimit < 1) {
+			exit("Thread count and memory limit must be positive");
+		}
+
+		if (!Files.isDirectory(source)) {
+			exit("Source directory " + source + " does not exist");
+		}
+
+		Statistics statistics = transcode(mode, source, target, threads, memoryLimit);
+
+		System.out.println(statistics);
+
+		if (statistics.failed.sum() != 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Transcodes all supported files in the source directory tree into the target directory.
+	 * Errors of individual files are printed to {@link System#err} and counted.
+	 */
+	static Statistics transcode(@NonNull Mode mode, @NonNull Path source, @NonNull Path target, int threads, long memoryLimit) throws IOException, InterruptedException {
+		int permits = (int) Math.min(Math.max(memoryLimit / PERMIT_SIZE, 1), Integer.MAX_VALUE);
+
+		Semaphore memory = new Semaphore(permits);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		Statistics statistics = new Statistics(mode);
+
+		long start = System.nanoTime();
+
+		try (Stream<Path> files = Files.walk(source)) {
+			Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+
+			while (iterator.hasNext()) {
+				Path file = iterator.next();
+
+				if (!isSupported(mode, file)) {
+					continue;
+				}
+
+				QOIHeader header;
+
+				try {
+					header = mode == Mode.ENCODE ? readNetpbmHeader(file) : QOIUtil.readHeader(file);
+				} catch (IOException | RuntimeException e) {
+					statistics.fail(file, e);
+
+					continue;
+				}
+
+				long size = (long) header.getWidth() * header.getHeight() * header.getChannels();
+
+				// Waiting here instead of in workers keeps the walk from running ahead of the pool
+				int required = (int) Math.min((size + PERMIT_SIZE - 1) / PERMIT_SIZE, permits);
+
+				memory.acquire(required);
+
+				Path output = target.resolve(source.relativize(file).toString());
+
+				executor.execute(() -> {
+					try {
+						transcode(mode, file, output, header, statistics);
+					} catch (IOException | RuntimeException | OutOfMemoryError e) {
+						statistics.fail(file, e);
+					} finally {
+						memory.release(required);
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				// Large batches may take a long time
+			}
+		}
+
+		statistics.nanos = System.nanoTime() - start;
+
+		return statistics;
+	}
+
+	private static boolean isSupported(@NonNull Mode mode, @NonNull Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+
+		return mode == Mode.ENCODE ? name.endsWith(".ppm") || name.endsWith(".pam") : name.endsWith(".qoi");
+	}
+
+	private static QOIHeader readNetpbmHeader(@NonNull Path file) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 256)) {
+			return Netpbm.readHeader(in);
+		}
+	}
+
+	private static void transcode(@NonNull Mode mode, @NonNull Path input, @NonNull Path output, @NonNull QOIHeader header, @NonNull Statistics statistics) throws IOException {
+		Path parent = output.getParent();
+
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+
+		long pixelDataSize;
+		long qoiSize;
+
+		if (mode == Mode.ENCODE) {
+			output = replaceExtension(output, ".qoi");
+
+			QOIImage image = readNetpbm(input, header);
+
+			QOIUtil.writeFile(image, output);
+
+			pixelDataSize = image.getPixelData().length;
+			qoiSize = Files.size(output);
+		} else {
+			QOIImage image = QOIUtil.readFile(input, 0);
+
+			output = replaceExtension(output, image.getChannels() == 3 ? ".ppm" : ".pam");
+
+			try (OutputStream out = Files.newOutputStream(output)) {
+				out.write(Netpbm.createHeader(image.getWidth(), image.getHeight(), image.getChannels()));
+				out.write(image.getPixelData());
+			}
+
+			pixelDataSize = image.getPixelData().length;
+			qoiSize = Files.size(input);
+		}
+
+		statistics.files.increment();
+		statistics.pixelDataSize.add(pixelDataSize);
+		statistics.qoiSize.add(qoiSize);
+	}
+
+	private static QOIImage readNetpbm(@NonNull Path file, @NonNull QOIHeader expected) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			QOIHeader header = Netpbm.readHeader(in);
+
+			if (!header.equals(expected)) {
+				throw new InvalidQOIStreamException("File was modified while transcoding");
+			}
+
+			byte[] pixelData = new byte[Math.multiplyExact(Math.multiplyExact(header.getWidth(), header.getHeight()), header.getChannels())];
+
+			for (int position = 0, read; position < pixelData.length; position += read) {
+				read = in.read(pixelData, position, pixelData.length - position);
+
+				if (read == -1) {
+					throw new EOFException("Unexpected end of pixel data");
+				}
+			}
+
+			return QOIUtil.createFromPixelData(pixelData, header.getWidth(), header.getHeight(), header.getChannels());
+		}
+	}
+
+	private static Path replaceExtension(@NonNull Path path, @NonNull String extension) {
+		String name = path.getFileName().toString();
+
+		return path.resolveSibling(name.substring(0, name.lastIndexOf('.')) + extension);
+	}
+
+	private static void exit(@NonNull String message) {
+		System.err.println(message);
+		System.exit(1);
+	}
+
+	/**
+	 * Counters of a batch, updated concurrently by workers.
+	 */
+	static final class Statistics {
+
+		private final Mode mode;
+
+		final LongAdder files = new LongAdder();
+
+		final LongAdder failed = new LongAdder();
+
+		// Size of uncompressed pixel data, that is, of the raw side of the conversion
+		final LongAdder pixelDataSize = new LongAdder();
+
+		final LongAdder qoiSize = new LongAdder();
+
+		long nanos;
+
+		private Statistics(@NonNull Mode mode) {
+			this.mode = mode;
+		}
+
+		private void fail(@NonNull Path file, @NonNull Throwable e) {
+			this.failed.increment();
+
+			System.err.println("Failed to transcode " + file + ": " + e);
+		}
+
+		@Override
+		public String toString() {
+			double seconds = Math.max(this.nanos, 1) / 1e9;
+			double pixelMegabytes = this.pixelDataSize.sum() / 1e6;
+			double qoiMegabytes = this.qoiSize.sum() / 1e6;
+
+			return String.format(Locale.ROOT, "%s %d files (%d failed) in %.2f s: %.1f files/s, %.1f MB/s of pixel data, " +
+							"compression ratio %.2f (%.1f MB raw, %.1f MB QOI)",
+					this.mode == Mode.ENCODE ? "Encoded" : "Decoded",
+					this.files.sum(),
+					this.failed.sum(),
+					seconds,
+					this.files.sum() / seconds,
+					pixelMegabytes / seconds,
+					qoiMegabytes == 0 ? 0 : pixelMegabytes / qoiMegabytes,
+					pixelMegabytes,
+					qoiMegabytes);
+		}
+
+	}
+
+}
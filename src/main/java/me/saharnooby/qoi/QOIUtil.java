@@ -3,6 +3,19 @@ package me.saharnooby.qoi;
 import lombok.NonNull;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Contains public API methods of the library.
@@ -10,6 +23,19 @@ import java.io.*;
 @SuppressWarnings("unused")
 public final class QOIUtil {
 
+	// Files larger than this are memory-mapped instead of being read into the heap
+	private static final long MAP_THRESHOLD = 1 << 24;
+
+	// Bounds of the default flush size when writing files
+	private static final int MIN_WRITE_BUFFER_SIZE = 8192;
+	private static final int MAX_WRITE_BUFFER_SIZE = 1 << 20;
+
+	// Must fit the header and any single pixel
+	private static final int MIN_FLUSH_SIZE = 64;
+
+	// Converting smaller parts is not worth scheduling them on another thread
+	private static final int MIN_CONVERSION_PART_SIZE = 1 << 18;
+
 	/**
 	 * Creates a QOI image from raw pixel data.
 	 * Channel count is detected automatically.
@@ -69,6 +95,50 @@ public final class QOIUtil {
 		return new QOIImage(width, height, channels, colorSpace, pixelData);
 	}
 
+	/**
+	 * Creates a large image, whose pixel data may exceed 2 GB. All pixels are initially zero.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4.
+	 * @param colorSpace Color space.
+	 * @return Large QOI image.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 */
+	public static QOILargeImage createLargeImage(int width, int height, int channels, @NonNull QOIColorSpace colorSpace) {
+		return createLargeImage(width, height, channels, colorSpace, false);
+	}
+
+	/**
+	 * Creates a large image with pixel data in direct byte buffers, outside of the garbage-collected heap.
+	 * Images of up to 2^28 pixels have a single segment, which can be passed to native code without copying.
+	 * All pixels are initially zero. The image should be closed when no longer needed to release the memory.
+	 * @param width Image width, must be positive.
+	 * @param height Image height, must be positive.
+	 * @param channels Channel count, must be 3 or 4.
+	 * @param colorSpace Color space.
+	 * @return Direct QOI image.
+	 * @throws IllegalArgumentException If any arguments are invalid.
+	 */
+	public static QOILargeImage createDirectImage(int width, int height, int channels, @NonNull QOIColorSpace colorSpace) {
+		return createLargeImage(width, height, channels, colorSpace, true);
+	}
+
+	private static QOILargeImage createLargeImage(int width, int height, int channels, @NonNull QOIColorSpace colorSpace, boolean direct) {
+		if (width < 1) {
+			throw new IllegalArgumentException("Width must be positive");
+		}
+
+		if (height < 1) {
+			throw new IllegalArgumentException("Height must be positive");
+		}
+
+		if (channels != 3 && channels != 4) {
+			throw new IllegalArgumentException("3 or 4 channels are supported");
+		}
+
+		return new QOILargeImage(width, height, channels, colorSpace, QOILargeImage.DEFAULT_SEGMENT_PIXELS, direct);
+	}
+
 	/**
 	 * Reads a QOI image from an input stream.
 	 * @param in Input stream, should be buffered for optimal performance.
@@ -112,11 +182,201 @@ public final class QOIUtil {
 	 * @throws IOException On any IO error.
 	 */
 	public static QOIImage readFile(@NonNull File file, int channels) throws IOException {
+		return readFile(file.toPath(), channels);
+	}
+
+	/**
+	 * Reads a QOI image from a file.
+	 * @param path File path.
+	 * @return QOI image.
+	 * @throws InvalidQOIStreamException If provided file does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 * @see #readFile(Path, int)
+	 */
+	public static QOIImage readFile(@NonNull Path path) throws IOException {
+		return readFile(path, 0);
+	}
+
+	/**
+	 * Reads a QOI image from a file using a {@link FileChannel}.
+	 * Files up to 16 MB are read into an array of the file size at once, which takes as few system calls as possible,
+	 * and are decoded from it in place. Larger files are memory-mapped, the mapping is released after decoding.
+	 * @param path File path.
+	 * @param channels Channel count, must be 0 (auto), 3 or 4.
+	 * @return QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided file does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIImage readFile(@NonNull Path path, int channels) throws IOException {
+		checkChannels(channels);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			if (size > MAP_THRESHOLD) {
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+				try {
+					return QOIDecoder.decode(mapped, channels);
+				} finally {
+					// Pixel data is a copy, so the mapping is released right away instead of keeping the file open until GC
+					DirectBuffers.release(mapped);
+				}
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+
+			// The file may be truncated while it is read, then the decoder will report unexpected end of stream
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				// Usually a single read is enough
+			}
+
+			return QOIDecoder.decode(buffer.array(), 0, buffer.position(), channels);
+		}
+	}
+
+	/**
+	 * Reads a QOI image from a file asynchronously. The file is decoded in the common {@link ForkJoinPool}.
+	 * @param path File path.
+	 * @return Future that completes with the image, or exceptionally with an {@link IOException}
+	 *         or an {@link InvalidQOIStreamException}.
+	 * @see #readFileAsync(Path, int, Executor)
+	 */
+	public static CompletableFuture<QOIImage> readFileAsync(@NonNull Path path) {
+		return readFileAsync(path, 0, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Reads a QOI image from a file asynchronously. The file is read using {@link AsynchronousFileChannel},
+	 * without blocking the calling thread, and then is decoded in the provided executor.
+	 * @param path File path.
+	 * @param channels Channel count, must be 0 (auto), 3 or 4.
+	 * @param executor Executor to decode the image in.
+	 * @return Future that completes with the image, or exceptionally with an {@link IOException}
+	 *         or an {@link InvalidQOIStreamException}.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 */
+	public static CompletableFuture<QOIImage> readFileAsync(@NonNull Path path, int channels, @NonNull Executor executor) {
+		checkChannels(channels);
+
+		return AsyncFiles.read(path).thenApplyAsync(buffer -> {
+			try {
+				return QOIDecoder.decode(buffer, channels);
+			} catch (InvalidQOIStreamException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Reads only the header of a QOI image from an input stream, without decoding pixels.
+	 * Exactly 14 bytes are read from the stream.
+	 * @param in Input stream.
+	 * @return Header of the image.
+	 * @throws InvalidQOIStreamException If provided data does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader readHeader(@NonNull InputStream in) throws IOException {
+		return QOIDecoder.readHeader(in);
+	}
+
+	/**
+	 * Reads only the header of a QOI image from a file, without decoding pixels.
+	 * Only first 14 bytes of the file are read.
+	 * @param file File.
+	 * @return Header of the image.
+	 * @throws InvalidQOIStreamException If provided file does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader readHeader(@NonNull File file) throws IOException {
 		try (InputStream in = new FileInputStream(file)) {
-			return readImage(in, channels);
+			return readHeader(in);
+		}
+	}
+
+	/**
+	 * Reads only the header of a QOI image from a file, without decoding pixels.
+	 * Only first 14 bytes of the file are read.
+	 * @param path File path.
+	 * @return Header of the image.
+	 * @throws InvalidQOIStreamException If provided file does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOIHeader readHeader(@NonNull Path path) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			return readHeader(in);
 		}
 	}
 
+	/**
+	 * Reads only the header of a QOI image from a byte buffer, without decoding pixels.
+	 * Header is read starting at buffer's position, which is not changed.
+	 * @param buffer Buffer containing QOI image.
+	 * @return Header of the image.
+	 * @throws InvalidQOIStreamException If provided data does not start with a valid QOI header.
+	 */
+	public static QOIHeader readHeader(@NonNull ByteBuffer buffer) throws InvalidQOIStreamException {
+		return QOIDecoder.readHeader(buffer);
+	}
+
+	/**
+	 * Reads the header of a QOI image from a file, and returns an image that decodes the file on first access to pixel data.
+	 * @param file File.
+	 * @return Lazily decoded QOI image.
+	 * @throws InvalidQOIStreamException If provided file does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOILazyImage readFileLazily(@NonNull File file) throws IOException {
+		return readFileLazily(file.toPath(), 0);
+	}
+
+	/**
+	 * Reads the header of a QOI image from a file, and returns an image that decodes the file on first access to pixel data.
+	 * @param file File.
+	 * @param channels Channel count, must be 0 (auto), 3 or 4.
+	 * @return Lazily decoded QOI image.
+	 * @throws InvalidQOIStreamException If provided file does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOILazyImage readFileLazily(@NonNull File file, int channels) throws IOException {
+		return readFileLazily(file.toPath(), channels);
+	}
+
+	/**
+	 * Reads the header of a QOI image from a file, and returns an image that decodes the file on first access to pixel data.
+	 * The file is read again when pixel data is decoded, and must not change in between.
+	 * @param path File path.
+	 * @param channels Channel count, must be 0 (auto), 3 or 4.
+	 * @return Lazily decoded QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided file does not start with a valid QOI header.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOILazyImage readFileLazily(@NonNull Path path, int channels) throws IOException {
+		checkChannels(channels);
+
+		return new QOILazyImage(readHeader(path), channels, c -> readFile(path, c));
+	}
+
+	/**
+	 * Reads the header of a QOI image from a byte buffer, and returns an image that decodes the buffer on first access to pixel data.
+	 * Image is read starting at buffer's position, which is not changed. Contents of the buffer must not change until the image is decoded.
+	 * @param buffer Buffer containing QOI image.
+	 * @param channels Channel count, must be 0 (auto), 3 or 4.
+	 * @return Lazily decoded QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided data does not start with a valid QOI header.
+	 */
+	public static QOILazyImage readImageLazily(@NonNull ByteBuffer buffer, int channels) throws InvalidQOIStreamException {
+		checkChannels(channels);
+
+		// Duplicate is not affected by changes of caller's buffer position and limit
+		ByteBuffer data = buffer.duplicate();
+
+		return new QOILazyImage(readHeader(data), channels, c -> QOIDecoder.decode(data.duplicate(), c));
+	}
+
 	/**
 	 * Writes a QOI image into an output stream.
 	 * @param image Image.
@@ -134,11 +394,110 @@ public final class QOIUtil {
 	 * @throws IOException On any IO error.
 	 */
 	public static void writeImage(@NonNull QOIImage image, @NonNull File file) throws IOException {
-		try (OutputStream out = new FileOutputStream(file)) {
-			writeImage(image, out);
+		writeFile(image, file.toPath());
+	}
+
+	/**
+	 * Writes a QOI image into a file using a {@link FileChannel}.
+	 * Flush size is chosen from the image size: small images are written at once, large ones in 1 MB writes.
+	 * @param image Image.
+	 * @param path File path.
+	 * @throws IOException On any IO error.
+	 * @see #writeFile(QOIImage, Path, int)
+	 */
+	public static void writeFile(@NonNull QOIImage image, @NonNull Path path) throws IOException {
+		// Most images compress at least by half
+		int size = image.getPixelData().length / 2;
+
+		writeFile(image, path, Math.max(MIN_WRITE_BUFFER_SIZE, Math.min(size, MAX_WRITE_BUFFER_SIZE)));
+	}
+
+	/**
+	 * Writes a QOI image into a file using a {@link FileChannel}. The file is created or truncated.
+	 * Encoded data is buffered and written into the file every <code>flushSize</code> bytes;
+	 * larger sizes mean fewer system calls, but more memory.
+	 * @param image Image.
+	 * @param path File path.
+	 * @param flushSize Size of the encoder's buffer in bytes, must be at least 64.
+	 * @throws IllegalArgumentException If flush size is too small.
+	 * @throws IOException On any IO error.
+	 */
+	public static void writeFile(@NonNull QOIImage image, @NonNull Path path, int flushSize) throws IOException {
+		if (flushSize < MIN_FLUSH_SIZE) {
+			throw new IllegalArgumentException("Flush size must be at least " + MIN_FLUSH_SIZE);
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ChunkEncoder encoder = new ChunkEncoder(Channels.newOutputStream(channel), flushSize);
+
+			QOIEncoder.encode(QOIEncoder.getHeader(image), QOIEncoder.createReader(image), encoder, null);
+		}
+	}
+
+	/**
+	 * Reads a large QOI image, whose pixel data may exceed 2 GB, from a file.
+	 * @param path File path.
+	 * @param channels Channel count, must be 0 (auto), 3 or 4.
+	 * @return Large QOI image.
+	 * @throws IllegalArgumentException If channel count is invalid.
+	 * @throws InvalidQOIStreamException If provided file does not represent a valid QOI image.
+	 * @throws IOException On any IO error.
+	 */
+	public static QOILargeImage readLargeFile(@NonNull Path path, int channels) throws IOException {
+		checkChannels(channels);
+
+		try (InputStream in = Files.newInputStream(path)) {
+			return QOIDecoder.decodeLarge(in, channels);
+		}
+	}
+
+	/**
+	 * Writes a large QOI image, whose pixel data may exceed 2 GB, into a file. The file is created or truncated.
+	 * @param image Large image.
+	 * @param path File path.
+	 * @throws IOException On any IO error.
+	 */
+	public static void writeFile(@NonNull QOILargeImage image, @NonNull Path path) throws IOException {
+		try (OutputStream out = Files.newOutputStream(path)) {
+			QOIEncoder.encode(image, out);
 		}
 	}
 
+	/**
+	 * Writes a QOI image into a file asynchronously. The image is encoded in the common {@link ForkJoinPool}.
+	 * @param image Image.
+	 * @param path File path.
+	 * @return Future that completes when the file is written, or exceptionally with an {@link IOException}.
+	 * @see #writeFileAsync(QOIImage, Path, Executor)
+	 */
+	public static CompletableFuture<Void> writeFileAsync(@NonNull QOIImage image, @NonNull Path path) {
+		return writeFileAsync(image, path, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Writes a QOI image into a file asynchronously. The image is encoded into memory in the provided executor,
+	 * and then is written using {@link AsynchronousFileChannel}, without blocking any thread.
+	 * @param image Image.
+	 * @param path File path.
+	 * @param executor Executor to encode the image in.
+	 * @return Future that completes when the file is written, or exceptionally with an {@link IOException}.
+	 */
+	public static CompletableFuture<Void> writeFileAsync(@NonNull QOIImage image, @NonNull Path path, @NonNull Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			// Most images compress at least by half
+			MemoryOutputStream out = new MemoryOutputStream(image.getPixelData().length / 2);
+
+			try {
+				QOIEncoder.encode(image, out);
+			} catch (IOException e) {
+				// Writing into memory does no IO
+				throw new IllegalStateException(e);
+			}
+
+			return out.toByteBuffer();
+		}, executor).thenCompose(buffer -> AsyncFiles.write(path, buffer));
+	}
+
 	/**
 	 * Removes alpha channel from a 4-channel image, converting it to a 3-channel image.
 	 * If provided image is already 3-channel, this method will return the provided image.
@@ -150,19 +509,57 @@ public final class QOIUtil {
 			return image;
 		}
 
-		int width = image.getWidth();
-		int height = image.getHeight();
+		int pixelCount = image.getWidth() * image.getHeight();
+		byte[] newData = new byte[pixelCount * 3];
+
+		ChannelConversion.removeAlpha(image.getPixelData(), 0, newData, 0, pixelCount);
+
+		return new QOIImage(image.getWidth(), image.getHeight(), 3, image.getColorSpace(), newData);
+	}
+
+	/**
+	 * Removes alpha channel from a 4-channel image like {@link #removeAlpha(QOIImage)},
+	 * converting parts of large images concurrently in the common {@link ForkJoinPool}.
+	 * @param image Source image.
+	 * @return Converted image.
+	 */
+	public static QOIImage removeAlphaParallel(@NonNull QOIImage image) {
+		if (image.getChannels() != 4) {
+			return image;
+		}
 
+		int pixelCount = image.getWidth() * image.getHeight();
 		byte[] pixelData = image.getPixelData();
-		byte[] newData = new byte[width * height * 3];
+		byte[] newData = new byte[pixelCount * 3];
+
+		convertParallel(pixelCount, (from, count) -> ChannelConversion.removeAlpha(pixelData, from * 4, newData, from * 3, count));
+
+		return new QOIImage(image.getWidth(), image.getHeight(), 3, image.getColorSpace(), newData);
+	}
+
+	/**
+	 * Copies R, G and B of 4-channel pixels into 3-channel pixel data, without allocating anything.
+	 * <p>Source and destination may be the same array, if destination offset is not greater than source offset.
+	 * With equal offsets this removes alpha in place, leaving the result in the first <code>pixelCount * 3</code> bytes.</p>
+	 * <p>On Java 17+, the conversion uses the Vector API when the JVM is started with
+	 * <code>--add-modules jdk.incubator.vector</code>.</p>
+	 * @param source Source pixel data in the form of [R, G, B, A, ...].
+	 * @param sourceOffset Position of the first pixel in the source array.
+	 * @param destination Destination array for pixel data in the form of [R, G, B, ...].
+	 * @param destinationOffset Position of the first pixel in the destination array.
+	 * @param pixelCount Count of pixels to convert.
+	 * @throws IllegalArgumentException If arrays are the same and destination offset is greater than source offset.
+	 * @throws IndexOutOfBoundsException If offsets or pixel count are invalid.
+	 */
+	public static void removeAlpha(byte @NonNull [] source, int sourceOffset, byte @NonNull [] destination, int destinationOffset, int pixelCount) {
+		checkRegion(source, sourceOffset, pixelCount, 4);
+		checkRegion(destination, destinationOffset, pixelCount, 3);
 
-		for (int i = 0, j = 0; i < pixelData.length; i += 4, j += 3) {
-			newData[j] = pixelData[i];
-			newData[j + 1] = pixelData[i + 1];
-			newData[j + 2] = pixelData[i + 2];
+		if (source == destination && destinationOffset > sourceOffset) {
+			throw new IllegalArgumentException("Destination offset must not be greater than source offset when converting in place");
 		}
 
-		return new QOIImage(width, height, 3, image.getColorSpace(), newData);
+		ChannelConversion.removeAlpha(source, sourceOffset, destination, destinationOffset, pixelCount);
 	}
 
 	/**
@@ -177,22 +574,89 @@ public final class QOIUtil {
 			return image;
 		}
 
-		int width = image.getWidth();
-		int height = image.getHeight();
+		int pixelCount = image.getWidth() * image.getHeight();
+		byte[] newData = new byte[pixelCount * 4];
+
+		ChannelConversion.addAlpha(image.getPixelData(), 0, newData, 0, pixelCount, (byte) alpha);
+
+		return new QOIImage(image.getWidth(), image.getHeight(), 4, image.getColorSpace(), newData);
+	}
+
+	/**
+	 * Adds alpha channel to a 3-channel image like {@link #addAlpha(QOIImage, int)},
+	 * converting parts of large images concurrently in the common {@link ForkJoinPool}.
+	 * @param image Source image.
+	 * @param alpha Alpha channel value. Bits higher than 8 will be ignored.
+	 * @return Converted image.
+	 */
+	public static QOIImage addAlphaParallel(@NonNull QOIImage image, int alpha) {
+		if (image.getChannels() != 3) {
+			return image;
+		}
 
+		int pixelCount = image.getWidth() * image.getHeight();
 		byte[] pixelData = image.getPixelData();
-		byte[] newData = new byte[width * height * 4];
+		byte[] newData = new byte[pixelCount * 4];
+
+		convertParallel(pixelCount, (from, count) -> ChannelConversion.addAlpha(pixelData, from * 3, newData, from * 4, count, (byte) alpha));
+
+		return new QOIImage(image.getWidth(), image.getHeight(), 4, image.getColorSpace(), newData);
+	}
+
+	/**
+	 * Copies 3-channel pixels into 4-channel pixel data adding the alpha, without allocating anything.
+	 * <p>Source and destination may be the same array, if destination offset is not less than source offset.
+	 * With equal offsets this adds alpha in place, the array must then have space for <code>pixelCount * 4</code> bytes.</p>
+	 * <p>On Java 17+, the conversion uses the Vector API when the JVM is started with
+	 * <code>--add-modules jdk.incubator.vector</code>.</p>
+	 * @param source Source pixel data in the form of [R, G, B, ...].
+	 * @param sourceOffset Position of the first pixel in the source array.
+	 * @param destination Destination array for pixel data in the form of [R, G, B, A, ...].
+	 * @param destinationOffset Position of the first pixel in the destination array.
+	 * @param pixelCount Count of pixels to convert.
+	 * @param alpha Alpha channel value. Bits higher than 8 will be ignored.
+	 * @throws IllegalArgumentException If arrays are the same and destination offset is less than source offset.
+	 * @throws IndexOutOfBoundsException If offsets or pixel count are invalid.
+	 */
+	public static void addAlpha(byte @NonNull [] source, int sourceOffset, byte @NonNull [] destination, int destinationOffset, int pixelCount, int alpha) {
+		checkRegion(source, sourceOffset, pixelCount, 3);
+		checkRegion(destination, destinationOffset, pixelCount, 4);
 
-		byte alphaByte = (byte) alpha;
+		if (source == destination && destinationOffset < sourceOffset) {
+			throw new IllegalArgumentException("Destination offset must not be less than source offset when converting in place");
+		}
+
+		ChannelConversion.addAlpha(source, sourceOffset, destination, destinationOffset, pixelCount, (byte) alpha);
+	}
 
-		for (int i = 0, j = 0; i < pixelData.length; i += 3, j += 4) {
-			newData[j] = pixelData[i];
-			newData[j + 1] = pixelData[i + 1];
-			newData[j + 2] = pixelData[i + 2];
-			newData[j + 3] = alphaByte;
+	private static void checkRegion(byte @NonNull [] array, int offset, int pixelCount, int channels) {
+		if (offset < 0 || pixelCount < 0 || offset > array.length - (long) pixelCount * channels) {
+			throw new IndexOutOfBoundsException("Invalid offset or pixel count");
 		}
+	}
 
-		return new QOIImage(width, height, 4, image.getColorSpace(), newData);
+	// Splits pixels into parts that are converted concurrently, small images are converted in the calling thread
+	private static void convertParallel(int pixelCount, @NonNull PartConversion conversion) {
+		int partCount = Math.min(Runtime.getRuntime().availableProcessors(), (pixelCount - 1) / MIN_CONVERSION_PART_SIZE + 1);
+		int partSize = (pixelCount - 1) / partCount + 1;
+
+		IntStream.range(0, partCount).parallel().forEach(part -> {
+			int from = part * partSize;
+
+			conversion.convert(from, Math.min(partSize, pixelCount - from));
+		});
+	}
+
+	private interface PartConversion {
+
+		void convert(int from, int count);
+
+	}
+
+	private static void checkChannels(int channels) {
+		if (channels != 0 && channels != 3 && channels != 4) {
+			throw new IllegalArgumentException("Invalid channel count, must be 0, 3 or 4");
+		}
 	}
 
 }
@@ -0,0 +1,31 @@
+package me.saharnooby.qoi;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Reads and writes pixels packed as 0xRRGGBBAA in byte arrays as big-endian 32-bit words,
+ * with a single bounds check per pixel. RGB is accessed as a whole word too, together with the byte after it.
+ */
+final class ByteArrays {
+
+	private static final VarHandle INT_BIG_ENDIAN = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	static int getInt(byte[] array, int index) {
+		return (int) INT_BIG_ENDIAN.get(array, index);
+	}
+
+	static void setInt(byte[] array, int index, int value) {
+		INT_BIG_ENDIAN.set(array, index, value);
+	}
+
+	static int getRGB(byte[] array, int index) {
+		return (int) INT_BIG_ENDIAN.get(array, index) & 0xFFFFFF00;
+	}
+
+	static void setRGB(byte[] array, int index, int value) {
+		INT_BIG_ENDIAN.set(array, index, value);
+	}
+
+}
@@ -0,0 +1,116 @@
+package me.saharnooby.qoi;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reports encoded and decoded images to JDK Flight Recorder.
+ * <p>Event classes are in a nested class, which is loaded only when the <code>jdk.jfr</code> module is present,
+ * so runtimes without it, such as minimal jlink images, work as on Java 8.</p>
+ * <p>When the events are not enabled in any recording, <code>isEnabled()</code> is constant-folded by the JIT,
+ * and the only cost is the <code>null</code> check in the end methods.</p>
+ */
+final class CodecEvents {
+
+	private static final boolean JFR_PRESENT = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+	static Object beginEncode() {
+		return JFR_PRESENT ? Recorder.beginEncode() : null;
+	}
+
+	static Object beginDecode() {
+		return JFR_PRESENT ? Recorder.beginDecode() : null;
+	}
+
+	static void endEncode(Object event, QOIHeader header, long inputSize, long outputSize) {
+		if (event != null) {
+			Recorder.end(event, header, inputSize, outputSize);
+		}
+	}
+
+	static void endDecode(Object event, QOIHeader header, long inputSize, long outputSize) {
+		if (event != null) {
+			Recorder.end(event, header, inputSize, outputSize);
+		}
+	}
+
+	// Referencing jdk.jfr classes only from here keeps CodecEvents loadable without the module
+	private static final class Recorder {
+
+		static Object beginEncode() {
+			return begin(new EncodeEvent());
+		}
+
+		static Object beginDecode() {
+			return begin(new DecodeEvent());
+		}
+
+		private static Object begin(CodecEvent event) {
+			if (!event.isEnabled()) {
+				return null;
+			}
+
+			event.begin();
+
+			return event;
+		}
+
+		static void end(Object event, QOIHeader header, long inputSize, long outputSize) {
+			CodecEvent codecEvent = (CodecEvent) event;
+
+			codecEvent.end();
+
+			if (codecEvent.shouldCommit()) {
+				codecEvent.width = header.getWidth();
+				codecEvent.height = header.getHeight();
+				codecEvent.channels = header.getChannels();
+				codecEvent.inputSize = inputSize;
+				codecEvent.outputSize = outputSize;
+				codecEvent.commit();
+			}
+		}
+
+	}
+
+	@Category("QOI")
+	private static abstract class CodecEvent extends Event {
+
+		@Label("Width")
+		int width;
+
+		@Label("Height")
+		int height;
+
+		@Label("Channels")
+		@Description("Channel count stored in the QOI header")
+		int channels;
+
+		@Label("Input Size")
+		@DataAmount
+		long inputSize;
+
+		@Label("Output Size")
+		@DataAmount
+		long outputSize;
+
+	}
+
+	@Name("me.saharnooby.qoi.Encode")
+	@Label("QOI Encode")
+	@Description("Encoding of raw pixels into a QOI image")
+	private static final class EncodeEvent extends CodecEvent {
+
+	}
+
+	@Name("me.saharnooby.qoi.Decode")
+	@Label("QOI Decode")
+	@Description("Decoding of a QOI image into raw pixels")
+	private static final class DecodeEvent extends CodecEvent {
+
+	}
+
+}
@@ -0,0 +1,54 @@
+package me.saharnooby.qoi;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases memory of direct and mapped byte buffers without waiting for garbage collection, using <code>sun.misc.Unsafe.invokeCleaner</code>.
+ */
+final class DirectBuffers {
+
+	// Null if Unsafe is not available
+	private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+	private static MethodHandle findInvokeCleaner() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+
+			return MethodHandles.lookup()
+					.findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+					.bindTo(field.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Releases memory of a direct buffer allocated by {@link ByteBuffer#allocateDirect(int)},
+	 * or unmaps a buffer returned by {@link java.nio.channels.FileChannel#map}.
+	 * The buffer and all its views must not be used after that.
+	 * @return <code>false</code> if the memory could not be released, then it is released by the garbage collector.
+	 */
+	static boolean release(ByteBuffer buffer) {
+		if (INVOKE_CLEANER == null) {
+			return false;
+		}
+
+		try {
+			INVOKE_CLEANER.invokeExact(buffer);
+
+			return true;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package me.saharnooby.qoi;
+
+/**
+ * Converts pixel data between 3 and 4 channels. Uses the Vector API for most pixels when the
+ * <code>jdk.incubator.vector</code> module is added to the JVM, otherwise uses scalar loops.
+ */
+final class ChannelConversion {
+
+	private static final boolean VECTOR = isVectorAvailable();
+
+	static void removeAlpha(byte[] source, int sourcePos, byte[] destination, int destinationPos, int count) {
+		int vectorCount = VECTOR ? VectorChannelConversion.vectorPixelCount(count) : 0;
+
+		if (vectorCount > 0) {
+			VectorChannelConversion.removeAlpha(source, sourcePos, destination, destinationPos, vectorCount);
+		}
+
+		removeAlphaScalar(source, sourcePos + vectorCount * 4, destination, destinationPos + vectorCount * 3, count - vectorCount);
+	}
+
+	static void addAlpha(byte[] source, int sourcePos, byte[] destination, int destinationPos, int count, byte alpha) {
+		int vectorCount = VECTOR ? VectorChannelConversion.vectorPixelCount(count) : 0;
+
+		// Pixels are converted from the last one, so the tail goes first
+		addAlphaScalar(source, sourcePos + vectorCount * 3, destination, destinationPos + vectorCount * 4, count - vectorCount, alpha);
+
+		if (vectorCount > 0) {
+			VectorChannelConversion.addAlpha(source, sourcePos, destination, destinationPos, vectorCount, alpha);
+		}
+	}
+
+	private static void removeAlphaScalar(byte[] source, int sourcePos, byte[] destination, int destinationPos, int count) {
+		for (int i = 0; i < count; i++, sourcePos += 4, destinationPos += 3) {
+			destination[destinationPos] = source[sourcePos];
+			destination[destinationPos + 1] = source[sourcePos + 1];
+			destination[destinationPos + 2] = source[sourcePos + 2];
+		}
+	}
+
+	private static void addAlphaScalar(byte[] source, int sourcePos, byte[] destination, int destinationPos, int count, byte alpha) {
+		for (int i = count - 1; i >= 0; i--) {
+			int s = sourcePos + i * 3;
+			int d = destinationPos + i * 4;
+
+			destination[d + 3] = alpha;
+			destination[d + 2] = source[s + 2];
+			destination[d + 1] = source[s + 1];
+			destination[d] = source[s];
+		}
+	}
+
+	private static boolean isVectorAvailable() {
+		// The incubator module is resolved only when requested with --add-modules
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			return false;
+		}
+
+		try {
+			VectorChannelConversion.vectorPixelCount(0);
+
+			return true;
+		} catch (LinkageError e) {
+			// Incubator API changed in this JDK
+			return false;
+		}
+	}
+
+}
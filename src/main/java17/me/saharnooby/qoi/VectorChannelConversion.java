@@ -0,0 +1,58 @@
+package me.saharnooby.qoi;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Converts blocks of 4 pixels between 3 and 4 channels with a single 128-bit shuffle per block.
+ * Loaded only when the <code>jdk.incubator.vector</code> module is present.
+ */
+final class VectorChannelConversion {
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_128;
+
+	// Moves R, G and B of 4 RGBA pixels into the first 12 lanes
+	private static final VectorShuffle<Byte> RGBA_TO_RGB = VectorShuffle.fromValues(SPECIES,
+			0, 1, 2, 4, 5, 6, 8, 9, 10, 12, 13, 14, 0, 0, 0, 0);
+
+	// Spreads 4 RGB pixels from the first 12 lanes, alpha lanes are then replaced
+	private static final VectorShuffle<Byte> RGB_TO_RGBA = VectorShuffle.fromValues(SPECIES,
+			0, 1, 2, 0, 3, 4, 5, 0, 6, 7, 8, 0, 9, 10, 11, 0);
+
+	private static final VectorMask<Byte> ALPHA_LANES = VectorMask.fromLong(SPECIES, 0x8888L);
+
+	/**
+	 * Returns count of the first pixels that are converted by vectors. Each block also touches 4 bytes after its
+	 * 3-channel pixels, so the block is used only if there are at least 2 more pixels after it.
+	 */
+	static int vectorPixelCount(int count) {
+		return Math.max(0, (count - 2) / 4) * 4;
+	}
+
+	/**
+	 * Converts pixels from the first one. The last 4 bytes stored by each block belong to the next pixels
+	 * and are overwritten when those are converted.
+	 */
+	static void removeAlpha(byte[] source, int sourcePos, byte[] destination, int destinationPos, int count) {
+		for (int i = 0; i < count; i += 4, sourcePos += 16, destinationPos += 12) {
+			ByteVector.fromArray(SPECIES, source, sourcePos)
+					.rearrange(RGBA_TO_RGB)
+					.intoArray(destination, destinationPos);
+		}
+	}
+
+	/**
+	 * Converts pixels from the last one. The last 4 bytes loaded by each block belong to the next pixels and are ignored.
+	 */
+	static void addAlpha(byte[] source, int sourcePos, byte[] destination, int destinationPos, int count, byte alpha) {
+		for (int i = count - 4; i >= 0; i -= 4) {
+			ByteVector.fromArray(SPECIES, source, sourcePos + i * 3)
+					.rearrange(RGB_TO_RGBA)
+					.blend(alpha, ALPHA_LANES)
+					.intoArray(destination, destinationPos + i * 4);
+		}
+	}
+
+}
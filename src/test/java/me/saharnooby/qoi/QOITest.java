@@ -5,8 +5,19 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Objects;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 /**
  * @author saharNooby
@@ -139,6 +150,1135 @@ class QOITest {
 		Assertions.assertArrayEquals(expectedBytes, actualBytes);
 	}
 
+	@Test
+	void testDecodeFromByteArray() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+		QOIImage expected = QOIUtil.readImage(new ByteArrayInputStream(bytes));
+
+		for (int channels : new int[] {3, 4}) {
+			QOIImage expectedWithChannels = QOIDecoder.decode(new ByteArrayInputStream(bytes), channels);
+
+			Assertions.assertArrayEquals(expectedWithChannels.getPixelData(), QOIDecoder.decode(bytes, channels).getPixelData());
+		}
+
+		// Image in the middle of an array
+		byte[] padded = new byte[bytes.length + 10];
+		System.arraycopy(bytes, 0, padded, 3, bytes.length);
+
+		Assertions.assertEquals(expected, QOIDecoder.decode(padded, 3, bytes.length + 7, 0));
+	}
+
+	@Test
+	void testDecodeFromByteBuffer() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+		QOIImage expected = QOIUtil.readImage(new ByteArrayInputStream(bytes));
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 6);
+		direct.put(new byte[] {1, 2}).put(bytes).put(new byte[] {3, 4, 5, 6}).flip();
+		direct.position(2);
+
+		ByteBuffer heap = ByteBuffer.allocate(bytes.length + 6);
+		heap.put(direct.duplicate()).flip();
+
+		for (ByteBuffer buffer : new ByteBuffer[] {heap, direct, direct.asReadOnlyBuffer(), heap.slice()}) {
+			int position = buffer.position();
+
+			Assertions.assertEquals(expected, QOIDecoder.decode(buffer, 0));
+			Assertions.assertEquals(position + bytes.length, buffer.position(), "Expected position to be advanced past the image");
+		}
+	}
+
+	@Test
+	void testDecodeFromPath() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+
+		Path path = Files.createTempFile("qoi-java", ".qoi");
+
+		try {
+			Files.write(path, bytes);
+
+			Assertions.assertEquals(QOIUtil.readImage(new ByteArrayInputStream(bytes)), QOIDecoder.decode(path, 0));
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	void testDecodeIntoDestinationWithStride() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+
+		for (int channels : new int[] {3, 4}) {
+			QOIImage expected = QOIDecoder.decode(bytes, channels);
+
+			int rowLength = expected.getWidth() * channels;
+			int offset = 5;
+			int stride = rowLength + 7;
+			int length = offset + stride * expected.getHeight();
+
+			byte[] array = new byte[length];
+			Arrays.fill(array, (byte) 123);
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(length);
+			direct.put(array).clear();
+
+			Assertions.assertEquals(expected.getWidth(), QOIDecoder.decode(new ByteArrayInputStream(bytes), array, offset, stride, channels).getWidth());
+			Assertions.assertEquals(expected.getHeight(), QOIDecoder.decode(ByteBuffer.wrap(bytes), direct, offset, stride, channels).getHeight());
+
+			byte[] fromDirect = new byte[length];
+			direct.get(fromDirect);
+
+			Assertions.assertArrayEquals(array, fromDirect);
+
+			for (int y = 0; y < expected.getHeight(); y++) {
+				int rowStart = offset + y * stride;
+
+				Assertions.assertArrayEquals(
+						Arrays.copyOfRange(expected.getPixelData(), y * rowLength, (y + 1) * rowLength),
+						Arrays.copyOfRange(array, rowStart, rowStart + rowLength)
+				);
+
+				// Bytes between rows are not touched
+				for (int i = rowStart + rowLength; i < rowStart + stride; i++) {
+					Assertions.assertEquals(123, array[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testDecodeIntoTooSmallDestination() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+		QOIImage image = QOIDecoder.decode(bytes, 4);
+
+		byte[] destination = new byte[image.getPixelData().length - 1];
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> QOIDecoder.decode(ByteBuffer.wrap(bytes), destination, 0, image.getWidth() * 4, 4));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> QOIDecoder.decode(ByteBuffer.wrap(bytes), new byte[image.getPixelData().length], 0, image.getWidth() * 4 - 1, 4));
+	}
+
+	@Test
+	void testTruncatedImage() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+
+		for (int length : new int[] {0, 10, bytes.length / 2, bytes.length - 1}) {
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decode(bytes, 0, length, 0));
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decode(ByteBuffer.wrap(bytes, 0, length).asReadOnlyBuffer(), 0));
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decode(new ByteArrayInputStream(bytes, 0, length), 0));
+		}
+	}
+
+	@Test
+	void testEncodeIntoArrayAndBuffer() throws Exception {
+		for (int channels : new int[] {3, 4}) {
+			// Random data is the worst case for size
+			byte[] data = new byte[64 * 32 * channels];
+			new Random("seed3".hashCode()).nextBytes(data);
+
+			QOIImage image = QOIUtil.createFromPixelData(data, 64, 32, channels);
+			byte[] expected = encodeToBytes(image);
+
+			int maxSize = QOIEncoder.maxEncodedSize(64, 32, channels);
+			Assertions.assertTrue(expected.length <= maxSize);
+
+			byte[] array = new byte[maxSize + 3];
+			Assertions.assertEquals(expected.length, QOIEncoder.encode(image, array, 3));
+			Assertions.assertArrayEquals(expected, Arrays.copyOfRange(array, 3, 3 + expected.length));
+
+			for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(maxSize + 3), ByteBuffer.allocateDirect(maxSize + 3)}) {
+				buffer.position(3);
+
+				Assertions.assertEquals(expected.length, QOIEncoder.encode(image, buffer));
+				Assertions.assertEquals(3 + expected.length, buffer.position());
+
+				byte[] actual = new byte[expected.length];
+				buffer.position(3);
+				buffer.get(actual);
+
+				Assertions.assertArrayEquals(expected, actual);
+			}
+
+			byte[] exact = new byte[expected.length];
+			Assertions.assertEquals(expected.length, QOIEncoder.encode(image, exact, 0));
+			Assertions.assertArrayEquals(expected, exact);
+
+			Assertions.assertThrows(BufferOverflowException.class, () -> QOIEncoder.encode(image, new byte[expected.length - 1], 0));
+			Assertions.assertThrows(BufferOverflowException.class, () -> QOIEncoder.encode(image, ByteBuffer.allocateDirect(expected.length - 1)));
+		}
+	}
+
+	@Test
+	void testPackedPixels() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+		QOIImage image = QOIDecoder.decode(bytes, 4);
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		byte[] pixelData = image.getPixelData();
+
+		for (QOIPixelPacking packing : QOIPixelPacking.values()) {
+			int[] pixels = new int[width * height];
+
+			Assertions.assertEquals(width, QOIDecoder.decode(ByteBuffer.wrap(bytes), pixels, 0, width, packing).getWidth());
+
+			for (int i = 0; i < pixels.length; i++) {
+				Assertions.assertEquals(packRGBA(pixelData, i * 4, packing), pixels[i]);
+			}
+
+			int[] fromStream = new int[pixels.length];
+			QOIDecoder.decode(new ByteArrayInputStream(bytes), fromStream, 0, width, packing);
+			Assertions.assertArrayEquals(pixels, fromStream);
+
+			// Encoded image must be identical to the one encoded from bytes
+			for (int channels : new int[] {3, 4}) {
+				byte[] expected = encodeToBytes(QOIDecoder.decode(bytes, channels));
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				QOIEncoder.encode(pixels, width, height, channels, QOIColorSpace.SRGB, packing, out);
+				Assertions.assertArrayEquals(expected, out.toByteArray());
+
+				byte[] array = new byte[QOIEncoder.maxEncodedSize(width, height, channels)];
+				int length = QOIEncoder.encode(pixels, width, height, channels, QOIColorSpace.SRGB, packing, array, 0);
+				Assertions.assertArrayEquals(expected, Arrays.copyOf(array, length));
+			}
+		}
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> QOIEncoder.encode(new int[width * height - 1], width, height, 4, QOIColorSpace.SRGB, QOIPixelPacking.RGBA, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	void testPackedPixelsWithStride() throws Exception {
+		byte[] bytes = readResource("/testcard.qoi");
+		QOIImage image = QOIDecoder.decode(bytes, 4);
+
+		int width = image.getWidth();
+		int offset = 3;
+		int stride = width + 5;
+
+		int[] pixels = new int[offset + stride * image.getHeight()];
+		Arrays.fill(pixels, 123);
+
+		QOIDecoder.decode(ByteBuffer.wrap(bytes), pixels, offset, stride, QOIPixelPacking.ARGB);
+
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < stride; x++) {
+				int actual = pixels[offset + y * stride + x];
+
+				if (x < width) {
+					Assertions.assertEquals(packRGBA(image.getPixelData(), (y * width + x) * 4, QOIPixelPacking.ARGB), actual);
+				} else {
+					Assertions.assertEquals(123, actual);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testRowReader() throws Exception {
+		byte[] bytes = readResource("/testcard.qoi");
+
+		for (int channels : new int[] {3, 4}) {
+			QOIImage expected = QOIDecoder.decode(bytes, channels);
+			int rowLength = expected.getWidth() * channels;
+
+			try (QOIRowReader reader = new QOIRowReader(new ByteArrayInputStream(bytes), channels)) {
+				Assertions.assertEquals(expected.getWidth(), reader.getHeader().getWidth());
+
+				for (int y = 0; y < expected.getHeight(); y++) {
+					Assertions.assertTrue(reader.hasNextRow());
+					Assertions.assertArrayEquals(Arrays.copyOfRange(expected.getPixelData(), y * rowLength, (y + 1) * rowLength), reader.readRow());
+				}
+
+				Assertions.assertFalse(reader.hasNextRow());
+				Assertions.assertThrows(IllegalStateException.class, reader::readRow);
+			}
+
+			// Rows are read into a caller's array from a channel
+			byte[] pixelData = new byte[expected.getPixelData().length];
+
+			try (QOIRowReader reader = new QOIRowReader(Channels.newChannel(new ByteArrayInputStream(bytes)), channels)) {
+				for (int y = 0; reader.hasNextRow(); y++) {
+					reader.readRow(pixelData, y * rowLength);
+				}
+			}
+
+			Assertions.assertArrayEquals(expected.getPixelData(), pixelData);
+		}
+
+		int[] expected = new int[256 * 256];
+		QOIDecoder.decode(ByteBuffer.wrap(bytes), expected, 0, 256, QOIPixelPacking.ARGB);
+
+		int[] pixels = new int[expected.length];
+
+		try (QOIRowReader reader = new QOIRowReader(new ByteArrayInputStream(bytes), 0)) {
+			Assertions.assertThrows(IndexOutOfBoundsException.class, () -> reader.readRow(pixels, pixels.length - 255, QOIPixelPacking.ARGB));
+
+			for (int y = 0; reader.hasNextRow(); y++) {
+				reader.readRow(pixels, y * 256, QOIPixelPacking.ARGB);
+			}
+		}
+
+		Assertions.assertArrayEquals(expected, pixels);
+
+		// Truncated image is detected on reading rows
+		try (QOIRowReader reader = new QOIRowReader(new ByteArrayInputStream(bytes, 0, bytes.length - 1), 0)) {
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> {
+				while (reader.hasNextRow()) {
+					reader.readRow();
+				}
+			});
+		}
+	}
+
+	@Test
+	void testRowWriter() throws Exception {
+		byte[] bytes = readResource("/testcard.qoi");
+
+		for (int channels : new int[] {3, 4}) {
+			QOIImage image = QOIDecoder.decode(bytes, channels);
+			byte[] expected = encodeToBytes(image);
+			byte[] pixelData = image.getPixelData();
+			int rowLength = image.getWidth() * channels;
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			try (QOIRowWriter writer = new QOIRowWriter(out, image.getWidth(), image.getHeight(), channels, QOIColorSpace.SRGB)) {
+				for (int y = 0; y < image.getHeight(); y++) {
+					writer.writeRow(pixelData, y * rowLength);
+				}
+			}
+
+			Assertions.assertArrayEquals(expected, out.toByteArray());
+
+			// Spans that are not aligned to rows
+			out.reset();
+
+			try (QOIRowWriter writer = new QOIRowWriter(Channels.newChannel(out), image.getWidth(), image.getHeight(), channels, QOIColorSpace.SRGB)) {
+				int pixelCount = image.getWidth() * image.getHeight();
+
+				for (int i = 0; i < pixelCount; ) {
+					int count = Math.min(pixelCount - i, 1 + i % 1000);
+
+					writer.writePixels(pixelData, i * channels, count);
+
+					i += count;
+				}
+
+				Assertions.assertEquals(pixelCount, writer.getPixelsWritten());
+				Assertions.assertThrows(IllegalStateException.class, () -> writer.writePixels(pixelData, 0, 1));
+			}
+
+			Assertions.assertArrayEquals(expected, out.toByteArray());
+		}
+
+		int[] pixels = new int[256 * 256];
+		QOIDecoder.decode(ByteBuffer.wrap(bytes), pixels, 0, 256, QOIPixelPacking.BGRA);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (QOIRowWriter writer = new QOIRowWriter(out, 256, 256, 4, QOIColorSpace.SRGB)) {
+			writer.writePixels(pixels, 0, 1000, QOIPixelPacking.BGRA);
+			writer.writePixels(pixels, 1000, pixels.length - 1000, QOIPixelPacking.BGRA);
+		}
+
+		Assertions.assertArrayEquals(bytes, out.toByteArray());
+
+		// Incomplete image is detected on close
+		QOIRowWriter writer = new QOIRowWriter(new ByteArrayOutputStream(), 256, 256, 4, QOIColorSpace.SRGB);
+		writer.writePixels(pixels, 0, 10, QOIPixelPacking.RGBA);
+
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> writer.writePixels(pixels, pixels.length - 5, 10, QOIPixelPacking.RGBA));
+		Assertions.assertThrows(IllegalStateException.class, writer::close);
+	}
+
+	@Test
+	void testParallelEncoder() throws Exception {
+		int width = 1000;
+		int height = 1000;
+
+		// Few colors, including transparent black, produce runs and index hits across segment boundaries
+		int[] palette = {0x00000000, 0x000000FF, 0xFF8000FF, 0xFF8101FF, 0x10203040, 0x11213140};
+		Random random = new Random("seed4".hashCode());
+
+		for (int channels : new int[] {3, 4}) {
+			byte[] data = new byte[width * height * channels];
+
+			for (int i = 0; i < data.length; ) {
+				int color = palette[random.nextInt(palette.length)];
+
+				for (int n = random.nextInt(100); n >= 0 && i < data.length; n--, i += channels) {
+					for (int c = 0; c < channels; c++) {
+						data[i + c] = (byte) (color >>> (24 - c * 8));
+					}
+				}
+			}
+
+			QOIImage image = QOIUtil.createFromPixelData(data, width, height, channels);
+			int sequentialSize = encodeToBytes(image).length;
+
+			ExecutorService executor = Executors.newFixedThreadPool(3);
+
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				QOIEncoder.encodeParallel(image, out, executor);
+
+				byte[] encoded = out.toByteArray();
+				Assertions.assertEquals(image, QOIDecoder.decode(encoded, channels));
+				Assertions.assertTrue(encoded.length < sequentialSize * 1.01, "Expected size close to sequential encoder output");
+			} finally {
+				executor.shutdown();
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			QOIEncoder.encodeParallel(image, out);
+			Assertions.assertEquals(image, QOIDecoder.decode(out.toByteArray(), channels));
+		}
+
+		// Small images are encoded the usual way
+		QOIImage testcard = QOIDecoder.decode(readResource("/testcard.qoi"), 0);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QOIEncoder.encodeParallel(testcard, out);
+		Assertions.assertArrayEquals(encodeToBytes(testcard), out.toByteArray());
+	}
+
+	@Test
+	void testCheckpointIndex() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+
+		for (int channels : new int[] {3, 4}) {
+			QOIImage image = QOIDecoder.decode(bytes, channels);
+			int rowLength = image.getWidth() * channels;
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			QOICheckpointIndex index = QOIEncoder.encodeWithCheckpoints(image, out, 16);
+			int imageSize = out.size();
+
+			Assertions.assertEquals((image.getHeight() - 1) / 16, index.getCheckpointCount());
+			Assertions.assertTrue(imageSize <= encodeToBytes(image).length + index.getCheckpointCount());
+
+			// Index is stored as trailing data, which regular decoders ignore
+			index.write(out);
+			byte[] encoded = out.toByteArray();
+			Assertions.assertEquals(imageSize + index.getSerializedSize(), encoded.length);
+			Assertions.assertEquals(image, QOIDecoder.decode(encoded, channels));
+
+			ByteBuffer buffer = ByteBuffer.wrap(encoded);
+			QOICheckpointIndex found = QOICheckpointIndex.find(buffer);
+			Assertions.assertNotNull(found);
+
+			ExecutorService executor = Executors.newFixedThreadPool(3);
+
+			try {
+				Assertions.assertEquals(image, QOIDecoder.decodeParallel(buffer, found, channels, executor));
+			} finally {
+				executor.shutdown();
+			}
+
+			Assertions.assertEquals(0, buffer.position());
+
+			for (int[] range : new int[][] {{0, 1}, {5, 40}, {16, 16}, {100, 1}, {image.getHeight() - 20, 20}}) {
+				QOIImage rows = QOIDecoder.decodeRows(buffer, found, range[0], range[1], channels);
+
+				Assertions.assertEquals(range[1], rows.getHeight());
+				Assertions.assertArrayEquals(Arrays.copyOfRange(image.getPixelData(), range[0] * rowLength, (range[0] + range[1]) * rowLength), rows.getPixelData());
+				Assertions.assertEquals(rows, QOIDecoder.decodeRows(ByteBuffer.wrap(bytes), null, range[0], range[1], channels));
+			}
+
+			Assertions.assertThrows(IndexOutOfBoundsException.class, () -> QOIDecoder.decodeRows(buffer, found, image.getHeight() - 1, 2, channels));
+
+			// Sidecar index
+			ByteArrayOutputStream sidecar = new ByteArrayOutputStream();
+			index.write(sidecar);
+			QOICheckpointIndex fromSidecar = QOICheckpointIndex.read(new ByteArrayInputStream(sidecar.toByteArray()));
+			Assertions.assertEquals(image, QOIDecoder.decodeParallel(ByteBuffer.wrap(encoded, 0, imageSize), fromSidecar, channels));
+
+			// Index of another image is rejected
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decodeParallel(ByteBuffer.wrap(readResource("/testcard.qoi")), fromSidecar, channels));
+		}
+
+		// Index of another image with the same dimensions is rejected. Here a single pixel right before the first checkpoint differs,
+		// chunk offsets and the previous pixel at the checkpoint are the same, and only the index differs
+		byte[] noise = new byte[64 * 64 * 3];
+		new Random(42).nextBytes(noise);
+
+		byte[] edited = noise.clone();
+		edited[(16 * 64 - 2) * 3] += 100;
+
+		ByteArrayOutputStream original = new ByteArrayOutputStream();
+		QOICheckpointIndex originalIndex = QOIEncoder.encodeWithCheckpoints(QOIUtil.createFromPixelData(noise, 64, 64, 3), original, 16);
+
+		ByteArrayOutputStream changed = new ByteArrayOutputStream();
+		QOICheckpointIndex changedIndex = QOIEncoder.encodeWithCheckpoints(QOIUtil.createFromPixelData(edited, 64, 64, 3), changed, 16);
+
+		Assertions.assertEquals(original.size(), changed.size());
+
+		for (QOICheckpointIndex index : new QOICheckpointIndex[] {originalIndex, changedIndex}) {
+			byte[] encoded = (index == originalIndex ? changed : original).toByteArray();
+
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decodeParallel(ByteBuffer.wrap(encoded), index, 3));
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decodeRows(ByteBuffer.wrap(encoded), index, 0, 16, 3));
+		}
+
+		Assertions.assertArrayEquals(edited, QOIDecoder.decodeParallel(ByteBuffer.wrap(changed.toByteArray()), changedIndex, 3).getPixelData());
+
+		// Decoder stores the initial pixel into its index after a run of it at the start of the image, the encoder does not
+		byte[] blackFirst = noise.clone();
+		Arrays.fill(blackFirst, 0, 20 * 64 * 3, (byte) 0);
+
+		ByteArrayOutputStream blackOut = new ByteArrayOutputStream();
+		QOICheckpointIndex blackIndex = QOIEncoder.encodeWithCheckpoints(QOIUtil.createFromPixelData(blackFirst, 64, 64, 3), blackOut, 16);
+
+		Assertions.assertArrayEquals(blackFirst, QOIDecoder.decodeParallel(ByteBuffer.wrap(blackOut.toByteArray()), blackIndex, 3).getPixelData());
+
+		// Files without the index are decoded as usual
+		Assertions.assertNull(QOICheckpointIndex.find(ByteBuffer.wrap(bytes)));
+
+		Path path = Files.createTempFile("qoi-java", ".qoi");
+
+		try {
+			Files.write(path, bytes);
+
+			Assertions.assertEquals(QOIDecoder.decode(bytes, 0), QOIDecoder.decodeParallel(path, 0));
+
+			// Failing bands are waited for, so the mapping is released and the file can be replaced
+			try (OutputStream out = Files.newOutputStream(path)) {
+				changed.writeTo(out);
+				originalIndex.write(out);
+			}
+
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decodeParallel(path, 3));
+
+			Files.write(path, bytes);
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	void testContexts() throws Exception {
+		QOIDecoderContext decoder = new QOIDecoderContext();
+		QOIEncoderContext encoder = QOIEncoderContext.forCurrentThread();
+
+		Assertions.assertSame(encoder, QOIEncoderContext.forCurrentThread());
+
+		for (String path : new String[] {"/dice.qoi", "/testcard.qoi", "/orange.qoi", "/dice.qoi"}) {
+			byte[] bytes = readResource(path);
+			QOIImage expected = QOIDecoder.decode(bytes, 0);
+
+			// State of the previous image must not leak into the next one, whatever the source is
+			Assertions.assertEquals(expected, decoder.decode(new ByteArrayInputStream(bytes), 0));
+			Assertions.assertEquals(expected, decoder.decode(bytes, 0));
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+			direct.put(bytes).flip();
+
+			Assertions.assertEquals(expected, decoder.decode(direct, 0));
+			Assertions.assertFalse(direct.hasRemaining());
+
+			int[] pixels = new int[expected.getWidth() * expected.getHeight()];
+			int[] expectedPixels = new int[pixels.length];
+
+			QOIDecoder.decode(ByteBuffer.wrap(bytes), expectedPixels, 0, expected.getWidth(), QOIPixelPacking.ARGB);
+			decoder.decode(new ByteArrayInputStream(bytes), pixels, 0, expected.getWidth(), QOIPixelPacking.ARGB);
+
+			Assertions.assertArrayEquals(expectedPixels, pixels);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			encoder.encode(expected, out);
+
+			Assertions.assertArrayEquals(encodeToBytes(expected), out.toByteArray());
+
+			byte[] array = new byte[QOIEncoder.maxEncodedSize(expected.getWidth(), expected.getHeight(), expected.getChannels())];
+
+			Assertions.assertEquals(out.size(), encoder.encode(expected, array, 0));
+			Assertions.assertArrayEquals(out.toByteArray(), Arrays.copyOf(array, out.size()));
+
+			// Chunks near the end of an exactly sized array go through the tail buffer
+			byte[] exact = new byte[out.size()];
+
+			Assertions.assertEquals(out.size(), encoder.encode(expected, exact, 0));
+			Assertions.assertArrayEquals(out.toByteArray(), exact);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(array.length);
+
+			Assertions.assertEquals(out.size(), encoder.encode(expected, buffer));
+
+			// A failed image does not break the context
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> decoder.decode(Arrays.copyOf(bytes, bytes.length / 2), 0));
+			Assertions.assertThrows(BufferOverflowException.class, () -> encoder.encode(expected, new byte[20], 0));
+		}
+	}
+
+	@Test
+	void testStatistics() throws Exception {
+		for (String path : new String[] {"/dice.qoi", "/testcard.qoi"}) {
+			byte[] bytes = readResource(path);
+			QOIImage image = QOIDecoder.decode(bytes, 0);
+			int pixelCount = image.getWidth() * image.getHeight();
+
+			QOIStatistics encoded = new QOIStatistics();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			QOIEncoder.encode(image, out, encoded);
+
+			Assertions.assertArrayEquals(bytes, out.toByteArray());
+			Assertions.assertEquals(pixelCount, encoded.getPixelCount());
+			Assertions.assertEquals(bytes.length - QOICodec.QOI_HEADER_SIZE - QOICodec.QOI_PADDING.length, encoded.getChunkSize());
+			Assertions.assertTrue(encoded.getIndexHitRate() > 0 && encoded.getIndexHitRate() < 1);
+
+			// A stream that returns few bytes per read makes the decoder refill its buffer often
+			QOIStatistics decoded = new QOIStatistics();
+			InputStream slowStream = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+				@Override
+				public int read(byte @NonNull [] b, int off, int len) throws IOException {
+					return super.read(b, off, Math.min(len, 7));
+				}
+			};
+
+			Assertions.assertEquals(image, QOIDecoder.decode(slowStream, 0, decoded));
+			Assertions.assertEquals(encoded.toString(), decoded.toString());
+
+			QOIDecoderContext context = new QOIDecoderContext();
+			QOIStatistics fromBuffer = new QOIStatistics();
+			context.setStatistics(fromBuffer);
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+			direct.put(bytes).flip();
+
+			context.decode(direct, 0);
+			context.decode(bytes, 0);
+
+			decoded.add(decoded);
+
+			Assertions.assertEquals(decoded.toString(), fromBuffer.toString());
+
+			fromBuffer.reset();
+
+			Assertions.assertEquals(0, fromBuffer.getChunkCount());
+			Assertions.assertEquals(0, fromBuffer.getIndexHitRate());
+		}
+	}
+
+	@Test
+	void testNearLossless() throws Exception {
+		// Smooth gradient with small noise, where lossless encoding uses many QOI_OP_RGB chunks
+		int width = 256;
+		int height = 64;
+		byte[] noisy = new byte[width * height * 4];
+		Random random = new Random("seed5".hashCode());
+
+		for (int i = 0; i < width * height; i++) {
+			int x = i % width;
+
+			noisy[i * 4] = (byte) Math.min(255, x + random.nextInt(6));
+			noisy[i * 4 + 1] = (byte) Math.min(255, x / 2 + random.nextInt(6));
+			noisy[i * 4 + 2] = (byte) (255 - x);
+			noisy[i * 4 + 3] = (byte) (x < 128 ? 255 : 128);
+		}
+
+		QOIImage[] images = {
+				QOIUtil.createFromPixelData(noisy, width, height, 4),
+				QOIDecoder.decode(readResource("/dice.qoi"), 4),
+				QOIDecoder.decode(readResource("/testcard.qoi"), 3)
+		};
+
+		for (QOIImage image : images) {
+			byte[] lossless = encodeToBytes(image);
+			int previousSize = lossless.length;
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			QOIEncoder.encodeNearLossless(image, out, 0);
+			Assertions.assertArrayEquals(lossless, out.toByteArray());
+
+			for (int maxError : new int[] {1, 2, 4, 8}) {
+				out.reset();
+				QOIEncoder.encodeNearLossless(image, out, maxError);
+				byte[] encoded = out.toByteArray();
+
+				QOIImage decoded = QOIDecoder.decode(encoded, image.getChannels());
+				byte[] expected = image.getPixelData();
+				byte[] actual = decoded.getPixelData();
+
+				for (int i = 0; i < expected.length; i++) {
+					int error = Math.abs((expected[i] & 0xFF) - (actual[i] & 0xFF));
+
+					if (image.getChannels() == 4 && i % 4 == 3) {
+						Assertions.assertEquals(0, error, "Alpha must be exact");
+					} else {
+						Assertions.assertTrue(error <= maxError, "Error " + error + " at " + i + " exceeds " + maxError);
+					}
+				}
+
+				Assertions.assertTrue(encoded.length <= previousSize, "Larger error must not increase size");
+
+				previousSize = encoded.length;
+
+				QOIEncoderContext context = new QOIEncoderContext();
+				context.setMaxError(maxError);
+				Assertions.assertEquals(maxError, context.getMaxError());
+
+				byte[] fromContext = new byte[QOIEncoder.maxEncodedSize(image.getWidth(), image.getHeight(), image.getChannels())];
+				Assertions.assertArrayEquals(encoded, Arrays.copyOf(fromContext, context.encode(image, fromContext, 0)));
+			}
+
+			Assertions.assertTrue(previousSize < lossless.length);
+		}
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> QOIEncoder.encodeNearLossless(images[0], new ByteArrayOutputStream(), 256));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new QOIEncoderContext().setMaxError(-1));
+	}
+
+	@Test
+	void testPixelFormats() throws Exception {
+		for (String path : new String[] {"/dice.qoi", "/testcard.qoi"}) {
+			byte[] bytes = readResource(path);
+			QOIImage rgba = QOIDecoder.decode(bytes, 4);
+			int pixelCount = rgba.getWidth() * rgba.getHeight();
+
+			for (QOIPixelFormat format : QOIPixelFormat.values()) {
+				// Expected bytes are built by swizzling RGBA pixels
+				byte[] expected = new byte[pixelCount * format.getChannels()];
+				String order = format.name();
+
+				for (int i = 0; i < pixelCount; i++) {
+					for (int c = 0; c < order.length(); c++) {
+						expected[i * order.length() + c] = rgba.getPixelData()[i * 4 + "RGBA".indexOf(order.charAt(c))];
+					}
+				}
+
+				byte[] fromStream = new byte[expected.length];
+				QOIDecoder.decode(new ByteArrayInputStream(bytes), fromStream, 0, rgba.getWidth() * format.getChannels(), format);
+				Assertions.assertArrayEquals(expected, fromStream, format.name());
+
+				ByteBuffer direct = ByteBuffer.allocateDirect(expected.length);
+				QOIDecoder.decode(ByteBuffer.wrap(bytes), direct, 0, rgba.getWidth() * format.getChannels(), format);
+				byte[] fromDirect = new byte[expected.length];
+				direct.get(fromDirect);
+				Assertions.assertArrayEquals(expected, fromDirect, format.name());
+
+				QOIImage stored = format.getChannels() == 3 ? QOIUtil.removeAlpha(rgba) : rgba;
+				byte[] encoded = encodeToBytes(stored);
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				QOIEncoder.encode(expected, rgba.getWidth(), rgba.getHeight(), format, rgba.getColorSpace(), out);
+				Assertions.assertArrayEquals(encoded, out.toByteArray(), format.name());
+
+				ByteBuffer buffer = ByteBuffer.allocate(QOIEncoder.maxEncodedSize(rgba.getWidth(), rgba.getHeight(), 4));
+				QOIEncoder.encode(expected, rgba.getWidth(), rgba.getHeight(), format, rgba.getColorSpace(), buffer);
+				Assertions.assertArrayEquals(encoded, Arrays.copyOf(buffer.array(), buffer.position()), format.name());
+			}
+		}
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> QOIEncoder.encode(new byte[11], 2, 2, QOIPixelFormat.BGR, QOIColorSpace.SRGB, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	void testRGBWordAccessAtArrayEnds() throws Exception {
+		// On Java 9+, RGB pixels and chunks are accessed as 32-bit words together with the byte after them.
+		// Noise makes almost every chunk QOI_OP_RGB, and exactly sized arrays leave no spare byte at the end
+		Random random = new Random(123);
+
+		for (int[] size : new int[][] {{1, 1}, {2, 1}, {1, 2}, {3, 5}, {17, 3}}) {
+			int width = size[0];
+			int height = size[1];
+
+			byte[] pixelData = new byte[width * height * 3];
+			random.nextBytes(pixelData);
+
+			QOIImage image = QOIUtil.createFromPixelData(pixelData, width, height, 3);
+			byte[] encoded = encodeToBytes(image);
+			String name = width + " x " + height;
+
+			// Encoding into an exactly sized array
+			for (int offset : new int[] {0, 3}) {
+				byte[] destination = new byte[offset + encoded.length];
+				Assertions.assertEquals(encoded.length, QOIEncoder.encode(image, destination, offset), name);
+				Assertions.assertArrayEquals(encoded, Arrays.copyOfRange(destination, offset, destination.length), name);
+			}
+
+			// Decoding from an exactly sized array, and from a truncated one
+			Assertions.assertArrayEquals(pixelData, QOIDecoder.decode(encoded, 3).getPixelData(), name);
+
+			byte[] withOffset = new byte[1 + encoded.length];
+			System.arraycopy(encoded, 0, withOffset, 1, encoded.length);
+			Assertions.assertArrayEquals(pixelData, QOIDecoder.decode(withOffset, 1, encoded.length, 3).getPixelData(), name);
+
+			for (int length = 14; length < encoded.length; length++) {
+				int truncated = length;
+				Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decode(encoded, 0, truncated, 3), name);
+			}
+
+			for (QOIPixelFormat format : new QOIPixelFormat[] {QOIPixelFormat.RGB, QOIPixelFormat.BGR}) {
+				byte[] expected = pixelData.clone();
+
+				if (format == QOIPixelFormat.BGR) {
+					for (int i = 0; i < expected.length; i += 3) {
+						expected[i] = pixelData[i + 2];
+						expected[i + 2] = pixelData[i];
+					}
+				}
+
+				// Encoding from an exactly sized array
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				QOIEncoder.encode(expected, width, height, format, QOIColorSpace.SRGB, out);
+				Assertions.assertArrayEquals(encoded, out.toByteArray(), name + " " + format);
+
+				// Decoding into an array where the last row ends exactly at the end
+				int rowLength = width * 3;
+				int offset = 5;
+				int stride = rowLength + 1;
+				byte[] destination = new byte[offset + stride * (height - 1) + rowLength];
+				Arrays.fill(destination, (byte) 123);
+
+				QOIDecoder.decode(ByteBuffer.wrap(encoded), destination, offset, stride, format);
+
+				for (int y = 0; y < height; y++) {
+					int rowStart = offset + y * stride;
+
+					Assertions.assertArrayEquals(
+							Arrays.copyOfRange(expected, y * rowLength, (y + 1) * rowLength),
+							Arrays.copyOfRange(destination, rowStart, rowStart + rowLength),
+							name + " " + format
+					);
+
+					if (y < height - 1) {
+						// The single byte between rows is right after the last pixel of the row
+						Assertions.assertEquals(123, destination[rowStart + rowLength], name + " " + format);
+					}
+				}
+
+				for (int i = 0; i < offset; i++) {
+					Assertions.assertEquals(123, destination[i], name + " " + format);
+				}
+			}
+		}
+	}
+
+	@Test
+	void testColorTransforms() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+		QOIImage image = QOIDecoder.decode(bytes, 4);
+		byte[] pixelData = image.getPixelData();
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		byte[] premultiplied = new byte[pixelData.length];
+		QOIDecoder.decode(ByteBuffer.wrap(bytes), premultiplied, 0, width * 4, QOIPixelFormat.RGBA, QOIColorTransform.PREMULTIPLIED);
+
+		for (int i = 0; i < pixelData.length; i += 4) {
+			int a = pixelData[i + 3] & 0xFF;
+
+			for (int c = 0; c < 3; c++) {
+				Assertions.assertEquals(Math.round((pixelData[i + c] & 0xFF) * a / 255.0F), premultiplied[i + c] & 0xFF);
+			}
+
+			Assertions.assertEquals(pixelData[i + 3], premultiplied[i + 3]);
+		}
+
+		// Un-premultiplying restores opaque pixels exactly and translucent ones approximately
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		QOIEncoder.encode(premultiplied, width, height, QOIPixelFormat.RGBA, image.getColorSpace(), QOIColorTransform.PREMULTIPLIED, out);
+		byte[] restored = QOIDecoder.decode(out.toByteArray(), 4).getPixelData();
+
+		for (int i = 0; i < pixelData.length; i += 4) {
+			int a = pixelData[i + 3] & 0xFF;
+
+			for (int c = 0; c < 3 && a > 0; c++) {
+				Assertions.assertEquals(pixelData[i + c] & 0xFF, restored[i + c] & 0xFF, 255.0 / a);
+			}
+
+			Assertions.assertEquals(pixelData[i + 3], restored[i + 3]);
+		}
+
+		// Float linear values round-trip exactly
+		float[] linear = new float[width * height * 4];
+		QOIHeader header = QOIDecoder.decode(new ByteArrayInputStream(bytes), linear, 0, width * 4, QOIColorTransform.LINEAR);
+		Assertions.assertEquals(QOIColorSpace.SRGB, header.getColorSpace());
+
+		for (int i = 0; i < pixelData.length; i++) {
+			double value = (pixelData[i] & 0xFF) / 255.0;
+
+			if (i % 4 != 3) {
+				value = value <= 0.04045 ? value / 12.92 : Math.pow((value + 0.055) / 1.055, 2.4);
+			}
+
+			Assertions.assertEquals(value, linear[i], 1e-6);
+		}
+
+		out.reset();
+		QOIEncoder.encode(linear, width, height, 4, QOIColorSpace.SRGB, QOIColorTransform.LINEAR, out);
+		Assertions.assertArrayEquals(pixelData, QOIDecoder.decode(out.toByteArray(), 4).getPixelData());
+
+		out.reset();
+		QOIDecoder.decode(ByteBuffer.wrap(bytes), linear, 0, width * 4, QOIColorTransform.LINEAR_PREMULTIPLIED);
+		QOIEncoder.encode(linear, width, height, 4, QOIColorSpace.SRGB, QOIColorTransform.LINEAR_PREMULTIPLIED, out);
+		byte[] fromPremultiplied = QOIDecoder.decode(out.toByteArray(), 4).getPixelData();
+
+		for (int i = 0; i < pixelData.length; i += 4) {
+			if (pixelData[i + 3] == (byte) 0xFF) {
+				Assertions.assertArrayEquals(Arrays.copyOfRange(pixelData, i, i + 4), Arrays.copyOfRange(fromPremultiplied, i, i + 4));
+			}
+		}
+
+		// Linear images already store linear values
+		QOIImage linearImage = QOIUtil.createFromPixelData(pixelData, width, height, 4, QOIColorSpace.LINEAR);
+		byte[] fromLinear = new byte[pixelData.length];
+		QOIDecoder.decode(ByteBuffer.wrap(encodeToBytes(linearImage)), fromLinear, 0, width * 4, QOIPixelFormat.RGBA, QOIColorTransform.LINEAR);
+		Assertions.assertArrayEquals(pixelData, fromLinear);
+	}
+
+	@Test
+	void testDecodeDownscaled() throws Exception {
+		for (String path : new String[] {"/dice.qoi", "/testcard.qoi"}) {
+			byte[] bytes = readResource(path);
+			QOIImage full = QOIDecoder.decode(bytes, 4);
+			int width = full.getWidth();
+			int height = full.getHeight();
+
+			for (int factor : new int[] {1, 2, 3, 8, 1000}) {
+				QOIImage scaled = QOIDecoder.decodeDownscaled(new ByteArrayInputStream(bytes), factor, 0);
+
+				Assertions.assertEquals((width + factor - 1) / factor, scaled.getWidth());
+				Assertions.assertEquals((height + factor - 1) / factor, scaled.getHeight());
+				Assertions.assertEquals(full.getChannels(), scaled.getChannels());
+				Assertions.assertEquals(full.getColorSpace(), scaled.getColorSpace());
+
+				QOIImage rgba = QOIDecoder.decodeDownscaled(ByteBuffer.wrap(bytes), factor, 4);
+				byte[] expected = new byte[rgba.getPixelData().length];
+
+				// Straightforward alpha-weighted box filter over the fully decoded image
+				for (int ty = 0; ty < rgba.getHeight(); ty++) {
+					for (int tx = 0; tx < rgba.getWidth(); tx++) {
+						long[] sums = new long[4];
+						int count = 0;
+
+						for (int y = ty * factor; y < Math.min(height, ty * factor + factor); y++) {
+							for (int x = tx * factor; x < Math.min(width, tx * factor + factor); x++) {
+								int i = (y * width + x) * 4;
+								int a = full.getPixelData()[i + 3] & 0xFF;
+
+								for (int c = 0; c < 3; c++) {
+									sums[c] += (full.getPixelData()[i + c] & 0xFF) * a;
+								}
+
+								sums[3] += a;
+								count++;
+							}
+						}
+
+						int t = (ty * rgba.getWidth() + tx) * 4;
+
+						for (int c = 0; c < 3 && sums[3] > 0; c++) {
+							expected[t + c] = (byte) ((sums[c] + sums[3] / 2) / sums[3]);
+						}
+
+						expected[t + 3] = (byte) ((sums[3] + count / 2) / count);
+					}
+				}
+
+				Assertions.assertArrayEquals(expected, rgba.getPixelData(), path + " / " + factor);
+			}
+		}
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> QOIDecoder.decodeDownscaled(new ByteArrayInputStream(new byte[0]), 0, 4));
+	}
+
+	@Test
+	void testDecodeRegion() throws Exception {
+		byte[] bytes = readResource("/testcard.qoi");
+		QOIImage full = QOIDecoder.decode(bytes, 0);
+		int width = full.getWidth();
+		int height = full.getHeight();
+		int channels = full.getChannels();
+
+		ByteArrayOutputStream indexed = new ByteArrayOutputStream();
+		QOICheckpointIndex index = QOIEncoder.encodeWithCheckpoints(full, indexed, 16);
+
+		int[][] regions = {{0, 0, width, height}, {0, 0, width, 1}, {10, 20, 30, 40}, {width - 7, height - 5, 7, 5}, {5, 100, 1, 1}};
+
+		for (int[] region : regions) {
+			int x = region[0];
+			int y = region[1];
+			int w = region[2];
+			int h = region[3];
+
+			byte[] expected = new byte[w * h * channels];
+
+			for (int row = 0; row < h; row++) {
+				System.arraycopy(full.getPixelData(), ((y + row) * width + x) * channels, expected, row * w * channels, w * channels);
+			}
+
+			QOIImage fromStream = QOIDecoder.decodeRegion(new ByteArrayInputStream(bytes), x, y, w, h, 0);
+			Assertions.assertEquals(w, fromStream.getWidth());
+			Assertions.assertEquals(h, fromStream.getHeight());
+			Assertions.assertArrayEquals(expected, fromStream.getPixelData());
+
+			Assertions.assertArrayEquals(expected, QOIDecoder.decodeRegion(ByteBuffer.wrap(bytes), null, x, y, w, h, 0).getPixelData());
+			Assertions.assertArrayEquals(expected, QOIDecoder.decodeRegion(ByteBuffer.wrap(indexed.toByteArray()), index, x, y, w, h, 0).getPixelData());
+		}
+
+		// Data after the region is not read, so a truncated image still gives its top rows
+		byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+		QOIImage top = QOIDecoder.decodeRegion(new ByteArrayInputStream(truncated), 0, 0, width, 2, 4);
+		Assertions.assertArrayEquals(Arrays.copyOf(QOIDecoder.decode(bytes, 4).getPixelData(), width * 2 * 4), top.getPixelData());
+
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> QOIDecoder.decodeRegion(new ByteArrayInputStream(bytes), 1, 0, width, 1, 0));
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> QOIDecoder.decodeRegion(ByteBuffer.wrap(bytes), null, 0, 0, 1, 0, 0));
+	}
+
+	@Test
+	void testLargeImage() throws Exception {
+		for (String path : new String[] {"/dice.qoi", "/testcard.qoi"}) {
+			byte[] bytes = readResource(path);
+			QOIImage image = QOIDecoder.decode(bytes, 0);
+			int channels = image.getChannels();
+			byte[] pixelData = image.getPixelData();
+
+			// Small segments that do not align with rows
+			for (int segmentPixels : new int[] {QOILargeImage.DEFAULT_SEGMENT_PIXELS, 1000, 1}) {
+				QOILargeImage large = QOIDecoder.decodeLarge(new ArrayChunkDecoder(new ByteArrayInputStream(bytes), true), 0, segmentPixels, false);
+
+				Assertions.assertEquals(image.getWidth(), large.getWidth());
+				Assertions.assertEquals(image.getHeight(), large.getHeight());
+				Assertions.assertEquals(channels, large.getChannels());
+				Assertions.assertEquals(image.getColorSpace(), large.getColorSpace());
+				Assertions.assertEquals(pixelData.length, large.getPixelDataSize());
+
+				ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+
+				for (int i = 0; i < large.getSegmentCount(); i++) {
+					ByteBuffer segment = large.getSegment(i);
+					byte[] segmentData = new byte[segment.remaining()];
+					segment.get(segmentData);
+					concatenated.write(segmentData);
+				}
+
+				Assertions.assertArrayEquals(pixelData, concatenated.toByteArray());
+
+				QOILargeImage copy = new QOILargeImage(large.getWidth(), large.getHeight(), channels, large.getColorSpace(), segmentPixels, segmentPixels == 1000);
+
+				for (long i = 0; i < large.getPixelCount(); i++) {
+					copy.setPixel(i, large.getPixel(i));
+				}
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				QOIEncoder.encode(copy, out);
+				Assertions.assertArrayEquals(encodeToBytes(image), out.toByteArray());
+			}
+		}
+
+		QOILargeImage image = QOIUtil.createLargeImage(3, 2, 4, QOIColorSpace.LINEAR);
+		image.setPixel(5, 0x11223344);
+		Assertions.assertEquals(0x11223344, image.getPixel(5));
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> image.getPixel(6));
+
+		Path file = Files.createTempFile("qoi-java", ".qoi");
+
+		try {
+			QOIUtil.writeFile(image, file);
+			QOILargeImage read = QOIUtil.readLargeFile(file, 0);
+			Assertions.assertEquals(0x11223344, read.getPixel(5));
+			Assertions.assertEquals(0, read.getPixel(0));
+			Assertions.assertEquals(QOIColorSpace.LINEAR, read.getColorSpace());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testDirectImage() throws Exception {
+		byte[] bytes = readResource("/dice.qoi");
+		QOIImage image = QOIDecoder.decode(bytes, 0);
+
+		try (QOILargeImage direct = QOIDecoder.decodeDirect(new ByteArrayInputStream(bytes), 0)) {
+			Assertions.assertTrue(direct.isDirect());
+			Assertions.assertEquals(1, direct.getSegmentCount());
+
+			ByteBuffer segment = direct.getSegment(0);
+			Assertions.assertTrue(segment.isDirect());
+
+			byte[] pixelData = new byte[segment.remaining()];
+			segment.get(pixelData);
+			Assertions.assertArrayEquals(image.getPixelData(), pixelData);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			QOIEncoder.encode(direct, out);
+			Assertions.assertArrayEquals(encodeToBytes(image), out.toByteArray());
+
+			direct.close();
+			Assertions.assertTrue(direct.isClosed());
+			Assertions.assertThrows(IllegalStateException.class, () -> direct.getPixel(0));
+			Assertions.assertThrows(IllegalStateException.class, () -> QOIEncoder.encode(direct, new ByteArrayOutputStream()));
+		}
+
+		ByteBuffer source = ByteBuffer.allocateDirect(bytes.length);
+		source.put(bytes).flip();
+
+		try (QOILargeImage direct = QOIDecoder.decodeDirect(source, 3)) {
+			Assertions.assertEquals(bytes.length, source.position());
+			Assertions.assertEquals(3, direct.getChannels());
+			Assertions.assertEquals(QOIUtil.removeAlpha(image).getPixelData().length, direct.getPixelDataSize());
+		}
+
+		try (QOILargeImage created = QOIUtil.createDirectImage(2, 2, 4, QOIColorSpace.SRGB)) {
+			created.setPixel(3, 0x01020304);
+			Assertions.assertEquals(0x01020304, created.getPixel(3));
+		}
+
+		Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIDecoder.decodeDirect(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length / 2)), 0));
+	}
+
+	@Test
+	void testTranscoder() throws Exception {
+		QOIImage dice = QOIDecoder.decode(readResource("/dice.qoi"), 4);
+		QOIImage testcard = QOIUtil.removeAlpha(QOIDecoder.decode(readResource("/testcard.qoi"), 4));
+
+		Path root = Files.createTempDirectory("qoi-java");
+
+		Path source = root.resolve("source");
+		Path raw = root.resolve("raw");
+		Path target = root.resolve("target");
+
+		try {
+			Files.createDirectories(source.resolve("nested"));
+
+			QOIUtil.writeImage(dice, source.resolve("dice.qoi").toFile());
+			QOIUtil.writeImage(testcard, source.resolve("nested/testcard.qoi").toFile());
+			Files.write(source.resolve("ignored.txt"), new byte[1]);
+
+			// Memory limit is smaller than any image, so each image is transcoded alone
+			QOITranscoder.Statistics decoded = QOITranscoder.transcode(QOITranscoder.Mode.DECODE, source, raw, 2, 1);
+
+			Assertions.assertEquals(2, decoded.files.sum());
+			Assertions.assertEquals(0, decoded.failed.sum());
+			Assertions.assertTrue(Files.exists(raw.resolve("dice.pam")));
+			Assertions.assertTrue(Files.exists(raw.resolve("nested/testcard.ppm")));
+
+			QOITranscoder.Statistics encoded = QOITranscoder.transcode(QOITranscoder.Mode.ENCODE, raw, target, 2, 1 << 30);
+
+			Assertions.assertEquals(2, encoded.files.sum());
+			Assertions.assertEquals(0, encoded.failed.sum());
+			Assertions.assertEquals(decoded.pixelDataSize.sum(), encoded.pixelDataSize.sum());
+			Assertions.assertEquals(decoded.qoiSize.sum(), encoded.qoiSize.sum());
+
+			Assertions.assertEquals(dice, QOIDecoder.decode(target.resolve("dice.qoi"), 0));
+			Assertions.assertEquals(testcard, QOIDecoder.decode(target.resolve("nested/testcard.qoi"), 0));
+
+			// Broken files are reported without stopping the batch
+			Files.write(raw.resolve("broken.pam"), "P7\nWIDTH 1\nHEIGHT 1\nDEPTH 2\nMAXVAL 255\nENDHDR\n".getBytes(StandardCharsets.US_ASCII));
+
+			encoded = QOITranscoder.transcode(QOITranscoder.Mode.ENCODE, raw, target, 1, 1 << 30);
+
+			Assertions.assertEquals(2, encoded.files.sum());
+			Assertions.assertEquals(1, encoded.failed.sum());
+		} finally {
+			try (Stream<Path> files = Files.walk(root)) {
+				for (Path path : files.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
 	private void testImage(int channels, @NonNull String imagePath) throws Exception {
 		InputStream in = Objects.requireNonNull(getClass().getResourceAsStream(imagePath), "Test image " + imagePath + " not found");
 
@@ -202,6 +1342,32 @@ class QOITest {
 		return out.toByteArray();
 	}
 
+	private byte[] readResource(@NonNull String path) throws IOException {
+		try (InputStream in = Objects.requireNonNull(getClass().getResourceAsStream(path), "Test image " + path + " not found")) {
+			return readFully(in);
+		}
+	}
+
+	private static int packRGBA(byte @NonNull [] pixelData, int position, @NonNull QOIPixelPacking packing) {
+		int r = pixelData[position] & 0xFF;
+		int g = pixelData[position + 1] & 0xFF;
+		int b = pixelData[position + 2] & 0xFF;
+		int a = pixelData[position + 3] & 0xFF;
+
+		switch (packing) {
+			case RGBA:
+				return r << 24 | g << 16 | b << 8 | a;
+			case ARGB:
+				return a << 24 | r << 16 | g << 8 | b;
+			case ABGR:
+				return a << 24 | b << 16 | g << 8 | r;
+			case BGRA:
+				return b << 24 | g << 16 | r << 8 | a;
+			default:
+				throw new IllegalArgumentException(packing.toString());
+		}
+	}
+
 	private static byte[] encodeToBytes(@NonNull QOIImage image) throws IOException {
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		QOIUtil.writeImage(image, out);
@@ -3,6 +3,20 @@ package me.saharnooby.qoi;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * @author saharNooby
  * @since 18:46 02.12.2021
@@ -35,4 +49,218 @@ class QOIUtilTest {
 		Assertions.assertSame(added, QOIUtil.addAlpha(added, 123));
 	}
 
-}
\ No newline at end of file
+	@Test
+	void testConvertArrays() {
+		Random random = new Random("seed1".hashCode());
+
+		// Small counts check the scalar tails around vectorized blocks
+		for (int pixelCount = 0; pixelCount < 40; pixelCount++) {
+			byte[] rgba = new byte[pixelCount * 4 + 2];
+			random.nextBytes(rgba);
+
+			byte[] rgb = new byte[pixelCount * 3 + 2];
+
+			for (int i = 0; i < pixelCount; i++) {
+				System.arraycopy(rgba, 1 + i * 4, rgb, 1 + i * 3, 3);
+			}
+
+			byte[] removed = new byte[rgb.length];
+			removed[0] = rgb[0];
+			removed[removed.length - 1] = rgb[rgb.length - 1];
+			QOIUtil.removeAlpha(rgba, 1, removed, 1, pixelCount);
+			Assertions.assertArrayEquals(rgb, removed);
+
+			byte[] inPlace = rgba.clone();
+			QOIUtil.removeAlpha(inPlace, 1, inPlace, 1, pixelCount);
+			Assertions.assertArrayEquals(Arrays.copyOfRange(rgb, 1, 1 + pixelCount * 3), Arrays.copyOfRange(inPlace, 1, 1 + pixelCount * 3));
+
+			byte[] added = rgba.clone();
+			QOIUtil.addAlpha(rgb, 1, added, 1, pixelCount, 99);
+
+			byte[] expected = rgba.clone();
+
+			for (int i = 0; i < pixelCount; i++) {
+				expected[1 + i * 4 + 3] = 99;
+			}
+
+			Assertions.assertArrayEquals(expected, added);
+
+			inPlace = Arrays.copyOf(rgb, rgba.length);
+			QOIUtil.addAlpha(inPlace, 1, inPlace, 1, pixelCount, 99);
+			Assertions.assertArrayEquals(Arrays.copyOfRange(expected, 1, 1 + pixelCount * 4), Arrays.copyOfRange(inPlace, 1, 1 + pixelCount * 4));
+		}
+
+		byte[] data = new byte[16];
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> QOIUtil.removeAlpha(data, 1, new byte[12], 0, 4));
+		Assertions.assertThrows(IndexOutOfBoundsException.class, () -> QOIUtil.addAlpha(data, 0, new byte[16], 1, 4, 0));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> QOIUtil.removeAlpha(data, 0, data, 1, 3));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> QOIUtil.addAlpha(data, 1, data, 0, 3, 0));
+	}
+
+	@Test
+	void testConvertParallel() {
+		byte[] pixelData = new byte[1000 * 1000 * 4];
+		new Random("seed2".hashCode()).nextBytes(pixelData);
+
+		QOIImage image = QOIUtil.createFromPixelData(pixelData, 1000, 1000, 4);
+		QOIImage removed = QOIUtil.removeAlpha(image);
+
+		Assertions.assertEquals(removed, QOIUtil.removeAlphaParallel(image));
+		Assertions.assertEquals(QOIUtil.addAlpha(removed, 7), QOIUtil.addAlphaParallel(removed, 7));
+		Assertions.assertSame(removed, QOIUtil.removeAlphaParallel(removed));
+	}
+
+	@Test
+	void testReadHeader() throws Exception {
+		byte[] bytes = readDice();
+		QOIImage image = QOIUtil.readImage(new ByteArrayInputStream(bytes));
+		QOIHeader expected = new QOIHeader(image.getWidth(), image.getHeight(), 4, QOIColorSpace.SRGB);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+		Assertions.assertEquals(expected, QOIUtil.readHeader(in));
+		Assertions.assertEquals(bytes.length - 14, in.available(), "Expected only the header to be read");
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		Assertions.assertEquals(expected, QOIUtil.readHeader(buffer));
+		Assertions.assertEquals(0, buffer.position());
+
+		Path path = Files.createTempFile("qoi-java", ".qoi");
+
+		try {
+			Files.write(path, bytes);
+
+			Assertions.assertEquals(expected, QOIUtil.readHeader(path));
+			Assertions.assertEquals(expected, QOIUtil.readHeader(path.toFile()));
+		} finally {
+			Files.delete(path);
+		}
+
+		Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIUtil.readHeader(new ByteArrayInputStream(bytes, 0, 13)));
+		Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIUtil.readHeader(ByteBuffer.wrap(bytes, 1, 20)));
+	}
+
+	@Test
+	void testLazyImage() throws Exception {
+		byte[] bytes = readDice();
+		QOIImage expected = QOIUtil.readImage(new ByteArrayInputStream(bytes), 3);
+
+		QOILazyImage lazy = QOIUtil.readImageLazily(ByteBuffer.wrap(bytes), 3);
+		Assertions.assertEquals(expected.getWidth(), lazy.getWidth());
+		Assertions.assertEquals(expected.getHeight(), lazy.getHeight());
+		Assertions.assertEquals(3, lazy.getChannels());
+		Assertions.assertEquals(4, lazy.getHeader().getChannels());
+		Assertions.assertFalse(lazy.isDecoded());
+
+		Assertions.assertEquals(expected, lazy.getImage());
+		Assertions.assertTrue(lazy.isDecoded());
+		Assertions.assertSame(lazy.getImage(), lazy.getImage());
+
+		Path path = Files.createTempFile("qoi-java", ".qoi");
+
+		try {
+			Files.write(path, bytes);
+
+			QOILazyImage fromFile = QOIUtil.readFileLazily(path.toFile());
+			Assertions.assertEquals(4, fromFile.getChannels());
+
+			// Replacing the file with a different image is detected on decoding
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			QOIUtil.writeImage(QOIUtil.createFromPixelData(new byte[4 * 3], 2, 2, 3), out);
+			Files.write(path, out.toByteArray());
+
+			Assertions.assertThrows(InvalidQOIStreamException.class, fromFile::getImage);
+			Assertions.assertFalse(fromFile.isDecoded());
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	void testAsyncReadWrite() throws Exception {
+		byte[] bytes = readDice();
+		QOIImage image = QOIUtil.readImage(new ByteArrayInputStream(bytes));
+
+		Path path = Files.createTempFile("qoi-java", ".qoi");
+
+		try {
+			QOIUtil.writeFileAsync(image, path).get();
+			Assertions.assertArrayEquals(bytes, Files.readAllBytes(path));
+
+			Assertions.assertEquals(image, QOIUtil.readFileAsync(path).get());
+
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+
+			try {
+				Assertions.assertEquals(QOIUtil.removeAlpha(image), QOIUtil.readFileAsync(path, 3, executor).get());
+			} finally {
+				executor.shutdown();
+			}
+
+			Files.write(path, new byte[] {1, 2, 3});
+
+			ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> QOIUtil.readFileAsync(path).get());
+			Assertions.assertTrue(e.getCause() instanceof InvalidQOIStreamException);
+		} finally {
+			Files.delete(path);
+		}
+
+		ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> QOIUtil.readFileAsync(path).get());
+		Assertions.assertTrue(e.getCause() instanceof IOException);
+	}
+
+	@Test
+	void testReadWriteFile() throws Exception {
+		byte[] bytes = readDice();
+		QOIImage image = QOIUtil.readImage(new ByteArrayInputStream(bytes));
+
+		Path path = Files.createTempFile("qoi-java", ".qoi");
+
+		try {
+			QOIUtil.writeFile(image, path);
+			Assertions.assertArrayEquals(bytes, Files.readAllBytes(path));
+
+			// Many small flushes produce the same file, which is truncated first
+			QOIUtil.writeFile(image, path, 64);
+			Assertions.assertArrayEquals(bytes, Files.readAllBytes(path));
+
+			Assertions.assertThrows(IllegalArgumentException.class, () -> QOIUtil.writeFile(image, path, 63));
+
+			Assertions.assertEquals(image, QOIUtil.readFile(path));
+			Assertions.assertEquals(QOIUtil.removeAlpha(image), QOIUtil.readFile(path, 3));
+
+			Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+
+			Assertions.assertThrows(InvalidQOIStreamException.class, () -> QOIUtil.readFile(path));
+
+			// Noise does not compress, so the file is big enough to be memory-mapped
+			byte[] noise = new byte[2048 * 2048 * 4];
+			new Random(42).nextBytes(noise);
+			QOIImage large = QOIUtil.createFromPixelData(noise, 2048, 2048, 4);
+
+			QOIUtil.writeFile(large, path);
+			Assertions.assertTrue(Files.size(path) > 1 << 24);
+			Assertions.assertEquals(large, QOIUtil.readFile(path));
+
+			// The mapping is released, so the same file can be rewritten right away
+			QOIUtil.writeFile(image, path);
+			Assertions.assertEquals(image, QOIUtil.readFile(path));
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	private byte[] readDice() throws IOException {
+		try (InputStream in = Objects.requireNonNull(getClass().getResourceAsStream("/dice.qoi"), "Test image not found")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+
+			return out.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,221 @@
+package me.saharnooby.qoi;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks JFR events emitted by the Java 11 version of {@link CodecEvents} from the multi-release jar.
+ */
+class CodecEventsIT {
+
+	@Test
+	void testEvents() throws Exception {
+		// Failsafe puts the jar on the class path, otherwise the Java 8 version would be tested
+		Assertions.assertTrue(CodecEvents.class.getProtectionDomain().getCodeSource().getLocation().getPath().endsWith(".jar"));
+
+		byte[] bytes;
+
+		try (InputStream in = Objects.requireNonNull(getClass().getResourceAsStream("/dice.qoi"), "Test image not found")) {
+			bytes = in.readAllBytes();
+		}
+
+		Path file = Files.createTempFile("qoi-java", ".jfr");
+
+		try (Recording recording = new Recording()) {
+			recording.enable("me.saharnooby.qoi.Encode");
+			recording.enable("me.saharnooby.qoi.Decode");
+			recording.start();
+
+			QOIImage image = QOIDecoder.decode(bytes, 0);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			QOIEncoder.encode(image, out);
+			Assertions.assertArrayEquals(bytes, out.toByteArray());
+
+			recording.stop();
+			recording.dump(file);
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+					.filter(event -> event.getEventType().getName().startsWith("me.saharnooby.qoi."))
+					.collect(Collectors.toList());
+
+			Assertions.assertEquals(2, events.size());
+
+			long pixelDataSize = image.getPixelData().length;
+
+			RecordedEvent decode = events.get(0);
+			Assertions.assertEquals("me.saharnooby.qoi.Decode", decode.getEventType().getName());
+			checkEvent(decode, image, bytes.length, pixelDataSize);
+
+			RecordedEvent encode = events.get(1);
+			Assertions.assertEquals("me.saharnooby.qoi.Encode", encode.getEventType().getName());
+			checkEvent(encode, image, pixelDataSize, bytes.length);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testParallelAndRowEvents() throws Exception {
+		byte[] bytes;
+
+		try (InputStream in = Objects.requireNonNull(getClass().getResourceAsStream("/dice.qoi"), "Test image not found")) {
+			bytes = in.readAllBytes();
+		}
+
+		QOIImage image = QOIDecoder.decode(bytes, 0);
+		long pixelDataSize = image.getPixelData().length;
+
+		// The image has several segments and bands, and each call must still be reported as a single event
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		checkEvent(record(() -> QOIEncoder.encodeParallel(image, parallel)), "Encode", image, pixelDataSize, -1);
+		checkEvent(record(() -> QOIEncoder.encodeParallel(image, new ByteArrayOutputStream())), "Encode", image, pixelDataSize, parallel.size());
+
+		ByteArrayOutputStream indexed = new ByteArrayOutputStream();
+		QOICheckpointIndex[] index = new QOICheckpointIndex[1];
+		RecordedEvent encodeWithCheckpoints = record(() -> index[0] = QOIEncoder.encodeWithCheckpoints(image, indexed, 64));
+		int imageSize = indexed.size();
+		checkEvent(encodeWithCheckpoints, "Encode", image, pixelDataSize, imageSize);
+
+		index[0].write(indexed);
+		ByteBuffer buffer = ByteBuffer.wrap(indexed.toByteArray());
+
+		// Bands read adjacent parts of the image, which add up to the image size
+		checkEvent(record(() -> QOIDecoder.decodeParallel(buffer, index[0], 0)), "Decode", image, imageSize, pixelDataSize);
+
+		RecordedEvent rows = record(() -> QOIDecoder.decodeRows(buffer, index[0], 100, 20, 0));
+		Assertions.assertEquals((long) image.getWidth() * 20 * image.getChannels(), rows.getLong("outputSize"));
+		Assertions.assertTrue(rows.getLong("inputSize") > 0 && rows.getLong("inputSize") < imageSize);
+
+		RecordedEvent region = record(() -> QOIDecoder.decodeRegion(buffer, index[0], 10, 100, 30, 20, 0));
+		Assertions.assertEquals(30L * 20 * image.getChannels(), region.getLong("outputSize"));
+		Assertions.assertTrue(region.getLong("inputSize") > 0 && region.getLong("inputSize") < imageSize);
+
+		// Stream is read only up to the last pixel of the region
+		RecordedEvent streamRegion = record(() -> QOIDecoder.decodeRegion(new ByteArrayInputStream(bytes), 10, 100, 30, 20, 0));
+		Assertions.assertEquals(30L * 20 * image.getChannels(), streamRegion.getLong("outputSize"));
+		Assertions.assertTrue(streamRegion.getLong("inputSize") > region.getLong("inputSize") && streamRegion.getLong("inputSize") < imageSize);
+
+		checkEvent(record(() -> {
+			try (QOIRowReader reader = new QOIRowReader(new ByteArrayInputStream(bytes), 0)) {
+				while (reader.hasNextRow()) {
+					reader.readRow();
+				}
+			}
+		}), "Decode", image, bytes.length, pixelDataSize);
+
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+		checkEvent(record(() -> {
+			try (QOIRowWriter writer = new QOIRowWriter(written, image.getWidth(), image.getHeight(), image.getChannels(), image.getColorSpace())) {
+				for (int y = 0; y < image.getHeight(); y++) {
+					writer.writeRow(image.getPixelData(), y * image.getWidth() * image.getChannels());
+				}
+			}
+		}), "Encode", image, pixelDataSize, bytes.length);
+
+		Assertions.assertArrayEquals(bytes, written.toByteArray());
+	}
+
+	@Test
+	void testWithoutJfrModule() throws Exception {
+		Path jar = Path.of(CodecEvents.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		Path root = Files.createTempDirectory("qoi-java");
+		Path source = Files.createDirectories(root.resolve("source"));
+		Path target = root.resolve("target");
+
+		try (InputStream in = Objects.requireNonNull(getClass().getResourceAsStream("/dice.qoi"), "Test image not found")) {
+			Files.copy(in, source.resolve("dice.qoi"));
+		}
+
+		try {
+			// The transcoder decodes through the instrumented path, which must not need jdk.jfr
+			Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+					"--limit-modules", "java.base", "-cp", jar.toString(), QOITranscoder.class.getName(),
+					"decode", source.toString(), target.toString())
+					.redirectErrorStream(true)
+					.start();
+
+			String output = new String(process.getInputStream().readAllBytes());
+
+			Assertions.assertEquals(0, process.waitFor(), output);
+			Assertions.assertTrue(Files.exists(target.resolve("dice.pam")), output);
+		} finally {
+			try (Stream<Path> paths = Files.walk(root)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	/**
+	 * Runs the action with codec events enabled, and returns the only event that it emitted.
+	 */
+	private static RecordedEvent record(Action action) throws Exception {
+		Path file = Files.createTempFile("qoi-java", ".jfr");
+
+		try (Recording recording = new Recording()) {
+			recording.enable("me.saharnooby.qoi.Encode");
+			recording.enable("me.saharnooby.qoi.Decode");
+			recording.start();
+
+			action.run();
+
+			recording.stop();
+			recording.dump(file);
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+					.filter(event -> event.getEventType().getName().startsWith("me.saharnooby.qoi."))
+					.collect(Collectors.toList());
+
+			Assertions.assertEquals(1, events.size());
+
+			return events.get(0);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	// Output size is not checked when it is negative
+	private static void checkEvent(RecordedEvent event, String name, QOIImage image, long inputSize, long outputSize) {
+		Assertions.assertEquals("me.saharnooby.qoi." + name, event.getEventType().getName());
+
+		if (outputSize < 0) {
+			outputSize = event.getLong("outputSize");
+		}
+
+		checkEvent(event, image, inputSize, outputSize);
+	}
+
+	private static void checkEvent(RecordedEvent event, QOIImage image, long inputSize, long outputSize) {
+		Assertions.assertEquals(image.getWidth(), event.getInt("width"));
+		Assertions.assertEquals(image.getHeight(), event.getInt("height"));
+		Assertions.assertEquals(image.getChannels(), event.getInt("channels"));
+		Assertions.assertEquals(inputSize, event.getLong("inputSize"));
+		Assertions.assertEquals(outputSize, event.getLong("outputSize"));
+		Assertions.assertTrue(event.getDuration().toNanos() > 0);
+		Assertions.assertEquals("QOI", event.getEventType().getCategoryNames().get(0));
+	}
+
+	@FunctionalInterface
+	private interface Action {
+
+		void run() throws Exception;
+
+	}
+
+}